@@ -0,0 +1,61 @@
+package tech.picnic.errorprone.documentation;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * A {@link DocumentationOutput} that writes the data produced by each extractor for each source
+ * file to a separate JSON file.
+ */
+final class DirectoryDocumentationOutput extends DocumentationOutput {
+  private static final String MANIFEST_FILE_NAME = ".documentation-manifest.json";
+
+  private final Path directory;
+
+  DirectoryDocumentationOutput(Path directory) {
+    super(directory.resolve(MANIFEST_FILE_NAME));
+    this.directory = directory;
+  }
+
+  @Override
+  Path getDirectory() {
+    return directory;
+  }
+
+  @Override
+  void load() {}
+
+  @Override
+  boolean hasOutput(String source, ImmutableSortedSet<String> extractors) {
+    return extractors.stream().allMatch(extractor -> Files.exists(getPath(source, extractor)));
+  }
+
+  @Override
+  void writeData(String source, String extractor, Object data) {
+    Json.write(getPath(source, extractor), data);
+  }
+
+  @Override
+  void removeStaleOutput(String source, ImmutableSet<String> extractors) {
+    for (String extractor : extractors) {
+      try {
+        Files.deleteIfExists(getPath(source, extractor));
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            "Error while removing stale output for '%s'".formatted(source), e);
+      }
+    }
+  }
+
+  @Override
+  void finish(Set<String> processedSources) {}
+
+  private Path getPath(String source, String extractor) {
+    return directory.resolve("%s-%s.json".formatted(extractor, source));
+  }
+}
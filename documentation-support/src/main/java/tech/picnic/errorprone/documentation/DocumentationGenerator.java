@@ -15,13 +15,20 @@ import java.util.regex.Pattern;
 /**
  * A compiler {@link Plugin} that analyzes and extracts relevant information for documentation
  * purposes from processed files.
+ *
+ * <p>The plugin accepts a single argument: either {@code -XoutputDirectory=<path>}, to write a
+ * separate JSON file per extractor and source file to the given directory, or {@code
+ * -XoutputFile=<path>}, to write all data to a single JSON Lines file.
  */
 // XXX: Find a better name for this class; it doesn't generate documentation per se.
 @AutoService(Plugin.class)
 public final class DocumentationGenerator implements Plugin {
   @VisibleForTesting static final String OUTPUT_DIRECTORY_FLAG = "-XoutputDirectory";
+  @VisibleForTesting static final String OUTPUT_FILE_FLAG = "-XoutputFile";
   private static final Pattern OUTPUT_DIRECTORY_FLAG_PATTERN =
       Pattern.compile(Pattern.quote(OUTPUT_DIRECTORY_FLAG) + "=(.*)");
+  private static final Pattern OUTPUT_FILE_FLAG_PATTERN =
+      Pattern.compile(Pattern.quote(OUTPUT_FILE_FLAG) + "=(.*)");
 
   /** Instantiates a new {@link DocumentationGenerator} instance. */
   public DocumentationGenerator() {}
@@ -37,7 +44,14 @@ public final class DocumentationGenerator implements Plugin {
 
     javacTask.addTaskListener(
         new DocumentationGeneratorTaskListener(
-            ((BasicJavacTask) javacTask).getContext(), getOutputPath(args[0])));
+            ((BasicJavacTask) javacTask).getContext(), getOutput(args[0])));
+  }
+
+  private static DocumentationOutput getOutput(String pathArg) {
+    Matcher matcher = OUTPUT_FILE_FLAG_PATTERN.matcher(pathArg);
+    return matcher.matches()
+        ? new JsonLinesDocumentationOutput(toPath(matcher.group(1)))
+        : new DirectoryDocumentationOutput(getOutputPath(pathArg));
   }
 
   @VisibleForTesting
@@ -46,7 +60,10 @@ public final class DocumentationGenerator implements Plugin {
     checkArgument(
         matcher.matches(), "'%s' must be of the form '%s=<value>'", pathArg, OUTPUT_DIRECTORY_FLAG);
 
-    String path = matcher.group(1);
+    return toPath(matcher.group(1));
+  }
+
+  private static Path toPath(String path) {
     try {
       return Path.of(path);
     } catch (InvalidPathException e) {
@@ -1,11 +1,18 @@
 package tech.picnic.errorprone.documentation;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
 import com.google.errorprone.VisitorState;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
 import com.sun.source.util.TaskEvent;
 import com.sun.source.util.TaskEvent.Kind;
 import com.sun.source.util.TaskListener;
@@ -14,15 +21,24 @@ import com.sun.tools.javac.api.JavacTrees;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.util.Context;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.Optional;
 import java.util.ServiceLoader;
+import java.util.UUID;
+import java.util.stream.Stream;
 import javax.tools.JavaFileObject;
 
 /**
  * A {@link TaskListener} that identifies and extracts relevant content for documentation generation
- * and writes it to disk.
+ * and writes it to a {@link DocumentationOutput}.
+ *
+ * <p>Extraction is skipped for source files that did not change since a previous compilation wrote
+ * to the same output.
  */
 // XXX: Find a better name for this class; it doesn't generate documentation per se.
 final class DocumentationGeneratorTaskListener implements TaskListener {
@@ -33,23 +49,43 @@ final class DocumentationGeneratorTaskListener implements TaskListener {
               ServiceLoader.load(
                   Extractor.class, DocumentationGeneratorTaskListener.class.getClassLoader()));
 
+  /**
+   * The version of the output format. Must be changed whenever the data written for a given source
+   * file changes, such that previous output is invalidated also if the plugin is not loaded from an
+   * archive that is fingerprinted as part of {@link #PLUGIN_FINGERPRINT}.
+   */
+  private static final int OUTPUT_FORMAT_VERSION = 1;
+
+  /**
+   * A fingerprint of this plugin, comprising the {@link #OUTPUT_FORMAT_VERSION}, the identifiers of
+   * all {@link #EXTRACTORS} and the contents of the archives from which this class and the
+   * extractors were loaded. This fingerprint is included in each source file's hash, such that
+   * changes to the plugin invalidate previous output.
+   */
+  private static final HashCode PLUGIN_FINGERPRINT = fingerprintPlugin();
+
   private final Context context;
-  private final Path docsPath;
+  private final DocumentationOutput output;
 
-  DocumentationGeneratorTaskListener(Context context, Path path) {
+  DocumentationGeneratorTaskListener(Context context, DocumentationOutput output) {
     this.context = context;
-    this.docsPath = path;
+    this.output = output;
   }
 
   @Override
   public void started(TaskEvent taskEvent) {
     if (taskEvent.getKind() == Kind.ANALYZE) {
-      createDocsDirectory();
+      output.open();
     }
   }
 
   @Override
   public void finished(TaskEvent taskEvent) {
+    if (taskEvent.getKind() == Kind.COMPILATION) {
+      output.close();
+      return;
+    }
+
     if (taskEvent.getKind() != Kind.ANALYZE || JavaCompiler.instance(context).errorCount() > 0) {
       return;
     }
@@ -66,27 +102,89 @@ final class DocumentationGeneratorTaskListener implements TaskListener {
             .withPath(new TreePath(new TreePath(compilationUnit), classTree));
 
     JavaFileObject sourceFile = requireNonNull(taskEvent.getSourceFile(), "No source file");
+    String sourcePath = getSourcePath(compilationUnit, sourceFile.toUri());
+    if (!output.requiresExtraction(
+        sourcePath, getSimpleClassName(sourceFile.toUri()), hash(sourceFile))) {
+      return;
+    }
+
     for (Extractor<?> extractor : EXTRACTORS) {
       extractor
           .tryExtract(classTree, state)
-          .ifPresent(
-              data ->
-                  writeToFile(
-                      extractor.identifier(), getSimpleClassName(sourceFile.toUri()), data));
+          .ifPresent(data -> output.write(sourcePath, extractor.identifier(), data));
+    }
+  }
+
+  private static String hash(JavaFileObject sourceFile) {
+    try {
+      return Hashing.sha256()
+          .newHasher()
+          .putBytes(PLUGIN_FINGERPRINT.asBytes())
+          .putString(sourceFile.getCharContent(/* ignoreEncodingErrors= */ true), UTF_8)
+          .hash()
+          .toString();
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Error while reading source file '%s'".formatted(sourceFile.getName()), e);
+    }
+  }
+
+  private static HashCode fingerprintPlugin() {
+    Hasher hasher =
+        Hashing.sha256()
+            .newHasher()
+            .putInt(OUTPUT_FORMAT_VERSION)
+            .putString(
+                EXTRACTORS.stream().map(Extractor::identifier).sorted().collect(joining(",")),
+                UTF_8);
+    Stream.<Class<?>>concat(
+            Stream.of(DocumentationGeneratorTaskListener.class),
+            EXTRACTORS.stream().map(Object::getClass))
+        .map(DocumentationGeneratorTaskListener::getArchive)
+        .flatMap(Optional::stream)
+        .distinct()
+        .sorted()
+        .forEach(archive -> putArchiveContents(hasher, archive));
+    return hasher.hash();
+  }
+
+  /**
+   * Returns the archive from which the given class was loaded, if any; classes loaded from a
+   * directory are covered by the {@link #OUTPUT_FORMAT_VERSION} only.
+   */
+  @SuppressWarnings("java:S1166" /* An unidentifiable code source is not fingerprinted. */)
+  private static Optional<Path> getArchive(Class<?> clazz) {
+    CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+    if (codeSource == null) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(Path.of(codeSource.getLocation().toURI())).filter(Files::isRegularFile);
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return Optional.empty();
     }
   }
 
-  private void createDocsDirectory() {
+  @SuppressWarnings("java:S1166" /* An unreadable archive invalidates all previous output. */)
+  private static void putArchiveContents(Hasher hasher, Path archive) {
     try {
-      Files.createDirectories(docsPath);
+      hasher.putBytes(MoreFiles.asByteSource(archive).hash(Hashing.sha256()).asBytes());
     } catch (IOException e) {
-      throw new IllegalStateException(
-          "Error while creating directory with path '%s'".formatted(docsPath), e);
+      hasher.putString(UUID.randomUUID().toString(), UTF_8);
     }
   }
 
-  private <T> void writeToFile(String identifier, String className, T data) {
-    Json.write(docsPath.resolve("%s-%s.json".formatted(identifier, className)), data);
+  /**
+   * Returns the path of the given source file relative to the source root, as derived from the
+   * package declared by the given compilation unit.
+   */
+  private static String getSourcePath(CompilationUnitTree compilationUnit, URI path) {
+    String fileName = Path.of(path).getFileName().toString();
+    ExpressionTree packageName = compilationUnit.getPackageName();
+    return packageName == null
+        ? fileName
+        : String.join("/", packageName.toString().replace('.', '/'), fileName);
   }
 
   private static String getSimpleClassName(URI path) {
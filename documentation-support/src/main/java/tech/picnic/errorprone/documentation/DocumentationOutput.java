@@ -0,0 +1,285 @@
+package tech.picnic.errorprone.documentation;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A destination to which the data extracted from source files is written.
+ *
+ * <p>Data is serialized and written by a bounded pool of background threads, so that the compiler
+ * thread does not block on I/O. If the pool is saturated, the compiler thread writes the data
+ * itself, which bounds memory usage.
+ *
+ * <p>A manifest records which extractors produced output for each source file that produced any
+ * output, along with a hash of that source file. Source files are identified by their path relative
+ * to the source root, such that the manifest does not depend on the location of the build, and
+ * such that distinct source files with the same name are tracked separately. A later compilation
+ * skips extraction for source files whose hash is unchanged, as long as the associated output is
+ * still present.
+ *
+ * <p>Instances of this class are meant to be used by a single compilation, from the compiler
+ * thread.
+ */
+abstract class DocumentationOutput {
+  private static final int WRITER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+  private static final int MAX_PENDING_WRITES = 64;
+
+  /**
+   * The version of the manifest format; manifests of a different version are ignored. Must be
+   * changed whenever the manifest format is changed in an incompatible manner.
+   */
+  @VisibleForTesting static final String MANIFEST_VERSION = "2";
+
+  private final Path manifestPath;
+  private final Map<String, SourceState> currentSources = new HashMap<>();
+  private final Set<String> retainedSourcePaths = new HashSet<>();
+  private final Set<String> retainedSources = new HashSet<>();
+  private final List<Future<?>> pendingWrites = new ArrayList<>();
+  private final ThreadPoolExecutor writer =
+      new ThreadPoolExecutor(
+          WRITER_THREADS,
+          WRITER_THREADS,
+          1,
+          SECONDS,
+          new ArrayBlockingQueue<>(MAX_PENDING_WRITES),
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("documentation-output-%d")
+              .build(),
+          new CallerRunsPolicy());
+  private ImmutableMap<String, SourceState> previousSources = ImmutableMap.of();
+  private boolean opened;
+
+  DocumentationOutput(Path manifestPath) {
+    this.manifestPath = manifestPath;
+  }
+
+  /**
+   * Prepares this output for writing, loading the state left behind by a previous compilation.
+   * Invocations after the first are ignored.
+   */
+  final void open() {
+    if (opened) {
+      return;
+    }
+
+    try {
+      Files.createDirectories(getDirectory());
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Error while creating directory with path '%s'".formatted(getDirectory()), e);
+    }
+
+    try {
+      if (Files.exists(manifestPath)) {
+        Manifest manifest = Json.read(manifestPath, Manifest.class);
+        if (MANIFEST_VERSION.equals(manifest.version())) {
+          previousSources = manifest.sources();
+        }
+        load();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error while loading previous documentation output", e);
+    }
+    opened = true;
+  }
+
+  /**
+   * Tells whether data must be extracted from the given source file.
+   *
+   * <p>If the source file has not changed since the previous compilation, its output is retained
+   * and {@code false} is returned.
+   *
+   * @param sourcePath The path of the source file, relative to the source root.
+   * @param source The name identifying the source file in the output.
+   * @param sourceHash A hash of the source file's content.
+   * @return {@code true} if {@link #write} should be invoked for each extractor applicable to the
+   *     source file.
+   */
+  final boolean requiresExtraction(String sourcePath, String source, String sourceHash) {
+    if (retainedSourcePaths.contains(sourcePath)) {
+      return false;
+    }
+
+    if (!currentSources.containsKey(sourcePath)) {
+      SourceState previous = previousSources.get(sourcePath);
+      if (previous != null
+          && previous.source().equals(source)
+          && previous.hash().equals(sourceHash)
+          && hasOutput(source, previous.extractors())) {
+        currentSources.put(sourcePath, previous);
+        retainedSourcePaths.add(sourcePath);
+        retainedSources.add(source);
+        return false;
+      }
+      currentSources.put(sourcePath, new SourceState(source, sourceHash, ImmutableSortedSet.of()));
+    }
+
+    return true;
+  }
+
+  /**
+   * Asynchronously writes the given data, extracted from the given source file.
+   *
+   * @param sourcePath The path of the source file, relative to the source root, for which {@link
+   *     #requiresExtraction} returned {@code true}.
+   * @param extractor The identifier of the extractor that produced the data.
+   * @param data The data to be written.
+   */
+  final void write(String sourcePath, String extractor, Object data) {
+    SourceState state = currentSources.get(sourcePath);
+    checkState(state != null, "Extraction from '%s' was not requested", sourcePath);
+    String source = state.source();
+    currentSources.put(
+        sourcePath,
+        new SourceState(
+            source,
+            state.hash(),
+            ImmutableSortedSet.<String>naturalOrder()
+                .addAll(state.extractors())
+                .add(extractor)
+                .build()));
+    pendingWrites.add(
+        writer.submit(
+            () -> {
+              writeData(source, extractor, data);
+              return null;
+            }));
+  }
+
+  /**
+   * Waits for all pending writes to complete, and persists the state required by subsequent
+   * compilations.
+   *
+   * @throws IllegalStateException If any data could not be written.
+   */
+  final void close() {
+    try {
+      for (Future<?> pendingWrite : pendingWrites) {
+        Uninterruptibles.getUninterruptibly(pendingWrite);
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Error while writing documentation data", e.getCause());
+    } finally {
+      writer.shutdown();
+    }
+
+    if (currentSources.isEmpty()) {
+      return;
+    }
+
+    Map<String, SourceState> sources = new TreeMap<>(previousSources);
+    for (Map.Entry<String, SourceState> entry : currentSources.entrySet()) {
+      SourceState previous = sources.put(entry.getKey(), entry.getValue());
+      if (previous != null && !retainedSourcePaths.contains(entry.getKey())) {
+        removeStaleOutput(
+            previous.source(),
+            previous.source().equals(entry.getValue().source())
+                ? Sets.difference(previous.extractors(), entry.getValue().extractors())
+                    .immutableCopy()
+                : previous.extractors());
+      }
+    }
+
+    try {
+      finish(currentSources.values().stream().map(SourceState::source).collect(toImmutableSet()));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error while finalizing documentation output", e);
+    }
+    /*
+     * Source files that did not produce any output are not tracked: extraction from these files is
+     * cheap, and this way no manifest is written if there is no output at all.
+     */
+    sources.values().removeIf(state -> state.extractors().isEmpty());
+    if (!sources.isEmpty() || Files.exists(manifestPath)) {
+      Json.write(manifestPath, new Manifest(MANIFEST_VERSION, ImmutableMap.copyOf(sources)));
+    }
+  }
+
+  /** Returns the directory in which output is written. */
+  abstract Path getDirectory();
+
+  /**
+   * Loads any output written by a previous compilation that must be retained.
+   *
+   * @throws IOException If the output cannot be read.
+   */
+  abstract void load() throws IOException;
+
+  /**
+   * Tells whether the output produced by the given extractors for the given source file is present.
+   */
+  abstract boolean hasOutput(String source, ImmutableSortedSet<String> extractors);
+
+  /**
+   * Writes the given data; invoked on a background thread.
+   *
+   * @throws IOException If the data cannot be written.
+   */
+  abstract void writeData(String source, String extractor, Object data) throws IOException;
+
+  /**
+   * Removes the output produced by the given extractors for a source file during a previous
+   * compilation, as these extractors no longer produce output for it.
+   */
+  abstract void removeStaleOutput(String source, ImmutableSet<String> extractors);
+
+  /**
+   * Finalizes the output, once all data has been written.
+   *
+   * @param processedSources The source files processed by the current compilation, including those
+   *     whose output of a previous compilation is retained.
+   * @throws IOException If the output cannot be finalized.
+   */
+  abstract void finish(Set<String> processedSources) throws IOException;
+
+  /** Tells whether the given source file's output of a previous compilation is retained. */
+  final boolean isRetained(String source) {
+    return retainedSources.contains(source);
+  }
+
+  /**
+   * The state of a source file, as recorded in the manifest.
+   *
+   * @param source The name identifying the source file in the output.
+   * @param hash A hash of the source file's content.
+   * @param extractors The identifiers of the extractors that produced output for the source file.
+   */
+  record SourceState(String source, String hash, ImmutableSortedSet<String> extractors) {}
+
+  /**
+   * The manifest persisted across compilations.
+   *
+   * @param version The {@link #MANIFEST_VERSION} of the manifest; {@code null} for manifests
+   *     written before the manifest format was versioned.
+   * @param sources The state of each source file for which data was extracted, by the path of the
+   *     source file relative to the source root.
+   */
+  record Manifest(@Nullable String version, ImmutableMap<String, SourceState> sources) {}
+}
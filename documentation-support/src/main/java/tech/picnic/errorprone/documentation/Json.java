@@ -18,7 +18,15 @@ final class Json {
     return JSON_MAPPER.readValue(path.toFile(), clazz);
   }
 
+  static <T> T read(String json, Class<T> clazz) {
+    return JSON_MAPPER.readValue(json, clazz);
+  }
+
   static <T> void write(Path path, T object) {
     JSON_MAPPER.writeValue(path.toFile(), object);
   }
+
+  static <T> String write(T object) {
+    return JSON_MAPPER.writeValueAsString(object);
+  }
 }
@@ -0,0 +1,105 @@
+package tech.picnic.errorprone.documentation;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableListMultimap.toImmutableListMultimap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparing;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A {@link DocumentationOutput} that writes the data produced by all extractors for all source
+ * files to a single JSON Lines file.
+ *
+ * <p>Each line is a JSON object with {@code source} and {@code extractor} fields that identify the
+ * data, and a {@code data} field that holds the data itself. Lines are ordered by source file and
+ * extractor. Lines written by a previous compilation are retained for source files that were not
+ * recompiled, or whose content did not change.
+ */
+final class JsonLinesDocumentationOutput extends DocumentationOutput {
+  private final Path file;
+  private final Queue<Line> newLines = new ConcurrentLinkedQueue<>();
+  private ImmutableListMultimap<String, Line> previousLines = ImmutableListMultimap.of();
+
+  JsonLinesDocumentationOutput(Path file) {
+    super(file.resolveSibling("." + file.getFileName() + ".manifest.json"));
+    this.file = file;
+  }
+
+  @Override
+  Path getDirectory() {
+    return file.toAbsolutePath().getParent();
+  }
+
+  @Override
+  void load() throws IOException {
+    if (Files.exists(file)) {
+      try (Stream<String> lines = Files.lines(file, UTF_8)) {
+        previousLines =
+            lines
+                .filter(line -> !line.isEmpty())
+                .map(line -> Line.of(Json.read(line, Entry.class), line))
+                .collect(toImmutableListMultimap(Line::source, Function.identity()));
+      }
+    }
+  }
+
+  @Override
+  boolean hasOutput(String source, ImmutableSortedSet<String> extractors) {
+    return previousLines.get(source).stream()
+        .map(Line::extractor)
+        .collect(toImmutableSet())
+        .containsAll(extractors);
+  }
+
+  @Override
+  void writeData(String source, String extractor, Object data) {
+    Entry entry = new Entry(source, extractor, data);
+    newLines.add(Line.of(entry, Json.write(entry)));
+  }
+
+  @Override
+  void removeStaleOutput(String source, ImmutableSet<String> extractors) {
+    /* The previous lines of reprocessed source files are dropped by `#finish`. */
+  }
+
+  @Override
+  void finish(Set<String> processedSources) throws IOException {
+    Files.write(
+        file,
+        Stream.concat(
+                previousLines.values().stream()
+                    .filter(l -> !processedSources.contains(l.source()) || isRetained(l.source())),
+                newLines.stream())
+            .sorted(comparing(Line::source).thenComparing(Line::extractor))
+            .map(Line::json)
+            .collect(toImmutableList()),
+        UTF_8);
+  }
+
+  /**
+   * The data produced by a single extractor for a single source file.
+   *
+   * @param source The name identifying the source file from which the data was extracted.
+   * @param extractor The identifier of the extractor that produced the data.
+   * @param data The extracted data.
+   */
+  record Entry(String source, String extractor, Object data) {}
+
+  private record Line(String source, String extractor, String json) {
+    static Line of(Entry entry, String json) {
+      return new Line(entry.source(), entry.extractor(), json);
+    }
+  }
+}
@@ -29,6 +29,17 @@ public final class Compilation {
 
   public static void compileWithDocumentationGenerator(
       String outputDirectory, String path, String... lines) {
+    compileWithDocumentationGeneratorArgument("-XoutputDirectory=" + outputDirectory, path, lines);
+  }
+
+  public static void compileWithDocumentationGeneratorToFile(
+      Path outputFile, String path, String... lines) {
+    compileWithDocumentationGeneratorArgument(
+        "-XoutputFile=" + outputFile.toAbsolutePath(), path, lines);
+  }
+
+  private static void compileWithDocumentationGeneratorArgument(
+      String pluginArgument, String path, String... lines) {
     /*
      * The compiler options specified here largely match those used by Error Prone's
      * `CompilationTestHelper`. A key difference is the stricter linting configuration, which in
@@ -45,7 +56,7 @@ public final class Compilation {
             "-proc:none",
             "-Werror",
             "-Xlint:all,-serial",
-            "-Xplugin:DocumentationGenerator -XoutputDirectory=" + outputDirectory,
+            "-Xplugin:DocumentationGenerator " + pluginArgument,
             "-XDdev",
             "-XDcompilePolicy=simple",
             "--should-stop=ifError=FLOW"),
@@ -134,6 +134,119 @@ final class DocumentationGeneratorTaskListenerTest {
             """);
   }
 
+  @Test
+  void extractionSkippedForUnchangedSource(@TempDir Path outputDirectory) throws IOException {
+    Path outputFile =
+        outputDirectory.resolve(
+            "documentation-generator-task-listener-test-DocumentationGeneratorTaskListenerTestClass.json");
+
+    Compilation.compileWithDocumentationGenerator(
+        outputDirectory,
+        "DocumentationGeneratorTaskListenerTestClass.java",
+        "class DocumentationGeneratorTaskListenerTestClass {}");
+    Files.writeString(outputFile, "unchanged");
+    Compilation.compileWithDocumentationGenerator(
+        outputDirectory,
+        "DocumentationGeneratorTaskListenerTestClass.java",
+        "class DocumentationGeneratorTaskListenerTestClass {}");
+
+    assertThat(outputFile).content(UTF_8).isEqualTo("unchanged");
+
+    Compilation.compileWithDocumentationGenerator(
+        outputDirectory,
+        "DocumentationGeneratorTaskListenerTestClass.java",
+        "final class DocumentationGeneratorTaskListenerTestClass {}");
+
+    assertThat(outputFile).content(UTF_8).isNotEqualTo("unchanged");
+  }
+
+  @Test
+  void manifestKeyedByPathRelativeToSourceRoot(@TempDir Path outputDirectory) {
+    Compilation.compileWithDocumentationGenerator(
+        outputDirectory,
+        "pkg/DocumentationGeneratorTaskListenerTestClass.java",
+        "package pkg;",
+        "",
+        "class DocumentationGeneratorTaskListenerTestClass {}");
+
+    assertThat(outputDirectory.resolve(".documentation-manifest.json"))
+        .extracting(path -> Json.read(path, DocumentationOutput.Manifest.class))
+        .satisfies(
+            manifest -> {
+              assertThat(manifest.version()).isEqualTo(DocumentationOutput.MANIFEST_VERSION);
+              assertThat(manifest.sources())
+                  .containsOnlyKeys("pkg/DocumentationGeneratorTaskListenerTestClass.java")
+                  .extractingByKey("pkg/DocumentationGeneratorTaskListenerTestClass.java")
+                  .extracting(DocumentationOutput.SourceState::source)
+                  .isEqualTo("DocumentationGeneratorTaskListenerTestClass");
+            });
+  }
+
+  @Test
+  void extractionNotSkippedForUnversionedManifest(@TempDir Path outputDirectory)
+      throws IOException {
+    Path outputFile =
+        outputDirectory.resolve(
+            "documentation-generator-task-listener-test-DocumentationGeneratorTaskListenerTestClass.json");
+    Path manifest = outputDirectory.resolve(".documentation-manifest.json");
+
+    Compilation.compileWithDocumentationGenerator(
+        outputDirectory,
+        "DocumentationGeneratorTaskListenerTestClass.java",
+        "class DocumentationGeneratorTaskListenerTestClass {}");
+    Files.writeString(outputFile, "unchanged");
+    Files.writeString(
+        manifest,
+        Files.readString(manifest, UTF_8)
+            .replace("\"version\":\"%s\",".formatted(DocumentationOutput.MANIFEST_VERSION), ""),
+        UTF_8);
+    Compilation.compileWithDocumentationGenerator(
+        outputDirectory,
+        "DocumentationGeneratorTaskListenerTestClass.java",
+        "class DocumentationGeneratorTaskListenerTestClass {}");
+
+    assertThat(outputFile).content(UTF_8).isNotEqualTo("unchanged");
+  }
+
+  @Test
+  void extractionRemovesStaleOutput(@TempDir Path outputDirectory) {
+    Compilation.compileWithDocumentationGenerator(
+        outputDirectory,
+        "DocumentationGeneratorTaskListenerTestClass.java",
+        "class DocumentationGeneratorTaskListenerTestClass {}");
+    Compilation.compileWithDocumentationGenerator(
+        outputDirectory, "DocumentationGeneratorTaskListenerTestClass.java", "class OtherClass {}");
+
+    assertThat(
+            outputDirectory.resolve(
+                "documentation-generator-task-listener-test-DocumentationGeneratorTaskListenerTestClass.json"))
+        .doesNotExist();
+  }
+
+  @Test
+  void extractionToJsonLinesFile(@TempDir Path outputDirectory) {
+    Path outputFile = outputDirectory.resolve("docs.jsonl");
+
+    Compilation.compileWithDocumentationGeneratorToFile(
+        outputFile,
+        "DocumentationGeneratorTaskListenerTestClassB.java",
+        "class DocumentationGeneratorTaskListenerTestClassB {}");
+    Compilation.compileWithDocumentationGeneratorToFile(
+        outputFile,
+        "DocumentationGeneratorTaskListenerTestClassA.java",
+        "class DocumentationGeneratorTaskListenerTestClassA {}");
+    Compilation.compileWithDocumentationGeneratorToFile(
+        outputFile, "DocumentationGeneratorTaskListenerTestClassC.java", "class OtherClass {}");
+
+    assertThat(outputFile)
+        .content(UTF_8)
+        .isEqualTo(
+            """
+            {"source":"DocumentationGeneratorTaskListenerTestClassA","extractor":"documentation-generator-task-listener-test","data":{"className":"DocumentationGeneratorTaskListenerTestClassA","path":["CLASS: DocumentationGeneratorTaskListenerTestClassA","COMPILATION_UNIT"]}}
+            {"source":"DocumentationGeneratorTaskListenerTestClassB","extractor":"documentation-generator-task-listener-test","data":{"className":"DocumentationGeneratorTaskListenerTestClassB","path":["CLASS: DocumentationGeneratorTaskListenerTestClassB","COMPILATION_UNIT"]}}
+            """);
+  }
+
   @AutoService(Extractor.class)
   @Immutable
   @SuppressWarnings("rawtypes" /* See https://github.com/google/auto/issues/870. */)
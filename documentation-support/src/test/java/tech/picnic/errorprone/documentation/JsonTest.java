@@ -31,5 +31,15 @@ final class JsonTest {
     assertThat(Json.read(file, TestObject.class)).isEqualTo(TEST_OBJECT);
   }
 
+  @Test
+  void writeToString() {
+    assertThat(Json.write(TEST_OBJECT)).isEqualTo(TEST_JSON);
+  }
+
+  @Test
+  void readFromString() {
+    assertThat(Json.read(TEST_JSON, TestObject.class)).isEqualTo(TEST_OBJECT);
+  }
+
   private record TestObject(String string, int number) {}
 }
@@ -0,0 +1,137 @@
+package tech.picnic.errorprone.benchmarks;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+import com.google.errorprone.ErrorProneOptions;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.net.URI;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * A set of compilation units that have been parsed and attributed in-process, such that Error Prone
+ * checks can subsequently be applied to them.
+ *
+ * <p>Sources are compiled against the classpath of the current JVM.
+ */
+final class AnalyzedSources {
+  private final Context context;
+  private final ImmutableList<CompilationUnitTree> compilationUnits;
+
+  private AnalyzedSources(Context context, ImmutableList<CompilationUnitTree> compilationUnits) {
+    this.context = context;
+    this.compilationUnits = compilationUnits;
+  }
+
+  /**
+   * Parses and attributes the given sources.
+   *
+   * @param sources The sources to analyze, keyed by file name.
+   * @return A non-{@code null} {@link AnalyzedSources} instance.
+   * @throws IllegalStateException If the sources contain compilation errors.
+   */
+  static AnalyzedSources analyze(ImmutableMap<String, String> sources) {
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    JavacTool javacTool = JavacTool.create();
+    JavacTaskImpl task =
+        (JavacTaskImpl)
+            javacTool.getTask(
+                null,
+                javacTool.getStandardFileManager(diagnostics, null, UTF_8),
+                diagnostics,
+                ImmutableList.of("-classpath", System.getProperty("java.class.path"), "-proc:none"),
+                null,
+                sources.entrySet().stream()
+                    .map(e -> new SourceFile(e.getKey(), e.getValue()))
+                    .collect(toImmutableList()));
+
+    /*
+     * Mimic Error Prone's compiler integration: suggested fixes require end positions to be
+     * tracked, and some checks consult the configured options.
+     */
+    JavaCompiler.instance(task.getContext()).genEndPos = true;
+    task.getContext().put(ErrorProneOptions.class, ErrorProneOptions.empty());
+
+    ImmutableList<CompilationUnitTree> compilationUnits = ImmutableList.copyOf(task.parse());
+    task.analyze();
+    checkState(
+        diagnostics.getDiagnostics().stream().noneMatch(d -> d.getKind() == Diagnostic.Kind.ERROR),
+        "Failed to compile benchmark sources:\n%s",
+        diagnostics.getDiagnostics().stream().map(Object::toString).collect(joining("\n")));
+    return new AnalyzedSources(task.getContext(), compilationUnits);
+  }
+
+  /**
+   * Loads the source of the {@code *TestInput.java} file associated with the given Refaster rule
+   * collection.
+   *
+   * @param ruleCollection The simple name of a Refaster rule collection defined in {@code
+   *     error-prone-contrib}.
+   * @param copies The number of copies of the test input to create.
+   * @return The requested number of sources, each defining a uniquely named class.
+   */
+  static ImmutableMap<String, String> loadRefasterRuleCollectionTestInput(
+      String ruleCollection, int copies) {
+    String source;
+    try {
+      source =
+          Resources.toString(
+              Resources.getResource(
+                  "tech/picnic/errorprone/refasterrules/%sTestInput.java"
+                      .formatted(ruleCollection)),
+              UTF_8);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Failed to load test input of rule collection '%s'".formatted(ruleCollection), e);
+    }
+
+    String className = ruleCollection + "Test";
+    ImmutableMap.Builder<String, String> sources = ImmutableMap.builderWithExpectedSize(copies);
+    for (int i = 0; i < copies; i++) {
+      sources.put(
+          "%sInput%s.java".formatted(className, i),
+          source.replaceAll("\\b" + className + "\\b", className + i));
+    }
+    return sources.buildOrThrow();
+  }
+
+  /**
+   * Returns the javac context in which the sources were analyzed, configured with empty {@link
+   * ErrorProneOptions}.
+   */
+  Context context() {
+    return context;
+  }
+
+  /** Returns the parsed and attributed compilation units. */
+  ImmutableList<CompilationUnitTree> compilationUnits() {
+    return compilationUnits;
+  }
+
+  private static final class SourceFile extends SimpleJavaFileObject {
+    private final String content;
+
+    SourceFile(String fileName, String content) {
+      super(URI.create("string:///" + fileName), Kind.SOURCE);
+      this.content = content;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return content;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package tech.picnic.errorprone.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.scanner.Scanner;
+import com.google.errorprone.scanner.ScannerSupplier;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TreePath;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of scanning a fixed corpus of source code using a single {@link BugChecker}.
+ *
+ * <p>The corpus consists of the test inputs of a number of Refaster rule collections; these are
+ * parsed and attributed once per trial, such that only the time spent by Error Prone's scanner and
+ * the selected {@link BugChecker} is measured. Run with {@code -prof gc} to additionally measure
+ * the associated allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+public class BugCheckerBenchmark {
+  /** The Refaster rule collections whose test inputs constitute the scanned corpus. */
+  private static final ImmutableList<String> CORPUS =
+      ImmutableList.of(
+          "AssertJRules",
+          "CollectionRules",
+          "ReactorRules",
+          "StreamRules",
+          "StringRules",
+          "TimeRules");
+
+  private static final String BUG_PATTERNS_PACKAGE = "tech.picnic.errorprone.bugpatterns";
+
+  /**
+   * The {@link BugChecker} to apply, identified by its simple name if it resides in the {@value
+   * #BUG_PATTERNS_PACKAGE} package, or by its fully qualified name otherwise.
+   */
+  @Param({
+    "ExplicitArgumentEnumeration",
+    "LexicographicalAnnotationListing",
+    "NonStaticImport",
+    "RedundantStringConversion",
+    "StaticImport"
+  })
+  String checker = "StaticImport";
+
+  @SuppressWarnings("NullAway.Init" /* Initialized by `@Setup` method. */)
+  private AnalyzedSources sources;
+
+  @SuppressWarnings("NullAway.Init" /* Initialized by `@Setup` method. */)
+  private Scanner scanner;
+
+  /** Parses and attributes the corpus, and instantiates the selected {@link BugChecker}. */
+  @Setup
+  public void setUp() {
+    ImmutableMap.Builder<String, String> corpus = ImmutableMap.builder();
+    for (String ruleCollection : CORPUS) {
+      corpus.putAll(AnalyzedSources.loadRefasterRuleCollectionTestInput(ruleCollection, 1));
+    }
+
+    sources = AnalyzedSources.analyze(corpus.buildOrThrow());
+    scanner = ScannerSupplier.fromBugCheckerClasses(getBugCheckerClass(checker)).get();
+  }
+
+  /**
+   * Scans all analyzed compilation units using the selected {@link BugChecker}.
+   *
+   * @param blackhole The sink to which reported findings are passed.
+   */
+  @Benchmark
+  public void scan(Blackhole blackhole) {
+    scanCompilationUnits(blackhole::consume);
+  }
+
+  /**
+   * Scans all analyzed compilation units using the selected {@link BugChecker}.
+   *
+   * @param listener The listener to which reported findings are passed.
+   */
+  void scanCompilationUnits(DescriptionListener listener) {
+    VisitorState state =
+        VisitorState.createConfiguredForCompilation(
+            sources.context(),
+            listener,
+            scanner.severityMap(),
+            sources.context().get(ErrorProneOptions.class));
+    for (CompilationUnitTree compilationUnit : sources.compilationUnits()) {
+      TreePath path = new TreePath(compilationUnit);
+      scanner.scan(path, state.withPath(path));
+    }
+  }
+
+  private static Class<? extends BugChecker> getBugCheckerClass(String name) {
+    String className = name.contains(".") ? name : BUG_PATTERNS_PACKAGE + '.' + name;
+    try {
+      return Class.forName(className).asSubclass(BugChecker.class);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("Unknown bug checker '%s'".formatted(name), e);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package tech.picnic.errorprone.benchmarks;
+
+import static java.util.Comparator.comparingInt;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.errorprone.annotations.Var;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.picnic.errorprone.refaster.runner.IntervalSet;
+
+/**
+ * Measures the cost of selecting a non-overlapping subset of a large number of synthetic Refaster
+ * matches, as done by {@link tech.picnic.errorprone.refaster.runner.Refaster} for each compilation
+ * unit.
+ *
+ * <p>Each match replaces a single section of source code. As in {@code Refaster}, the matches are
+ * considered from largest to smallest, and a match is selected only if it does not overlap with any
+ * previously selected match. The {@link IntervalSet}-based selection is compared against the {@link
+ * TreeRangeSet}-based selection it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+public class OverlapResolutionBenchmark {
+  /** The maximum length of a synthetic match's replaced source code section. */
+  private static final int MAX_MATCH_LENGTH = 64;
+
+  /** The number of synthetic matches from which to select. */
+  @Param({"1000", "10000", "100000"})
+  int matchCount = 100_000;
+
+  /**
+   * The average number of matches starting at any given source position; higher values yield more
+   * overlap.
+   */
+  @Param({"0.125", "1"})
+  double matchDensity = 0.125;
+
+  @SuppressWarnings("NullAway.Init" /* Initialized by `@Setup` method. */)
+  private int[][] matches;
+
+  /** Generates the synthetic matches, ordered by descending replacement size. */
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    int sourceLength = (int) (matchCount / matchDensity);
+    matches = new int[matchCount][];
+    for (int i = 0; i < matchCount; i++) {
+      int start = random.nextInt(sourceLength);
+      matches[i] = new int[] {start, start + 1 + random.nextInt(MAX_MATCH_LENGTH)};
+    }
+    Arrays.sort(matches, comparingInt((int[] match) -> match[1] - match[0]).reversed());
+  }
+
+  /**
+   * Selects the non-overlapping matches using an {@link IntervalSet}.
+   *
+   * @return The number of selected matches.
+   */
+  @Benchmark
+  public int intervalSet() {
+    @Var int selected = 0;
+    IntervalSet replacedSections = new IntervalSet();
+    for (int[] match : matches) {
+      if (!replacedSections.intersects(match[0], match[1])) {
+        replacedSections.add(match[0], match[1]);
+        selected++;
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Selects the non-overlapping matches using a {@link TreeRangeSet}.
+   *
+   * @return The number of selected matches.
+   */
+  @Benchmark
+  public int treeRangeSet() {
+    @Var int selected = 0;
+    RangeSet<Integer> replacedSections = TreeRangeSet.create();
+    for (int[] match : matches) {
+      Range<Integer> range = Range.closedOpen(match[0], match[1]);
+      if (!replacedSections.intersects(range)) {
+        replacedSections.add(range);
+        selected++;
+      }
+    }
+    return selected;
+  }
+}
@@ -0,0 +1,113 @@
+package tech.picnic.errorprone.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.VisitorState;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TreePath;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.picnic.errorprone.refaster.runner.Refaster;
+
+/**
+ * Measures the cost of applying Refaster rules to the test input of a Refaster rule collection.
+ *
+ * <p>The test inputs are parsed and attributed once per trial, such that only the time spent by
+ * {@link Refaster#matchCompilationUnit(CompilationUnitTree, VisitorState)} is measured. Run with
+ * {@code -prof gc} to additionally measure the associated allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+public class RefasterBenchmark {
+  /** The placeholder in {@link #namePattern} that is replaced with {@link #ruleCollection}. */
+  private static final String RULE_COLLECTION_PLACEHOLDER = "{ruleCollection}";
+
+  /** The Refaster rule collection whose test input is processed. */
+  @Param({
+    "AssertJRules",
+    "CollectionRules",
+    "ReactorRules",
+    "StreamRules",
+    "StringRules",
+    "TimeRules"
+  })
+  String ruleCollection = "StringRules";
+
+  /**
+   * The {@link Refaster#INCLUDED_RULES_PATTERN_FLAG} value that selects the Refaster rules to be
+   * applied, with {@value #RULE_COLLECTION_PLACEHOLDER} denoting the {@link #ruleCollection}; an
+   * empty value selects all rules.
+   */
+  @Param({"", RULE_COLLECTION_PLACEHOLDER + "\\$.*"})
+  String namePattern = "";
+
+  /** The number of copies of the test input that are processed. */
+  @Param({"1", "10"})
+  int sourceCopies = 1;
+
+  @SuppressWarnings("NullAway.Init" /* Initialized by `@Setup` method. */)
+  private AnalyzedSources sources;
+
+  @SuppressWarnings("NullAway.Init" /* Initialized by `@Setup` method. */)
+  private Refaster refaster;
+
+  /** Parses and attributes the test input, and loads the selected Refaster rules. */
+  @Setup
+  public void setUp() {
+    sources =
+        AnalyzedSources.analyze(
+            AnalyzedSources.loadRefasterRuleCollectionTestInput(ruleCollection, sourceCopies));
+    refaster =
+        new Refaster(
+            namePattern.isEmpty()
+                ? ErrorProneFlags.empty()
+                : ErrorProneFlags.fromMap(
+                    ImmutableMap.of(
+                        Refaster.INCLUDED_RULES_PATTERN_FLAG,
+                        namePattern.replace(RULE_COLLECTION_PLACEHOLDER, ruleCollection))));
+  }
+
+  /**
+   * Applies the selected Refaster rules to all analyzed compilation units.
+   *
+   * @param blackhole The sink to which reported matches are passed.
+   */
+  @Benchmark
+  public void matchCompilationUnit(Blackhole blackhole) {
+    matchCompilationUnits(blackhole::consume);
+  }
+
+  /**
+   * Applies the selected Refaster rules to all analyzed compilation units.
+   *
+   * @param listener The listener to which reported matches are passed.
+   */
+  void matchCompilationUnits(DescriptionListener listener) {
+    VisitorState state =
+        VisitorState.createConfiguredForCompilation(
+            sources.context(),
+            listener,
+            ImmutableMap.of(),
+            sources.context().get(ErrorProneOptions.class));
+    for (CompilationUnitTree compilationUnit : sources.compilationUnits()) {
+      refaster.matchCompilationUnit(compilationUnit, state.withPath(new TreePath(compilationUnit)));
+    }
+  }
+}
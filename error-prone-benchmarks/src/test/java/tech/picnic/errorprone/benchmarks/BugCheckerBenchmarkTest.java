@@ -0,0 +1,58 @@
+package tech.picnic.errorprone.benchmarks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.errorprone.matchers.Description;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+final class BugCheckerBenchmarkTest {
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "ExplicitArgumentEnumeration",
+        "LexicographicalAnnotationListing",
+        "NonStaticImport",
+        "RedundantStringConversion",
+        "StaticImport",
+        "tech.picnic.errorprone.bugpatterns.StaticImport"
+      })
+  void scanCompilationUnits(String checker) {
+    BugCheckerBenchmark benchmark = new BugCheckerBenchmark();
+    benchmark.checker = checker;
+    benchmark.setUp();
+
+    List<Description> findings = new ArrayList<>();
+    benchmark.scanCompilationUnits(findings::add);
+
+    assertThat(findings)
+        .allSatisfy(
+            finding -> assertThat(finding.checkName).isEqualTo(checker.replaceFirst(".*\\.", "")));
+  }
+
+  @Test
+  void scanCompilationUnitsFindsViolations() {
+    BugCheckerBenchmark benchmark = new BugCheckerBenchmark();
+    benchmark.checker = "StaticImport";
+    benchmark.setUp();
+
+    List<Description> findings = new ArrayList<>();
+    benchmark.scanCompilationUnits(findings::add);
+
+    assertThat(findings).isNotEmpty();
+  }
+
+  @Test
+  void unknownChecker() {
+    BugCheckerBenchmark benchmark = new BugCheckerBenchmark();
+    benchmark.checker = "Foo";
+
+    assertThatThrownBy(benchmark::setUp)
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Unknown bug checker 'Foo'");
+  }
+}
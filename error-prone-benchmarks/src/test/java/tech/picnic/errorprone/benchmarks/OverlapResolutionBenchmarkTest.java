@@ -0,0 +1,21 @@
+package tech.picnic.errorprone.benchmarks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+final class OverlapResolutionBenchmarkTest {
+  @ParameterizedTest
+  @ValueSource(doubles = {0.125, 1})
+  void selection(double matchDensity) {
+    OverlapResolutionBenchmark benchmark = new OverlapResolutionBenchmark();
+    benchmark.matchCount = 100_000;
+    benchmark.matchDensity = matchDensity;
+    benchmark.setUp();
+
+    int selected = benchmark.intervalSet();
+    assertThat(selected).isPositive().isLessThan(benchmark.matchCount);
+    assertThat(benchmark.treeRangeSet()).isEqualTo(selected);
+  }
+}
@@ -0,0 +1,36 @@
+package tech.picnic.errorprone.benchmarks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.errorprone.matchers.Description;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+final class RefasterBenchmarkTest {
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "AssertJRules",
+        "CollectionRules",
+        "ReactorRules",
+        "StreamRules",
+        "StringRules",
+        "TimeRules"
+      })
+  void matchCompilationUnits(String ruleCollection) {
+    RefasterBenchmark benchmark = new RefasterBenchmark();
+    benchmark.ruleCollection = ruleCollection;
+    benchmark.namePattern = "{ruleCollection}\\$.*";
+    benchmark.sourceCopies = 2;
+    benchmark.setUp();
+
+    List<Description> matches = new ArrayList<>();
+    benchmark.matchCompilationUnits(matches::add);
+
+    assertThat(matches)
+        .isNotEmpty()
+        .allSatisfy(match -> assertThat(match.getRawMessage()).startsWith(ruleCollection + "."));
+  }
+}
@@ -103,7 +103,11 @@ public final class ConstantNaming extends BugChecker implements VariableTreeMatc
     return description.build();
   }
 
-  private static String toUpperSnakeCase(String variableName) {
+  /**
+   * Converts the given camel case variable name to upper snake case, the naming convention for
+   * constants.
+   */
+  static String toUpperSnakeCase(String variableName) {
     return SNAKE_CASE.matcher(variableName).replaceAll("$1_$2").toUpperCase(Locale.ROOT);
   }
 
@@ -0,0 +1,403 @@
+package tech.picnic.errorprone.bugpatterns;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.errorprone.BugPattern.LinkType.CUSTOM;
+import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+import static com.google.errorprone.BugPattern.StandardTags.PERFORMANCE;
+import static com.google.errorprone.matchers.Matchers.anyOf;
+import static com.google.errorprone.matchers.Matchers.instanceMethod;
+import static com.google.errorprone.matchers.Matchers.staticMethod;
+import static java.util.Objects.requireNonNull;
+import static tech.picnic.errorprone.utils.Documentation.BUG_PATTERNS_BASE_URL;
+
+import com.google.auto.service.AutoService;
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.fixes.SuggestedFixes;
+import com.google.errorprone.fixes.SuggestedFixes.AdditionPosition;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.matchers.Matcher;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Source;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.lang.model.element.ElementKind;
+import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.utils.SourceCode;
+
+/**
+ * A {@link BugChecker} that flags method bodies that compile a compile-time constant regular
+ * expression, either explicitly using {@link Pattern#compile} or implicitly by invoking one of the
+ * {@link String} methods that accept a regular expression.
+ *
+ * <p>Such regular expressions are compiled each time the enclosing method is invoked. This check
+ * instead suggests compiling them once, by introducing a {@code private static final} {@link
+ * Pattern} constant. If the enclosing class cannot declare such a constant (as is the case for
+ * inner classes prior to Java 16), then the constant is added to the innermost enclosing class that
+ * can.
+ *
+ * <p>Invocations of {@link String#split(String)} with a regular expression that is a single
+ * non-metacharacter (optionally escaped) are not flagged, as the JDK splits on such expressions
+ * without compiling them.
+ */
+// XXX: Instance field initializers and instance initializer blocks are evaluated for each
+// instance, yet are currently not flagged.
+// XXX: Consider reusing an existing `Pattern` constant with the same regular expression and flags,
+// rather than introducing another one.
+@AutoService(BugChecker.class)
+@BugPattern(
+    summary = "Constant regular expressions should be compiled only once",
+    link = BUG_PATTERNS_BASE_URL + "RepeatedRegexCompilation",
+    linkType = CUSTOM,
+    severity = WARNING,
+    tags = PERFORMANCE)
+public final class RepeatedRegexCompilation extends BugChecker
+    implements MethodInvocationTreeMatcher {
+  private static final long serialVersionUID = 1L;
+  private static final Matcher<ExpressionTree> PATTERN_COMPILE_INVOCATION =
+      staticMethod().onClass(Pattern.class.getCanonicalName()).named("compile");
+  private static final Matcher<ExpressionTree> REGEX_INVOCATION =
+      anyOf(
+          PATTERN_COMPILE_INVOCATION,
+          instanceMethod()
+              .onExactClass(String.class.getCanonicalName())
+              .namedAnyOf("matches", "replaceAll", "replaceFirst", "split"));
+  private static final ImmutableSet<Kind> CONSTANT_HOLDER_KINDS =
+      ImmutableSet.of(Kind.CLASS, Kind.ENUM, Kind.RECORD);
+  private static final CharMatcher REGEX_METACHARACTERS = CharMatcher.anyOf(".$|()[{^?*+\\");
+  private static final CharMatcher ASCII_LETTER_OR_DIGIT =
+      CharMatcher.inRange('a', 'z').or(CharMatcher.inRange('A', 'Z')).or(CharMatcher.digit());
+
+  /** Instantiates a new {@link RepeatedRegexCompilation} instance. */
+  public RepeatedRegexCompilation() {}
+
+  @Override
+  public Description matchMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    if (!isRepeatedRegexCompilation(tree, state)) {
+      return Description.NO_MATCH;
+    }
+
+    return findConstantHolder(state)
+        .map(
+            clazz ->
+                describeMatch(
+                    tree,
+                    suggestConstant(
+                        tree, clazz, !clazz.equals(state.findEnclosing(ClassTree.class)), state)))
+        .orElseGet(() -> describeMatch(tree));
+  }
+
+  private static boolean isRepeatedRegexCompilation(MethodInvocationTree tree, VisitorState state) {
+    if (!REGEX_INVOCATION.matches(tree, state) || !isInMethodBody(state.getPath())) {
+      return false;
+    }
+
+    List<? extends ExpressionTree> arguments = tree.getArguments();
+    String regex = ASTHelpers.constValue(arguments.getFirst(), String.class);
+    if (regex == null) {
+      return false;
+    }
+
+    if (PATTERN_COMPILE_INVOCATION.matches(tree, state)) {
+      return arguments.size() == 1
+          || ASTHelpers.constValue(arguments.get(1), Integer.class) != null;
+    }
+
+    return !ASTHelpers.getSymbol(tree).getSimpleName().contentEquals("split")
+        || !isSplitFastPath(regex);
+  }
+
+  /**
+   * Tells whether the given path denotes code that is part of a method or lambda expression body,
+   * rather than e.g. a field initializer.
+   */
+  private static boolean isInMethodBody(TreePath path) {
+    for (Tree tree : path) {
+      if (tree instanceof MethodTree || tree instanceof LambdaExpressionTree) {
+        return true;
+      }
+      if (tree instanceof ClassTree) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Tells whether {@link String#split} splits on the given regular expression without compiling it.
+   */
+  private static boolean isSplitFastPath(String regex) {
+    return switch (regex.length()) {
+      case 1 ->
+          !REGEX_METACHARACTERS.matches(regex.charAt(0)) && !Character.isSurrogate(regex.charAt(0));
+      case 2 ->
+          regex.charAt(0) == '\\'
+              && !ASCII_LETTER_OR_DIGIT.matches(regex.charAt(1))
+              && !Character.isSurrogate(regex.charAt(1));
+      default -> false;
+    };
+  }
+
+  /**
+   * Returns the class to which a constant can be added on behalf of the current tree, if any.
+   *
+   * <p>This is the innermost enclosing class that can declare a {@code private static} field. If
+   * this is not the class that directly encloses the current tree, then the constant is hoisted.
+   */
+  private static Optional<ClassTree> findConstantHolder(VisitorState state) {
+    for (Tree tree : state.getPath()) {
+      if (tree instanceof ClassTree clazz && isConstantHolder(clazz, state)) {
+        return Optional.of(clazz);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Tells whether a {@code private static final} field can be added to the given class.
+   *
+   * <p>Interfaces and annotation types are excluded, as their fields cannot be private. Prior to
+   * Java 16 inner classes, including local and anonymous classes, cannot declare static fields
+   * either.
+   */
+  private static boolean isConstantHolder(ClassTree clazz, VisitorState state) {
+    if (!CONSTANT_HOLDER_KINDS.contains(clazz.getKind())) {
+      return false;
+    }
+
+    ClassSymbol symbol = ASTHelpers.getSymbol(clazz);
+    return symbol.isStatic()
+        || symbol.owner instanceof PackageSymbol
+        || Source.instance(state.context).compareTo(Source.JDK16) >= 0;
+  }
+
+  private static SuggestedFix suggestConstant(
+      MethodInvocationTree tree, ClassTree clazz, boolean hoisted, VisitorState state) {
+    SuggestedFix.Builder fix = SuggestedFix.builder();
+    String patternType = SuggestedFixes.qualifyType(state, fix, Pattern.class.getCanonicalName());
+    String constantName = getConstantName(tree, clazz, state);
+
+    List<? extends ExpressionTree> arguments = tree.getArguments();
+    boolean isPatternCompile = PATTERN_COMPILE_INVOCATION.matches(tree, state);
+    String compileArguments =
+        isPatternCompile && arguments.size() > 1
+            ? toConstantExpression(arguments.getFirst(), hoisted, state)
+                + ", "
+                + toConstantExpression(arguments.get(1), hoisted, state)
+            : toConstantExpression(arguments.getFirst(), hoisted, state);
+    String constant =
+        "private static final %s %s = %s.compile(%s);"
+            .formatted(patternType, constantName, patternType, compileArguments);
+    Optional<VariableTree> lastReferencedField =
+        getLastReferencedField(
+            clazz, arguments.subList(0, isPatternCompile ? arguments.size() : 1));
+    if (lastReferencedField.isPresent()) {
+      /* The constant must not precede the fields it references, lest it is a forward reference. */
+      fix.postfixWith(lastReferencedField.orElseThrow(), "\n" + constant);
+    } else {
+      fix.merge(
+          SuggestedFixes.addMembers(
+              clazz,
+              state,
+              clazz.getKind() == Kind.ENUM ? AdditionPosition.LAST : AdditionPosition.FIRST,
+              constant));
+    }
+
+    return fix.replace(tree, getReplacement(tree, constantName, isPatternCompile, state)).build();
+  }
+
+  /**
+   * Returns the last static field declared by the given class that is referenced by simple name
+   * from any of the given expressions, if any.
+   */
+  private static Optional<VariableTree> getLastReferencedField(
+      ClassTree clazz, List<? extends ExpressionTree> expressions) {
+    Set<Symbol> referencedSymbols = new HashSet<>();
+    new TreeScanner<@Nullable Void, @Nullable Void>() {
+      @Override
+      public @Nullable Void visitIdentifier(IdentifierTree node, @Nullable Void unused) {
+        referencedSymbols.add(ASTHelpers.getSymbol(node));
+        return super.visitIdentifier(node, null);
+      }
+    }.scan(expressions, null);
+
+    return clazz.getMembers().stream()
+        .filter(VariableTree.class::isInstance)
+        .map(VariableTree.class::cast)
+        .filter(
+            field -> {
+              VarSymbol symbol = ASTHelpers.getSymbol(field);
+              return symbol.isStatic() && referencedSymbols.contains(symbol);
+            })
+        .reduce((first, second) -> second);
+  }
+
+  private static String getReplacement(
+      MethodInvocationTree tree,
+      String constantName,
+      boolean isPatternCompile,
+      VisitorState state) {
+    if (isPatternCompile) {
+      return constantName;
+    }
+
+    String receiver = SourceCode.treeToString(ASTHelpers.getReceiver(tree), state);
+    List<? extends ExpressionTree> arguments = tree.getArguments();
+    String methodName = ASTHelpers.getSymbol(tree).getSimpleName().toString();
+    return switch (methodName) {
+      case "matches" -> "%s.matcher(%s).matches()".formatted(constantName, receiver);
+      case "split" ->
+          arguments.size() == 1
+              ? "%s.split(%s)".formatted(constantName, receiver)
+              : "%s.split(%s, %s)"
+                  .formatted(
+                      constantName, receiver, SourceCode.treeToString(arguments.get(1), state));
+      default ->
+          "%s.matcher(%s).%s(%s)"
+              .formatted(
+                  constantName,
+                  receiver,
+                  methodName,
+                  SourceCode.treeToString(arguments.get(1), state));
+    };
+  }
+
+  /**
+   * Returns the source code of the given compile-time constant expression, or of an equivalent
+   * literal if the expression cannot be evaluated in a static context of the constant's class.
+   *
+   * <p>If the constant is hoisted out of the class that directly encloses the expression, then any
+   * variable it references by simple name may not be in scope, so such expressions are replaced by
+   * a literal as well.
+   */
+  private static String toConstantExpression(
+      ExpressionTree tree, boolean hoisted, VisitorState state) {
+    if (!referencesVariable(tree, /* includeStatic= */ hoisted)) {
+      return SourceCode.treeToString(tree, state);
+    }
+
+    Object value = requireNonNull(ASTHelpers.constValue(tree), "Expected a constant expression");
+    return value instanceof String
+        ? SourceCode.toStringConstantExpression(value, state)
+        : value.toString();
+  }
+
+  private static boolean referencesVariable(Tree tree, boolean includeStatic) {
+    return Boolean.TRUE.equals(
+        new TreeScanner<Boolean, @Nullable Void>() {
+          @Override
+          public Boolean visitIdentifier(IdentifierTree node, @Nullable Void unused) {
+            Symbol symbol = ASTHelpers.getSymbol(node);
+            return symbol instanceof VarSymbol && (includeStatic || !symbol.isStatic());
+          }
+
+          @Override
+          public Boolean reduce(Boolean r1, Boolean r2) {
+            return Boolean.TRUE.equals(r1) || Boolean.TRUE.equals(r2);
+          }
+        }.scan(tree, null));
+  }
+
+  /**
+   * Derives a constant name from the context in which the given tree resides, disambiguating it
+   * from the names derived for other flagged trees in the same class.
+   */
+  private static String getConstantName(
+      MethodInvocationTree tree, ClassTree clazz, VisitorState state) {
+    String baseName = getBaseConstantName(state.getPath());
+
+    List<MethodInvocationTree> namesakes = new ArrayList<>();
+    new TreePathScanner<@Nullable Void, @Nullable Void>() {
+      @Override
+      public @Nullable Void visitClass(ClassTree node, @Nullable Void unused) {
+        /* Nested classes that can hold constants receive their own. */
+        return node.equals(clazz) || !isConstantHolder(node, state)
+            ? super.visitClass(node, null)
+            : null;
+      }
+
+      @Override
+      public @Nullable Void visitMethodInvocation(
+          MethodInvocationTree node, @Nullable Void unused) {
+        if (isRepeatedRegexCompilation(node, state.withPath(getCurrentPath()))
+            && getBaseConstantName(getCurrentPath()).equals(baseName)) {
+          namesakes.add(node);
+        }
+        return super.visitMethodInvocation(node, null);
+      }
+    }.scan(getPath(clazz, state), null);
+
+    ImmutableSet<String> fieldNames =
+        clazz.getMembers().stream()
+            .filter(VariableTree.class::isInstance)
+            .map(member -> ((VariableTree) member).getName().toString())
+            .collect(toImmutableSet());
+    int index = namesakes.indexOf(tree);
+    String name = index > 0 ? baseName + '_' + (index + 1) : baseName;
+    while (fieldNames.contains(name)) {
+      name = baseName + '_' + (++index + 1);
+    }
+    return name;
+  }
+
+  private static TreePath getPath(ClassTree clazz, VisitorState state) {
+    TreePath path = state.getPath();
+    while (!path.getLeaf().equals(clazz)) {
+      path = requireNonNull(path.getParentPath(), "Class does not enclose current path");
+    }
+    return path;
+  }
+
+  private static String getBaseConstantName(TreePath path) {
+    Tree parent = path.getParentPath().getLeaf();
+    if (parent instanceof VariableTree variable
+        && path.getLeaf().equals(variable.getInitializer())) {
+      /* The `Pattern` or derived value is assigned to a variable; use its name. */
+      String name = ConstantNaming.toUpperSnakeCase(variable.getName().toString());
+      return name.endsWith("PATTERN") ? name : name + "_PATTERN";
+    }
+
+    for (Tree tree : path) {
+      if (tree instanceof MethodTree method) {
+        MethodSymbol symbol = ASTHelpers.getSymbol(method);
+        String name =
+            symbol.isConstructor()
+                ? symbol.owner.getSimpleName().toString()
+                : method.getName().toString();
+        return name.isEmpty() ? "PATTERN" : ConstantNaming.toUpperSnakeCase(name) + "_PATTERN";
+      }
+      if (tree instanceof VariableTree variable
+          && ASTHelpers.getSymbol(variable).getKind() == ElementKind.FIELD) {
+        /* This is a lambda expression in a field initializer. */
+        return ConstantNaming.toUpperSnakeCase(variable.getName().toString()) + "_PATTERN";
+      }
+    }
+    return "PATTERN";
+  }
+}
@@ -0,0 +1,372 @@
+package tech.picnic.errorprone.bugpatterns;
+
+import static com.google.errorprone.BugPattern.LinkType.CUSTOM;
+import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+import static com.google.errorprone.BugPattern.StandardTags.PERFORMANCE;
+import static com.google.errorprone.matchers.Matchers.isSubtypeOf;
+import static com.google.errorprone.matchers.method.MethodMatchers.instanceMethod;
+import static java.util.stream.Collectors.joining;
+import static tech.picnic.errorprone.utils.Documentation.BUG_PATTERNS_BASE_URL;
+
+import com.google.auto.service.AutoService;
+import com.google.common.base.Ascii;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.matchers.Matcher;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionStatementTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.IfTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
+import com.sun.tools.javac.code.Type;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.inject.Inject;
+import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.matchers.RequiresComputation;
+import tech.picnic.errorprone.utils.Flags;
+import tech.picnic.errorprone.utils.SourceCode;
+
+/**
+ * A {@link BugChecker} that flags SLF4J log statements of which the arguments require computation,
+ * even if the associated log level is disabled.
+ *
+ * <p>This check suggests to either guard such statements using the appropriate {@code
+ * Logger#isXxxEnabled} method, or to defer the computation using SLF4J 2's fluent logging API, by
+ * passing a {@link Supplier} to {@code LoggingEventBuilder#addArgument}.
+ *
+ * <p>By default only {@code trace} and {@code debug} log statements are flagged, as these log levels
+ * are commonly disabled in production. The set of log levels to consider can be configured using
+ * the {@value #LEVELS_FLAG} flag.
+ *
+ * <p>Invocations of parameterless accessor methods, such as {@code user.getId()}, are assumed to be
+ * cheap, and are therefore not flagged.
+ *
+ * <p>The suggested fixes assume that the deferred computations do not have side effects. If they
+ * do, the suggested fixes change the program's semantics.
+ */
+// XXX: Accessor methods are recognized by name only. Consider also exempting e.g. record component
+// accessors.
+// XXX: Log statements guarded by a ternary expression or an early return are not recognized as
+// such.
+@AutoService(BugChecker.class)
+@BugPattern(
+    summary = "SLF4J log statement arguments should not be computed if the log level is disabled",
+    link = BUG_PATTERNS_BASE_URL + "Slf4jEagerArgumentEvaluation",
+    linkType = CUSTOM,
+    severity = WARNING,
+    tags = PERFORMANCE)
+@SuppressWarnings("java:S2160" /* Super class equality definition suffices. */)
+public final class Slf4jEagerArgumentEvaluation extends BugChecker
+    implements MethodInvocationTreeMatcher {
+  private static final long serialVersionUID = 1L;
+  private static final String LEVELS_FLAG = "Slf4jEagerArgumentEvaluation:Levels";
+  private static final ImmutableSet<String> DEFAULT_LEVELS =
+      ImmutableSet.of("trace", "debug");
+  private static final Matcher<ExpressionTree> REQUIRES_COMPUTATION = new RequiresComputation();
+  private static final Pattern ACCESSOR_NAME = Pattern.compile("(get|is)\\p{Lu}.*");
+  private static final Matcher<ExpressionTree> SLF4J_MARKER = isSubtypeOf("org.slf4j.Marker");
+  private static final Matcher<ExpressionTree> THROWABLE = isSubtypeOf(Throwable.class);
+  private static final Matcher<ExpressionTree> SLF4J_LEVEL_CHECK_INVOCATION =
+      instanceMethod()
+          .onDescendantOf("org.slf4j.Logger")
+          .namedAnyOf(
+              "isTraceEnabled",
+              "isDebugEnabled",
+              "isInfoEnabled",
+              "isWarnEnabled",
+              "isErrorEnabled");
+  private static final String SLF4J_LOGGING_EVENT_BUILDER = "org.slf4j.spi.LoggingEventBuilder";
+
+  private final Matcher<ExpressionTree> logInvocation;
+
+  /** Instantiates a default {@link Slf4jEagerArgumentEvaluation} instance. */
+  public Slf4jEagerArgumentEvaluation() {
+    this(ErrorProneFlags.empty());
+  }
+
+  /**
+   * Instantiates a customized {@link Slf4jEagerArgumentEvaluation}.
+   *
+   * @param flags Any provided command line flags.
+   */
+  @Inject
+  Slf4jEagerArgumentEvaluation(ErrorProneFlags flags) {
+    logInvocation =
+        instanceMethod().onDescendantOf("org.slf4j.Logger").namedAnyOf(getLevels(flags));
+  }
+
+  @Override
+  public Description matchMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    if (!logInvocation.matches(tree, state)) {
+      return Description.NO_MATCH;
+    }
+
+    LogStatement statement = LogStatement.create(tree, state);
+    if (!statement.requiresComputation(state) || isGuarded(state)) {
+      return Description.NO_MATCH;
+    }
+
+    Description.Builder description = buildDescription(tree);
+    statement.suggestFluentLogging(state).ifPresent(description::addFix);
+    statement.suggestGuard(state).ifPresent(description::addFix);
+    return description.build();
+  }
+
+  private static ImmutableSet<String> getLevels(ErrorProneFlags flags) {
+    ImmutableSet<String> levels = Flags.getSet(flags, LEVELS_FLAG);
+    return levels.isEmpty() ? DEFAULT_LEVELS : levels;
+  }
+
+  /**
+   * Tells whether the current tree is (transitively) part of the then-branch of an {@code if}
+   * statement whose condition involves an SLF4J log level check.
+   */
+  private static boolean isGuarded(VisitorState state) {
+    TreePath path = state.getPath();
+    for (TreePath parent = path.getParentPath();
+        parent != null && !isScopeBoundary(parent.getLeaf());
+        path = parent, parent = parent.getParentPath()) {
+      if (parent.getLeaf() instanceof IfTree ifTree
+          && ifTree.getThenStatement().equals(path.getLeaf())
+          && containsLevelCheck(ifTree.getCondition(), state)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean isScopeBoundary(Tree tree) {
+    return tree instanceof MethodTree
+        || tree instanceof LambdaExpressionTree
+        || tree instanceof ClassTree;
+  }
+
+  private static boolean containsLevelCheck(ExpressionTree condition, VisitorState state) {
+    return Boolean.TRUE.equals(
+        new TreeScanner<Boolean, @Nullable Void>() {
+          @Override
+          public Boolean visitMethodInvocation(MethodInvocationTree node, @Nullable Void unused) {
+            return SLF4J_LEVEL_CHECK_INVOCATION.matches(node, state)
+                || Boolean.TRUE.equals(super.visitMethodInvocation(node, null));
+          }
+
+          @Override
+          public Boolean reduce(Boolean r1, Boolean r2) {
+            return Boolean.TRUE.equals(r1) || Boolean.TRUE.equals(r2);
+          }
+        }.scan(condition, null));
+  }
+
+  /**
+   * Tells whether the given expression requires computation, treating (chains of) parameterless
+   * accessor method invocations as trivial.
+   */
+  private static boolean requiresNonTrivialComputation(ExpressionTree tree, VisitorState state) {
+    if (tree instanceof MethodInvocationTree invocation && isAccessorInvocation(invocation)) {
+      ExpressionTree receiver = ASTHelpers.getReceiver(invocation);
+      return receiver != null && requiresNonTrivialComputation(receiver, state);
+    }
+
+    return REQUIRES_COMPUTATION.matches(tree, state);
+  }
+
+  private static boolean isAccessorInvocation(MethodInvocationTree tree) {
+    return tree.getArguments().isEmpty()
+        && ACCESSOR_NAME.matcher(ASTHelpers.getSymbol(tree).getSimpleName()).matches();
+  }
+
+  private static boolean throwsCheckedException(Tree tree, VisitorState state) {
+    return ASTHelpers.getThrownExceptions(tree, state).stream()
+        .anyMatch(
+            type ->
+                !ASTHelpers.isSubtype(type, state.getSymtab().runtimeExceptionType, state)
+                    && !ASTHelpers.isSubtype(type, state.getSymtab().errorType, state));
+  }
+
+  private static boolean referencesNonFinalLocalVariable(Tree tree) {
+    return Boolean.TRUE.equals(
+        new TreeScanner<Boolean, @Nullable Void>() {
+          @Override
+          public Boolean visitIdentifier(IdentifierTree node, @Nullable Void unused) {
+            Symbol symbol = ASTHelpers.getSymbol(node);
+            return symbol instanceof VarSymbol
+                && symbol.owner instanceof MethodSymbol
+                && !ASTHelpers.isConsideredFinal(symbol);
+          }
+
+          @Override
+          public Boolean reduce(Boolean r1, Boolean r2) {
+            return Boolean.TRUE.equals(r1) || Boolean.TRUE.equals(r2);
+          }
+        }.scan(tree, null));
+  }
+
+  /**
+   * Description of an SLF4J log statement.
+   *
+   * @param tree The log method invocation.
+   * @param level The name of the log level, as used by the invoked log method.
+   * @param receiver The source code of the {@code Logger} on which the log method is invoked,
+   *     followed by a dot, or the empty string if the method is invoked on an implicit receiver.
+   * @param marker The {@code Marker} passed to the log method, if any.
+   * @param message The message or format string passed to the log method.
+   * @param arguments The arguments passed to the log method to be substituted into the format
+   *     string.
+   * @param cause The {@link Throwable} passed to the log method as its final argument, if any.
+   */
+  private record LogStatement(
+      MethodInvocationTree tree,
+      String level,
+      String receiver,
+      Optional<ExpressionTree> marker,
+      ExpressionTree message,
+      List<? extends ExpressionTree> arguments,
+      Optional<ExpressionTree> cause) {
+    private static LogStatement create(MethodInvocationTree tree, VisitorState state) {
+      List<? extends ExpressionTree> args = tree.getArguments();
+      int lTrim = SLF4J_MARKER.matches(args.getFirst(), state) ? 1 : 0;
+      /*
+       * SLF4J always treats a trailing `Throwable` argument as the log statement's cause; see
+       * `Slf4jLogStatement`.
+       */
+      int rTrim = args.size() > lTrim + 1 && THROWABLE.matches(args.getLast(), state) ? 1 : 0;
+      ExpressionTree receiver = ASTHelpers.getReceiver(tree);
+      return new LogStatement(
+          tree,
+          ASTHelpers.getSymbol(tree).getSimpleName().toString(),
+          receiver == null ? "" : SourceCode.treeToString(receiver, state) + '.',
+          lTrim == 0 ? Optional.empty() : Optional.of(args.getFirst()),
+          args.get(lTrim),
+          args.subList(lTrim + 1, args.size() - rTrim),
+          rTrim == 0 ? Optional.empty() : Optional.of(args.getLast()));
+    }
+
+    private boolean requiresComputation(VisitorState state) {
+      return Stream.concat(
+              Stream.of(message()), Stream.concat(arguments().stream(), cause().stream()))
+          .anyMatch(arg -> requiresNonTrivialComputation(arg, state));
+    }
+
+    /**
+     * Suggests wrapping the log statement in an {@code if} statement that checks whether the log
+     * level is enabled, if the log method invocation is a statement by itself.
+     */
+    private Optional<SuggestedFix> suggestGuard(VisitorState state) {
+      if (!(state.getPath().getParentPath().getLeaf()
+          instanceof ExpressionStatementTree statement)) {
+        return Optional.empty();
+      }
+
+      return Optional.of(
+          SuggestedFix.replace(
+              statement,
+              "if (%sis%sEnabled(%s)) { %s }"
+                  .formatted(
+                      receiver(),
+                      capitalize(level()),
+                      marker().map(m -> SourceCode.treeToString(m, state)).orElse(""),
+                      SourceCode.treeToString(statement, state))));
+    }
+
+    /**
+     * Suggests deferring the computation of the log statement's message and arguments using SLF4J
+     * 2's fluent logging API, if available and if this does not change the program's semantics.
+     */
+    private Optional<SuggestedFix> suggestFluentLogging(VisitorState state) {
+      if (state.getTypeFromString(SLF4J_LOGGING_EVENT_BUILDER) == null
+          || cause().filter(c -> requiresNonTrivialComputation(c, state)).isPresent()
+          || arguments().stream().anyMatch(arg -> isArray(arg, state))) {
+        /*
+         * The fluent API is not available, the cause cannot be computed lazily, or an array
+         * argument would be passed as a single argument rather than as varargs.
+         */
+        return Optional.empty();
+      }
+
+      if (Stream.concat(Stream.of(message()), arguments().stream())
+          .filter(arg -> requiresNonTrivialComputation(arg, state))
+          .anyMatch(
+              arg -> referencesNonFinalLocalVariable(arg) || throwsCheckedException(arg, state))) {
+        /*
+         * Moving the computation into a `Supplier` would cause a compilation error, as such
+         * suppliers can neither capture non-final local variables nor throw checked exceptions.
+         */
+        return Optional.empty();
+      }
+
+      String replacement =
+          Stream.of(
+                  Stream.of(receiver() + "at" + capitalize(level()) + "()"),
+                  marker()
+                      .map(m -> "addMarker(" + SourceCode.treeToString(m, state) + ')')
+                      .stream(),
+                  Stream.of("setMessage(" + toArgument(message(), state) + ')'),
+                  arguments().stream().map(arg -> "addArgument(" + toArgument(arg, state) + ')'),
+                  cause().map(c -> "setCause(" + SourceCode.treeToString(c, state) + ')').stream(),
+                  Stream.of("log()"))
+              .flatMap(s -> s)
+              .collect(joining("."));
+
+      return Optional.of(SuggestedFix.replace(tree(), replacement));
+    }
+
+    private static String toArgument(ExpressionTree tree, VisitorState state) {
+      if (!requiresNonTrivialComputation(tree, state)) {
+        return SourceCode.treeToString(tree, state);
+      }
+
+      return toMethodReference(tree, state)
+          .orElseGet(() -> "() -> " + SourceCode.treeToString(tree, state));
+    }
+
+    /**
+     * Returns a method reference equivalent to the given expression, if it is a parameterless
+     * method invocation on an explicit receiver that itself does not require computation.
+     */
+    private static Optional<String> toMethodReference(ExpressionTree tree, VisitorState state) {
+      if (!(tree instanceof MethodInvocationTree invocation)
+          || !invocation.getArguments().isEmpty()
+          || !invocation.getTypeArguments().isEmpty()
+          || !(invocation.getMethodSelect() instanceof MemberSelectTree methodSelect)
+          || requiresNonTrivialComputation(methodSelect.getExpression(), state)) {
+        return Optional.empty();
+      }
+
+      return Optional.of(
+          SourceCode.treeToString(methodSelect.getExpression(), state)
+              + "::"
+              + methodSelect.getIdentifier());
+    }
+
+    private static boolean isArray(ExpressionTree tree, VisitorState state) {
+      Type type = ASTHelpers.getType(tree);
+      return type != null && state.getTypes().isArray(type);
+    }
+
+    private static String capitalize(String level) {
+      return Ascii.toUpperCase(level.substring(0, 1)) + level.substring(1);
+    }
+  }
+}
@@ -0,0 +1,298 @@
+package tech.picnic.errorprone.bugpatterns;
+
+import com.google.errorprone.BugCheckerRefactoringTestHelper;
+import com.google.errorprone.BugCheckerRefactoringTestHelper.TestMode;
+import com.google.errorprone.CompilationTestHelper;
+import org.junit.jupiter.api.Test;
+
+final class RepeatedRegexCompilationTest {
+  @Test
+  void identification() {
+    CompilationTestHelper.newInstance(RepeatedRegexCompilation.class, getClass())
+        .addSourceLines(
+            "A.java",
+            "import java.util.function.Predicate;",
+            "import java.util.regex.Pattern;",
+            "",
+            "class A {",
+            "  private static final String REGEX = \"[a-z]+\";",
+            "  private static final Pattern FOO = Pattern.compile(\"foo\");",
+            "  private static final Predicate<String> IS_NUMERIC = s -> {",
+            "    // BUG: Diagnostic contains:",
+            "    return s.matches(\"\\\\d+\");",
+            "  };",
+            "",
+            "  private final Pattern bar = Pattern.compile(\"bar\");",
+            "",
+            "  static {",
+            "    Pattern.compile(\"baz\");",
+            "  }",
+            "",
+            "  void m(String s, String regex, int flags) {",
+            "    s.matches(regex);",
+            "    s.replaceAll(regex, \"\");",
+            "    s.split(\",\");",
+            "    s.split(\"\\\\.\");",
+            "    s.split(\"-\", 2);",
+            "    s.contains(\"a+\");",
+            "    Pattern.compile(regex);",
+            "    Pattern.compile(\"a+\", flags);",
+            "    Pattern.matches(\"a+\", s);",
+            "",
+            "    // BUG: Diagnostic contains:",
+            "    s.matches(\"a+\");",
+            "    // BUG: Diagnostic contains:",
+            "    s.matches(REGEX);",
+            "    // BUG: Diagnostic contains:",
+            "    s.replaceAll(\"a+\", \"b\");",
+            "    // BUG: Diagnostic contains:",
+            "    s.replaceFirst(\"a+\", \"b\");",
+            "    // BUG: Diagnostic contains:",
+            "    s.split(\", \");",
+            "    // BUG: Diagnostic contains:",
+            "    s.split(\"\\\\s\");",
+            "    // BUG: Diagnostic contains:",
+            "    s.split(\".\", 2);",
+            "    // BUG: Diagnostic contains:",
+            "    Pattern.compile(\"a+\");",
+            "    // BUG: Diagnostic contains:",
+            "    Pattern.compile(\"a+\", Pattern.CASE_INSENSITIVE);",
+            "    // BUG: Diagnostic contains:",
+            "    Predicate<String> p = s2 -> s2.matches(\"b+\");",
+            "  }",
+            "",
+            "  interface I {",
+            "    default boolean m(String s) {",
+            "      // BUG: Diagnostic contains:",
+            "      return s.matches(\"a+\");",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  void replacement() {
+    BugCheckerRefactoringTestHelper.newInstance(RepeatedRegexCompilation.class, getClass())
+        .addInputLines(
+            "A.java",
+            "import java.util.regex.Pattern;",
+            "",
+            "class A {",
+            "  private static final String REGEX = \"[a-z]+\";",
+            "",
+            "  private final String instanceRegex = \"[0-9]+\";",
+            "",
+            "  A(String s) {",
+            "    s.matches(\"a+\");",
+            "  }",
+            "",
+            "  boolean isValid(String s) {",
+            "    return s.matches(REGEX);",
+            "  }",
+            "",
+            "  String normalize(String s) {",
+            "    String noSpaces = s.replaceAll(\"\\\\s+\", \"\");",
+            "    return noSpaces.replaceFirst(instanceRegex, \"#\").toLowerCase();",
+            "  }",
+            "",
+            "  String[] tokenize(String s, int limit) {",
+            "    return s.length() > 10 ? (s + s).split(\", \", limit) : s.split(\"\\\\s\");",
+            "  }",
+            "",
+            "  Pattern caseInsensitive() {",
+            "    final int flags = Pattern.CASE_INSENSITIVE;",
+            "    Pattern fooBar = Pattern.compile(\"foo|bar\", flags);",
+            "    return fooBar;",
+            "  }",
+            "",
+            "  enum E {",
+            "    ONE;",
+            "",
+            "    boolean m(String s) {",
+            "      return s.matches(\"one\");",
+            "    }",
+            "  }",
+            "}")
+        .addOutputLines(
+            "A.java",
+            "import java.util.regex.Pattern;",
+            "",
+            "class A {",
+            "",
+            "  private static final Pattern A_PATTERN = Pattern.compile(\"a+\");",
+            "",
+            "  private static final Pattern NO_SPACES_PATTERN = Pattern.compile(\"\\\\s+\");",
+            "",
+            "  private static final Pattern NORMALIZE_PATTERN = Pattern.compile(\"[0-9]+\");",
+            "",
+            "  private static final Pattern TOKENIZE_PATTERN = Pattern.compile(\", \");",
+            "",
+            "  private static final Pattern TOKENIZE_PATTERN_2 = Pattern.compile(\"\\\\s\");",
+            "",
+            "  private static final Pattern FOO_BAR_PATTERN = Pattern.compile(\"foo|bar\", 2);",
+            "",
+            "  private static final String REGEX = \"[a-z]+\";",
+            "  private static final Pattern IS_VALID_PATTERN = Pattern.compile(REGEX);",
+            "",
+            "  private final String instanceRegex = \"[0-9]+\";",
+            "",
+            "  A(String s) {",
+            "    A_PATTERN.matcher(s).matches();",
+            "  }",
+            "",
+            "  boolean isValid(String s) {",
+            "    return IS_VALID_PATTERN.matcher(s).matches();",
+            "  }",
+            "",
+            "  String normalize(String s) {",
+            "    String noSpaces = NO_SPACES_PATTERN.matcher(s).replaceAll(\"\");",
+            "    return NORMALIZE_PATTERN.matcher(noSpaces).replaceFirst(\"#\").toLowerCase();",
+            "  }",
+            "",
+            "  String[] tokenize(String s, int limit) {",
+            "    return s.length() > 10 ? TOKENIZE_PATTERN.split((s + s), limit) : TOKENIZE_PATTERN_2.split(s);",
+            "  }",
+            "",
+            "  Pattern caseInsensitive() {",
+            "    final int flags = Pattern.CASE_INSENSITIVE;",
+            "    Pattern fooBar = FOO_BAR_PATTERN;",
+            "    return fooBar;",
+            "  }",
+            "",
+            "  enum E {",
+            "    ONE;",
+            "",
+            "    boolean m(String s) {",
+            "      return M_PATTERN.matcher(s).matches();",
+            "    }",
+            "",
+            "    private static final Pattern M_PATTERN = Pattern.compile(\"one\");",
+            "  }",
+            "}")
+        .doTest(TestMode.TEXT_MATCH);
+  }
+
+  @Test
+  void replacementInInnerClasses() {
+    BugCheckerRefactoringTestHelper.newInstance(RepeatedRegexCompilation.class, getClass())
+        .addInputLines(
+            "A.java",
+            "import java.util.regex.Pattern;",
+            "",
+            "class A {",
+            "  class Inner {",
+            "    boolean m(String s) {",
+            "      return s.matches(\"a+\");",
+            "    }",
+            "  }",
+            "",
+            "  Runnable r() {",
+            "    return new Runnable() {",
+            "      @Override",
+            "      public void run() {",
+            "        \"x\".matches(\"b+\");",
+            "      }",
+            "    };",
+            "  }",
+            "}")
+        .addOutputLines(
+            "A.java",
+            "import java.util.regex.Pattern;",
+            "",
+            "class A {",
+            "  class Inner {",
+            "",
+            "    private static final Pattern M_PATTERN = Pattern.compile(\"a+\");",
+            "",
+            "    boolean m(String s) {",
+            "      return M_PATTERN.matcher(s).matches();",
+            "    }",
+            "  }",
+            "",
+            "  Runnable r() {",
+            "    return new Runnable() {",
+            "",
+            "      private static final Pattern RUN_PATTERN = Pattern.compile(\"b+\");",
+            "",
+            "      @Override",
+            "      public void run() {",
+            "        RUN_PATTERN.matcher(\"x\").matches();",
+            "      }",
+            "    };",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  void replacementInInnerClassesBeforeJava16() {
+    BugCheckerRefactoringTestHelper.newInstance(RepeatedRegexCompilation.class, getClass())
+        .setArgs("--release", "15")
+        .addInputLines(
+            "A.java",
+            "import java.util.regex.Pattern;",
+            "",
+            "class A {",
+            "  class Inner {",
+            "    static final String REGEX = \"a+\";",
+            "",
+            "    boolean m(String s) {",
+            "      return s.matches(REGEX);",
+            "    }",
+            "  }",
+            "",
+            "  Runnable r() {",
+            "    return new Runnable() {",
+            "      @Override",
+            "      public void run() {",
+            "        \"x\".matches(\"b+\");",
+            "      }",
+            "    };",
+            "  }",
+            "",
+            "  static class Nested {",
+            "    boolean m(String s) {",
+            "      return s.matches(\"c+\");",
+            "    }",
+            "  }",
+            "}")
+        .addOutputLines(
+            "A.java",
+            "import java.util.regex.Pattern;",
+            "",
+            "class A {",
+            "",
+            "  private static final Pattern M_PATTERN = Pattern.compile(\"a+\");",
+            "",
+            "  private static final Pattern RUN_PATTERN = Pattern.compile(\"b+\");",
+            "",
+            "  class Inner {",
+            "    static final String REGEX = \"a+\";",
+            "",
+            "    boolean m(String s) {",
+            "      return M_PATTERN.matcher(s).matches();",
+            "    }",
+            "  }",
+            "",
+            "  Runnable r() {",
+            "    return new Runnable() {",
+            "      @Override",
+            "      public void run() {",
+            "        RUN_PATTERN.matcher(\"x\").matches();",
+            "      }",
+            "    };",
+            "  }",
+            "",
+            "  static class Nested {",
+            "",
+            "    private static final Pattern M_PATTERN = Pattern.compile(\"c+\");",
+            "",
+            "    boolean m(String s) {",
+            "      return M_PATTERN.matcher(s).matches();",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+}
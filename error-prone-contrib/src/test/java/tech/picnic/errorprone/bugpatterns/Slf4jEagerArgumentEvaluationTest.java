@@ -0,0 +1,230 @@
+package tech.picnic.errorprone.bugpatterns;
+
+import com.google.errorprone.BugCheckerRefactoringTestHelper;
+import com.google.errorprone.BugCheckerRefactoringTestHelper.FixChoosers;
+import com.google.errorprone.BugCheckerRefactoringTestHelper.TestMode;
+import com.google.errorprone.CompilationTestHelper;
+import org.junit.jupiter.api.Test;
+
+final class Slf4jEagerArgumentEvaluationTest {
+  @Test
+  void identification() {
+    CompilationTestHelper.newInstance(Slf4jEagerArgumentEvaluation.class, getClass())
+        .addSourceLines(
+            "A.java",
+            "import java.util.List;",
+            "import org.slf4j.Logger;",
+            "import org.slf4j.LoggerFactory;",
+            "import org.slf4j.Marker;",
+            "",
+            "class A {",
+            "  private static final Logger LOG = LoggerFactory.getLogger(A.class);",
+            "  private static final String FMT = \"{}\";",
+            "",
+            "  void m(Marker marker, List<String> list, String s, Throwable t) {",
+            "    LOG.trace(\"foo\");",
+            "    LOG.debug(FMT, s);",
+            "    LOG.info(marker, \"{} {}\", s, list);",
+            "    LOG.debug(\"{}\", s, t);",
+            "    LOG.trace(\"{}\", 1 + 2);",
+            "    LOG.info(\"{}\", list.size());",
+            "    LOG.warn(\"{}\", list.size());",
+            "    LOG.error(\"{}\", list.size());",
+            "    LOG.debug(\"{}\", t.getMessage());",
+            "    LOG.trace(\"{} {}\", t.getCause().getLocalizedMessage(), list.isEmpty());",
+            "",
+            "    if (LOG.isDebugEnabled()) {",
+            "      LOG.debug(\"{}\", list.size());",
+            "    }",
+            "",
+            "    if (!list.isEmpty() && LOG.isTraceEnabled(marker)) {",
+            "      for (String e : list) {",
+            "        LOG.trace(marker, \"{}\", e.length());",
+            "      }",
+            "    }",
+            "",
+            "    if (LOG.isDebugEnabled()) {",
+            "      LOG.debug(\"foo\");",
+            "    } else {",
+            "      // BUG: Diagnostic contains:",
+            "      LOG.trace(\"{}\", list.size());",
+            "    }",
+            "",
+            "    // BUG: Diagnostic contains:",
+            "    LOG.trace(\"{}\", list.size());",
+            "    // BUG: Diagnostic contains:",
+            "    LOG.debug(\"foo\" + s);",
+            "    // BUG: Diagnostic contains:",
+            "    LOG.debug(marker, \"{} {}\", s, String.join(\",\", list));",
+            "    // BUG: Diagnostic contains:",
+            "    LOG.debug(\"{}\", Thread.currentThread().getName());",
+            "    // BUG: Diagnostic contains:",
+            "    LOG.debug(\"{}\", s, new IllegalStateException());",
+            "",
+            "    if (LOG.isDebugEnabled()) {",
+            "      // BUG: Diagnostic contains:",
+            "      Runnable r = () -> LOG.debug(\"{}\", list.size());",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  void identificationWithLevels() {
+    CompilationTestHelper.newInstance(Slf4jEagerArgumentEvaluation.class, getClass())
+        .setArgs("-XepOpt:Slf4jEagerArgumentEvaluation:Levels=trace,warn")
+        .addSourceLines(
+            "A.java",
+            "import java.util.List;",
+            "import org.slf4j.Logger;",
+            "import org.slf4j.LoggerFactory;",
+            "",
+            "class A {",
+            "  private static final Logger LOG = LoggerFactory.getLogger(A.class);",
+            "",
+            "  void m(List<String> list) {",
+            "    LOG.debug(\"{}\", list.size());",
+            "    LOG.info(\"{}\", list.size());",
+            "    LOG.error(\"{}\", list.size());",
+            "",
+            "    // BUG: Diagnostic contains:",
+            "    LOG.trace(\"{}\", list.size());",
+            "    // BUG: Diagnostic contains:",
+            "    LOG.warn(\"{}\", list.size());",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  void replacementFirstSuggestedFix() {
+    BugCheckerRefactoringTestHelper.newInstance(Slf4jEagerArgumentEvaluation.class, getClass())
+        .addInputLines(
+            "A.java",
+            "import java.io.IOException;",
+            "import java.util.List;",
+            "import java.util.function.Consumer;",
+            "import org.slf4j.Logger;",
+            "import org.slf4j.LoggerFactory;",
+            "import org.slf4j.Marker;",
+            "",
+            "class A {",
+            "  private static final Logger LOG = LoggerFactory.getLogger(A.class);",
+            "",
+            "  void m(Marker marker, List<String> list, String s, Throwable t) {",
+            "    LOG.trace(\"{}\", list.size());",
+            "    LOG.debug(\"foo\" + s);",
+            "    LOG.debug(marker, \"{} {}\", s, String.join(\",\", list), t);",
+            "    Consumer<String> c = e -> LOG.debug(\"{}\", e.length());",
+            "",
+            "    String mutable = s;",
+            "    mutable = mutable + s;",
+            "    LOG.debug(\"{}\", mutable.length());",
+            "    LOG.debug(\"{}\", s, new IllegalStateException());",
+            "  }",
+            "",
+            "  void n(List<String> list) throws IOException {",
+            "    LOG.debug(\"{}\", list.get(0).length());",
+            "    LOG.debug(\"{} {}\", Thread.currentThread().getName(), list.size());",
+            "    LOG.debug(\"{}\", read());",
+            "  }",
+            "",
+            "  String read() throws IOException {",
+            "    return \"foo\";",
+            "  }",
+            "}")
+        .addOutputLines(
+            "A.java",
+            "import java.io.IOException;",
+            "import java.util.List;",
+            "import java.util.function.Consumer;",
+            "import org.slf4j.Logger;",
+            "import org.slf4j.LoggerFactory;",
+            "import org.slf4j.Marker;",
+            "",
+            "class A {",
+            "  private static final Logger LOG = LoggerFactory.getLogger(A.class);",
+            "",
+            "  void m(Marker marker, List<String> list, String s, Throwable t) {",
+            "    LOG.atTrace().setMessage(\"{}\").addArgument(list::size).log();",
+            "    LOG.atDebug().setMessage(() -> \"foo\" + s).log();",
+            "    LOG.atDebug()",
+            "        .addMarker(marker)",
+            "        .setMessage(\"{} {}\")",
+            "        .addArgument(s)",
+            "        .addArgument(() -> String.join(\",\", list))",
+            "        .setCause(t)",
+            "        .log();",
+            "    Consumer<String> c = e -> LOG.atDebug().setMessage(\"{}\").addArgument(e::length).log();",
+            "",
+            "    String mutable = s;",
+            "    mutable = mutable + s;",
+            "    if (LOG.isDebugEnabled()) {",
+            "      LOG.debug(\"{}\", mutable.length());",
+            "    }",
+            "    if (LOG.isDebugEnabled()) {",
+            "      LOG.debug(\"{}\", s, new IllegalStateException());",
+            "    }",
+            "  }",
+            "",
+            "  void n(List<String> list) throws IOException {",
+            "    LOG.atDebug().setMessage(\"{}\").addArgument(() -> list.get(0).length()).log();",
+            "    LOG.atDebug()",
+            "        .setMessage(\"{} {}\")",
+            "        .addArgument(() -> Thread.currentThread().getName())",
+            "        .addArgument(list::size)",
+            "        .log();",
+            "    if (LOG.isDebugEnabled()) {",
+            "      LOG.debug(\"{}\", read());",
+            "    }",
+            "  }",
+            "",
+            "  String read() throws IOException {",
+            "    return \"foo\";",
+            "  }",
+            "}")
+        .doTest(TestMode.TEXT_MATCH);
+  }
+
+  @Test
+  void replacementSecondSuggestedFix() {
+    BugCheckerRefactoringTestHelper.newInstance(Slf4jEagerArgumentEvaluation.class, getClass())
+        .setFixChooser(FixChoosers.SECOND)
+        .addInputLines(
+            "A.java",
+            "import java.util.List;",
+            "import org.slf4j.Logger;",
+            "import org.slf4j.LoggerFactory;",
+            "import org.slf4j.Marker;",
+            "",
+            "class A {",
+            "  private static final Logger LOG = LoggerFactory.getLogger(A.class);",
+            "",
+            "  void m(Marker marker, List<String> list) {",
+            "    LOG.trace(\"{}\", list.size());",
+            "    LOG.debug(marker, \"{}\", String.join(\",\", list));",
+            "  }",
+            "}")
+        .addOutputLines(
+            "A.java",
+            "import java.util.List;",
+            "import org.slf4j.Logger;",
+            "import org.slf4j.LoggerFactory;",
+            "import org.slf4j.Marker;",
+            "",
+            "class A {",
+            "  private static final Logger LOG = LoggerFactory.getLogger(A.class);",
+            "",
+            "  void m(Marker marker, List<String> list) {",
+            "    if (LOG.isTraceEnabled()) {",
+            "      LOG.trace(\"{}\", list.size());",
+            "    }",
+            "    if (LOG.isDebugEnabled(marker)) {",
+            "      LOG.debug(marker, \"{}\", String.join(\",\", list));",
+            "    }",
+            "  }",
+            "}")
+        .doTest(TestMode.TEXT_MATCH);
+  }
+}
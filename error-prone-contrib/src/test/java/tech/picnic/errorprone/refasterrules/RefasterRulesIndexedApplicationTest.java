@@ -0,0 +1,28 @@
+package tech.picnic.errorprone.refasterrules;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import tech.picnic.errorprone.refaster.test.RefasterRuleCollection;
+
+/**
+ * Verifies that the indexed rule application performed by the Refaster checker is equivalent to
+ * regular rule application, for a selection of rule collections that together cover a wide range
+ * of template shapes.
+ */
+final class RefasterRulesIndexedApplicationTest {
+  @ParameterizedTest
+  @ValueSource(
+      classes = {
+        AssertJStringRules.class,
+        CollectionRules.class,
+        ImmutableListRules.class,
+        OptionalRules.class,
+        PrimitiveRules.class,
+        ReactorRules.class,
+        StreamRules.class,
+        StringRules.class
+      })
+  void validateIndexedApplication(Class<?> clazz) {
+    RefasterRuleCollection.validateIndexedApplication(clazz);
+  }
+}
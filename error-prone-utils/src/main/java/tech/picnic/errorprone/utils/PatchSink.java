@@ -0,0 +1,223 @@
+package tech.picnic.errorprone.utils;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.Comparator.comparing;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.UnifiedDiffUtils;
+import com.github.difflib.patch.Patch;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.errorprone.apply.DescriptionBasedDiff;
+import com.google.errorprone.apply.ImportOrganizer;
+import com.google.errorprone.apply.SourceFile;
+import com.google.errorprone.matchers.Description;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javax.tools.JavaFileObject;
+
+/**
+ * A sink to which the fixes suggested for a compilation unit are written as a unified diff, as soon
+ * as said compilation unit has been processed.
+ *
+ * <p>Unlike Error Prone's {@code -XepPatchLocation} support, this sink does not retain any state
+ * across compilation units: each diff is written to a separate file in the configured directory,
+ * such that memory usage does not grow with the number of modified source files. Once compilation
+ * completes, {@link #merge(Path, Path)} combines these diffs into a single patch. This step can
+ * also be performed from the command line:
+ *
+ * <pre>{@code
+ * java -cp <classpath> tech.picnic.errorprone.utils.PatchSink <directory> <patch-file>
+ * }</pre>
+ *
+ * <p>Paths in the diffs are relative to the JVM's working directory, and are prefixed with {@code a/}
+ * and {@code b/} in the same manner as {@code git diff} output. The resultant patch can thus be
+ * applied from said directory using e.g. {@code git apply} or {@code patch -p1}. Source files
+ * outside of the working directory are skipped, as no such relative path exists for them.
+ *
+ * <p>Each diff file is named after the SHA-256 hash of the URI of the source file to which it
+ * applies. Processing the same source file again replaces the associated diff, or removes it if no
+ * fixes are suggested, so that a directory may be reused across incremental builds.
+ *
+ * <p>Instances of this class are thread-safe.
+ */
+public final class PatchSink {
+  private static final String DIFF_FILE_EXTENSION = ".diff";
+  private static final int CONTEXT_LINES = 2;
+  private static final Splitter LINE_SPLITTER = Splitter.on('\n');
+
+  private final Path directory;
+  private final Path baseDirectory;
+
+  /**
+   * Instantiates a new {@link PatchSink}.
+   *
+   * @param directory The directory to which per-file diffs are written.
+   */
+  public PatchSink(Path directory) {
+    this(directory, Path.of(""));
+  }
+
+  @VisibleForTesting
+  PatchSink(Path directory, Path baseDirectory) {
+    this.directory = directory;
+    this.baseDirectory = baseDirectory.toAbsolutePath().normalize();
+  }
+
+  /**
+   * Writes the changes described by the first fix of each of the given {@link Description}s to a
+   * diff file associated with the given compilation unit.
+   *
+   * <p>If the compilation unit's source file does not reside below the JVM's working directory,
+   * then no diff is written.
+   *
+   * @param tree The compilation unit to which the descriptions apply.
+   * @param descriptions The descriptions reported for the compilation unit.
+   * @throws IllegalStateException If the diff cannot be written.
+   */
+  public void write(CompilationUnitTree tree, Iterable<Description> descriptions) {
+    JavaFileObject sourceFile = tree.getSourceFile();
+    Path diffFile =
+        directory.resolve(
+            Hashing.sha256().hashString(sourceFile.toUri().toString(), UTF_8)
+                + DIFF_FILE_EXTENSION);
+    Optional<String> path = getRelativePath(sourceFile);
+    try {
+      String diff = path.isPresent() ? createDiff(tree, descriptions, path.orElseThrow()) : "";
+      if (diff.isEmpty()) {
+        Files.deleteIfExists(diffFile);
+      } else {
+        writeAtomically(diffFile, diff);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Error while writing diff for '%s' to '%s'".formatted(sourceFile.getName(), diffFile), e);
+    }
+  }
+
+  /**
+   * Merges the diffs written to a directory by a {@link PatchSink} into a single patch file.
+   *
+   * @param args The command-line arguments: the directory containing the diffs, followed by the
+   *     path of the patch file to be written.
+   * @throws IOException If the diffs cannot be read or the patch file cannot be written.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.printf("Usage: %s <directory> <patch-file>%n", PatchSink.class.getName());
+      System.exit(2);
+      return;
+    }
+
+    merge(Path.of(args[0]), Path.of(args[1]));
+  }
+
+  /**
+   * Concatenates all diffs written to the given directory into a single patch file, ordered by the
+   * path of the source file to which they apply.
+   *
+   * @param directory The directory to which a {@link PatchSink} wrote per-file diffs.
+   * @param patchFile The file to which the combined patch is written.
+   * @throws IOException If the diffs cannot be read or the patch file cannot be written.
+   */
+  public static void merge(Path directory, Path patchFile) throws IOException {
+    ImmutableList<Path> files;
+    try (Stream<Path> paths = Files.list(directory)) {
+      files =
+          paths
+              .filter(p -> p.getFileName().toString().endsWith(DIFF_FILE_EXTENSION))
+              .collect(toImmutableList());
+    }
+
+    List<DiffFile> diffFiles = new ArrayList<>(files.size());
+    for (Path file : files) {
+      diffFiles.add(new DiffFile(readFirstLine(file), file));
+    }
+    diffFiles.sort(comparing(DiffFile::header));
+
+    try (OutputStream out = Files.newOutputStream(patchFile)) {
+      for (DiffFile diffFile : diffFiles) {
+        Files.copy(diffFile.path(), out);
+      }
+    }
+  }
+
+  private static String createDiff(
+      CompilationUnitTree tree, Iterable<Description> descriptions, String path)
+      throws IOException {
+    DescriptionBasedDiff diff =
+        DescriptionBasedDiff.create(
+            (JCCompilationUnit) tree, ImportOrganizer.STATIC_FIRST_ORGANIZER);
+    descriptions.forEach(diff::onDescribed);
+    if (diff.isEmpty()) {
+      return "";
+    }
+
+    SourceFile source = SourceFile.create(tree.getSourceFile());
+    List<String> originalLines = LINE_SPLITTER.splitToList(source.getSourceText());
+    diff.applyDifferences(source);
+    Patch<String> patch =
+        DiffUtils.diff(originalLines, LINE_SPLITTER.splitToList(source.getSourceText()));
+    if (patch.getDeltas().isEmpty()) {
+      return "";
+    }
+
+    return String.join(
+            "\n",
+            UnifiedDiffUtils.generateUnifiedDiff(
+                "a/" + path, "b/" + path, originalLines, patch, CONTEXT_LINES))
+        + '\n';
+  }
+
+  /**
+   * Returns the path of the given source file relative to the base directory, using forward slashes
+   * as separator, if it resides below said directory.
+   */
+  private Optional<String> getRelativePath(JavaFileObject sourceFile) {
+    URI uri = sourceFile.toUri();
+    if (!"file".equals(uri.getScheme())) {
+      return Optional.empty();
+    }
+
+    Path path = Path.of(uri).normalize();
+    return path.startsWith(baseDirectory)
+        ? Optional.of(Joiner.on('/').join(baseDirectory.relativize(path)))
+        : Optional.empty();
+  }
+
+  private static void writeAtomically(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName() + "-", ".tmp");
+    try {
+      Files.writeString(temporaryFile, content, UTF_8);
+      Files.move(temporaryFile, file, ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  private static String readFirstLine(Path file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+      String line = reader.readLine();
+      return line == null ? "" : line;
+    }
+  }
+
+  /** A diff file, along with the header line that identifies the source file it applies to. */
+  private record DiffFile(String header, Path path) {}
+}
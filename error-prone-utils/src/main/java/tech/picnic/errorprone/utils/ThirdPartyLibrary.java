@@ -6,6 +6,8 @@ import com.google.errorprone.bugpatterns.BugChecker;
 import com.google.errorprone.suppliers.Supplier;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.model.JavacElements;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility class that helps decide whether it is appropriate to introduce references to (well-known)
@@ -39,6 +41,13 @@ public enum ThirdPartyLibrary {
   private static final String IGNORE_CLASSPATH_COMPAT_FLAG =
       "ErrorProneSupport:IgnoreClasspathCompat";
 
+  /**
+   * The outcome of previous {@link #isKnownClass(String, VisitorState)} lookups during the current
+   * compilation; this avoids repeated attempts to load absent classes.
+   */
+  private static final Supplier<Map<String, Boolean>> KNOWN_CLASSES =
+      VisitorState.memoize(state -> new ConcurrentHashMap<>());
+
   @SuppressWarnings("ImmutableEnumChecker" /* Supplier is deterministic. */)
   private final Supplier<Boolean> canUse;
 
@@ -78,11 +87,18 @@ public enum ThirdPartyLibrary {
    * Attempts to determine whether a class with the given FQCN is on the classpath.
    *
    * <p>The {@link VisitorState}'s symbol table is consulted first. If the type has not yet been
-   * loaded, then an attempt is made to do so.
+   * loaded, then an attempt is made to do so. The outcome is memoized for the remainder of the
+   * compilation.
    */
   private static boolean isKnownClass(String typeName, VisitorState state) {
-    Symbol type = JavacElements.instance(state.context).getTypeElement(typeName);
-    return type != null && type.isPublic();
+    return KNOWN_CLASSES
+        .get(state)
+        .computeIfAbsent(
+            typeName,
+            name -> {
+              Symbol type = JavacElements.instance(state.context).getTypeElement(name);
+              return type != null && type.isPublic();
+            });
   }
 
   private static boolean shouldIgnoreClasspath(VisitorState state) {
@@ -0,0 +1,144 @@
+package tech.picnic.errorprone.utils;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.CompilationTestHelper;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.CompilationUnitTreeMatcher;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.util.TreeScanner;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import javax.inject.Inject;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class PatchSinkTest {
+  @Test
+  void main(@TempDir Path directory) throws IOException {
+    Files.writeString(directory.resolve("b.diff"), "--- /B.java\n+++ /B.java\n", UTF_8);
+    Files.writeString(directory.resolve("a.diff"), "--- /C.java\n+++ /C.java\n", UTF_8);
+    Files.writeString(directory.resolve("c.txt"), "--- /A.java\n+++ /A.java\n", UTF_8);
+
+    Path patchFile = directory.resolve("out.patch");
+    PatchSink.main(new String[] {directory.toString(), patchFile.toString()});
+
+    assertThat(patchFile)
+        .content(UTF_8)
+        .isEqualTo(
+            """
+            --- /B.java
+            +++ /B.java
+            --- /C.java
+            +++ /C.java
+            """);
+  }
+
+  @Test
+  void writeAndMerge(@TempDir Path directory) throws IOException {
+    Path diffDirectory = directory.resolve("diffs");
+    CompilationTestHelper.newInstance(PatchSinkTestChecker.class, getClass())
+        .setArgs("-XepOpt:PatchSinkTestChecker:Directory=" + diffDirectory)
+        .addSourceLines(
+            "B.java", "class B {", "  String m() {", "    return \"foo\".trim();", "  }", "}")
+        .addSourceLines("A.java", "class A {", "  String m() {", "    return \"foo\";", "  }", "}")
+        .addSourceLines("C.java", "class C {", "  String m() {", "    return \"qux\";", "  }", "}")
+        .doTest();
+
+    try (Stream<Path> diffFiles = Files.list(diffDirectory)) {
+      assertThat(diffFiles).hasSize(2);
+    }
+
+    Path patchFile = directory.resolve("out.patch");
+    PatchSink.merge(diffDirectory, patchFile);
+    assertThat(patchFile)
+        .content(UTF_8)
+        .isEqualTo(
+            """
+            --- a/A.java
+            +++ b/A.java
+            @@ -1,5 +1,5 @@
+             class A {
+               String m() {
+            -    return "foo";
+            +    return "bar";
+               }
+             }
+            --- a/B.java
+            +++ b/B.java
+            @@ -1,5 +1,5 @@
+             class B {
+               String m() {
+            -    return "foo".trim();
+            +    return "bar".trim();
+               }
+             }
+            """);
+  }
+
+  @Test
+  void writeOutsideBaseDirectory(@TempDir Path directory) throws IOException {
+    Path diffDirectory = directory.resolve("diffs");
+    CompilationTestHelper.newInstance(PatchSinkTestChecker.class, getClass())
+        .setArgs(
+            "-XepOpt:PatchSinkTestChecker:Directory=" + diffDirectory,
+            "-XepOpt:PatchSinkTestChecker:BaseDirectory=" + directory)
+        .addSourceLines("A.java", "class A {", "  String m() {", "    return \"foo\";", "  }", "}")
+        .doTest();
+
+    assertThat(diffDirectory).doesNotExist();
+  }
+
+  /**
+   * A {@link BugChecker} that writes a diff replacing all {@code "foo"} string literals with {@code
+   * "bar"} to a {@link PatchSink}, without reporting any violations.
+   *
+   * <p>Unless configured otherwise, diffs are relative to the root directory, below which the
+   * compilation test sources reside.
+   */
+  @BugPattern(severity = ERROR, summary = "Interacts with `PatchSink` for testing purposes")
+  public static final class PatchSinkTestChecker extends BugChecker
+      implements CompilationUnitTreeMatcher {
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings({"java:S1948", "serial"} /* Not serialized. */)
+    private final PatchSink patchSink;
+
+    @Inject
+    PatchSinkTestChecker(ErrorProneFlags flags) {
+      patchSink =
+          new PatchSink(
+              Path.of(flags.get("PatchSinkTestChecker:Directory").orElseThrow()),
+              Path.of(flags.get("PatchSinkTestChecker:BaseDirectory").orElse("/")));
+    }
+
+    @Override
+    public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
+      ImmutableList.Builder<Description> descriptions = ImmutableList.builder();
+      new TreeScanner<@Nullable Void, @Nullable Void>() {
+        @Override
+        public @Nullable Void visitLiteral(LiteralTree node, @Nullable Void unused) {
+          if ("foo".equals(node.getValue())) {
+            descriptions.add(describeMatch(node, SuggestedFix.replace(node, "\"bar\"")));
+          }
+          return super.visitLiteral(node, unused);
+        }
+      }.scan(tree, null);
+
+      patchSink.write(tree, descriptions.build());
+      return Description.NO_MATCH;
+    }
+  }
+}
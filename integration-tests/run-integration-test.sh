@@ -45,10 +45,12 @@ case "$(uname -s)" in
   Linux*)
     grep_command=grep
     sed_command=sed
+    time_command=/usr/bin/time
     ;;
   Darwin*)
     grep_command=ggrep
     sed_command=gsed
+    time_command=gtime
     ;;
   *)
     echo "Unsupported distribution $(uname -s) for this script." >&2
@@ -69,6 +71,16 @@ shared_build_flags="
 
 format_goal='com.spotify.fmt:fmt-maven-plugin:2.29:format'
 
+# The maximum relative increase, in percent, of the compilation time overhead
+# introduced by Error Prone Support, compared to the expected overhead, before
+# the integration test is considered to have failed. Build timings on shared CI
+# infrastructure are noisy, so this value is generous.
+performance_tolerance_percent=25
+
+# The number of times each build is measured. Only the median measurement is
+# considered, such that a single outlier does not affect the outcome.
+measurement_samples=3
+
 error_prone_patch_flags="${shared_error_prone_flags} -XepPatchLocation:IN_PLACE -XepPatchChecks:$(
    find "${error_prone_support_root}" \
       -path "*/META-INF/services/com.google.errorprone.bugpatterns.BugChecker" \
@@ -185,6 +197,90 @@ validation_build_log="${report_directory}/${test_name}-validation-build-log.txt"
          ${validation_build_flags}
 ) | tee "${validation_build_log}" || failure=1
 
+# Measure the compilation time and peak memory usage of the project with and
+# without Error Prone Support checks enabled, such that the overhead introduced
+# by these checks can be compared against the expected overhead. Tests are not
+# compiled or run, as they do not contribute to the overhead being measured.
+#
+# Peak memory usage is reported, but not validated: it mostly reflects the
+# JVM's heap sizing policy rather than the memory actually required.
+function measure_build() {
+  local build_name="${1}"
+  local error_prone_flags="${2}"
+  local measurements="${report_directory}/${test_name}-${build_name}-build-measurements.txt"
+
+  rm -f "${measurements}"
+  for sample in $(seq "${measurement_samples}"); do
+    (
+      set -x \
+        && "${time_command}" -f '%e %M' -a -o "${measurements}" \
+             mvn ${shared_build_flags} \
+               clean compile \
+               -Derror-prone.configuration-args="${error_prone_flags}"
+    ) > "${report_directory}/${test_name}-${build_name}-build-log-${sample}.txt" || failure=1
+  done
+}
+
+# Prints the median of the given column of the `<seconds> <peak-memory-KiB>`
+# pairs emitted by the `time` command into the given file, ignoring any other
+# lines, such as those reporting a failed build.
+function median() {
+  local measurements="${1}"
+  local column="${2}"
+
+  ("${grep_command}" -P '^\d+(\.\d+)? \d+$' "${measurements}" || true) \
+    | awk -v column="${column}" '{ print $column }' \
+    | sort -n \
+    | awk '
+        { values[NR] = $1 }
+        END { if (NR) print NR % 2 ? values[(NR + 1) / 2] : (values[NR / 2] + values[NR / 2 + 1]) / 2 }
+      '
+}
+
+measure_build 'reference' "${shared_error_prone_flags} -XepDisableAllChecks ${validation_error_prone_flags}"
+measure_build 'measured' "${error_prone_validation_flags}"
+
+reference_time="$(median "${report_directory}/${test_name}-reference-build-measurements.txt" 1)"
+reference_memory="$(median "${report_directory}/${test_name}-reference-build-measurements.txt" 2)"
+measured_time="$(median "${report_directory}/${test_name}-measured-build-measurements.txt" 1)"
+measured_memory="$(median "${report_directory}/${test_name}-measured-build-measurements.txt" 2)"
+
+echo "Median compilation time (seconds) and peak memory usage (KiB) of ${measurement_samples} builds:"
+echo "Reference build: ${reference_time:-n/a} ${reference_memory:-n/a}"
+echo "Measured build: ${measured_time:-n/a} ${measured_memory:-n/a}"
+
+actual_performance="${report_directory}/${test_name}-performance.txt"
+if [ -n "${reference_time}" ] && [ -n "${measured_time}" ]; then
+  awk -v reference="${reference_time}" -v measured="${measured_time}" \
+    'BEGIN { printf "time-overhead %.2f\n", measured / reference }' \
+    > "${actual_performance}"
+  echo 'Overhead introduced by Error Prone Support checks:'
+  cat "${actual_performance}"
+  awk -v reference="${reference_memory}" -v measured="${measured_memory}" \
+    'BEGIN { printf "memory-overhead %.2f (not validated)\n", measured / reference }'
+else
+  echo 'Not all builds could be measured. Inspect the build logs for details.'
+  failure=1
+  : > "${actual_performance}"
+fi
+
+# Perform a separate, unmeasured build that collects a per-rule Refaster
+# profile, as well as the cumulative time spent by each Error Prone check. As
+# profiling incurs overhead of its own, these reports are informational only.
+refaster_profile="${report_directory}/${test_name}-refaster-profile.csv"
+rm -f "${report_directory}/${test_name}-refaster-profile"*.csv
+(
+  set -x \
+    && mvn ${shared_build_flags} \
+         clean compile \
+         -Derror-prone.configuration-args="${error_prone_validation_flags} -XepOpt:Refaster:ProfileReport=${refaster_profile}"
+) > "${report_directory}/${test_name}-profile-build-log.txt" || failure=1
+
+echo 'Most expensive Error Prone checks:'
+head -n 21 "${report_directory}/${test_name}-refaster-profile-checks.csv" || true
+echo 'Most expensive Refaster rules:'
+head -n 21 "${refaster_profile}" || true
+
 # Collect the applied changes.
 expected_changes="${integration_test_root}/${test_name}-expected-changes.patch"
 actual_changes="${report_directory}/${test_name}-changes.patch"
@@ -195,11 +291,14 @@ expected_warnings="${integration_test_root}/${test_name}-expected-warnings.txt"
 actual_warnings="${report_directory}/${test_name}-validation-build-warnings.txt"
 ("${grep_command}" -oP "(?<=^\\Q[WARNING] ${PWD}/\\E).*" "${validation_build_log}" | "${grep_command}" -P '\] \[' || true) | LC_ALL=C sort > "${actual_warnings}"
 
-# Persist or validate the applied changes and reported warnings.
+expected_performance="${integration_test_root}/${test_name}-expected-performance.txt"
+
+# Persist or validate the applied changes, reported warnings and performance.
 if [ -n "${do_sync}" ]; then
   echo 'Saving changes...'
   cp "${actual_changes}" "${expected_changes}"
   cp "${actual_warnings}" "${expected_warnings}"
+  cp "${actual_performance}" "${expected_performance}"
 else
   echo 'Inspecting changes...'
   # XXX: This "diff of diffs" also contains vacuous sections, introduced due to
@@ -213,6 +312,21 @@ else
     echo 'Diagnostics output changed. Inspect the preceding output for details.'
     failure=1
   fi
+  echo 'Inspecting performance...'
+  if [ ! -f "${expected_performance}" ]; then
+    echo 'No expected performance recorded; run with `--sync` to record it.'
+    failure=1
+  elif ! awk -v tolerance="${performance_tolerance_percent}" '
+      NR == FNR { expected[$1] = $2; next }
+      $1 in expected && $2 > expected[$1] * (1 + tolerance / 100) {
+        printf "%s of %.2f exceeds expected %.2f by more than %d%%\n", $1, $2, expected[$1], tolerance
+        regressed = 1
+      }
+      END { exit regressed }
+    ' "${expected_performance}" "${actual_performance}"; then
+    echo 'Performance regressed. Inspect the preceding output for details.'
+    failure=1
+  fi
 fi
 
 if [ -n "${failure:-}" ]; then
@@ -6,9 +6,8 @@ import com.sun.source.util.Plugin;
 import com.sun.tools.javac.api.BasicJavacTask;
 
 /**
- * A variant of {@code com.google.errorprone.refaster.RefasterRuleCompiler} that outputs a {@code
- * fully/qualified/Class.refaster} file for each compiled {@code fully.qualified.Class} that
- * contains a Refaster rule.
+ * A variant of {@code com.google.errorprone.refaster.RefasterRuleCompiler} that outputs a {@link
+ * tech.picnic.errorprone.refaster.RefasterRuleBundle} containing all compiled Refaster rules.
  */
 @AutoService(Plugin.class)
 public final class RefasterRuleCompiler implements Plugin {
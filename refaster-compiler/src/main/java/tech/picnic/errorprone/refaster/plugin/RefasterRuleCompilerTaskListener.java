@@ -1,10 +1,19 @@
 package tech.picnic.errorprone.refaster.plugin;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableListMultimap.toImmutableListMultimap;
+import static java.util.Comparator.comparing;
+
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableClassToInstanceMap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteSource;
 import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.VisitorState;
 import com.google.errorprone.refaster.RefasterRuleBuilderScanner;
 import com.google.errorprone.refaster.UTemplater;
 import com.google.errorprone.refaster.annotation.BeforeTemplate;
@@ -21,55 +30,120 @@ import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import com.sun.tools.javac.code.Symbol.PackageSymbol;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.util.Context;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.lang.annotation.Annotation;
+import java.nio.file.NoSuchFileException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import javax.tools.FileObject;
 import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
 import javax.tools.StandardLocation;
 import org.jspecify.annotations.Nullable;
 import tech.picnic.errorprone.refaster.AnnotatedCompositeCodeTransformer;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
 
 /**
- * A variant of {@code com.google.errorprone.refaster.RefasterRuleCompilerAnalyzer} that stores
- * compiled Refaster rules in a {@code .refaster} file next to the compiled {@code .class} file,
- * rather than at a fixed location.
+ * A variant of {@code com.google.errorprone.refaster.RefasterRuleCompilerAnalyzer} that stores all
+ * Refaster rules compiled by a single compilation in a {@link RefasterRuleBundle}, located at
+ * {@link RefasterRuleBundle#resourceName()} in the class output directory and listed in the {@link
+ * RefasterRuleBundle#INDEX_RESOURCE_NAME bundle index}.
  *
- * <p>This {@link TaskListener} thus supports compilation of multiple Refaster rules.
+ * <p>This {@link TaskListener} thus supports compilation of multiple Refaster rules. Rules
+ * contained in a pre-existing bundle are retained if their top-level class was not recompiled, but
+ * still exists. Rules whose top-level class <em>was</em> recompiled are dropped, unless the
+ * recompilation yields them again; in that case they are reused rather than templated and
+ * serialized anew if their {@link RefasterRuleFingerprinter fingerprint} did not change.
  */
 final class RefasterRuleCompilerTaskListener implements TaskListener {
   private final Context context;
+  private final RefasterRuleFingerprinter fingerprinter;
+  private final Supplier<ImmutableMap<String, RefasterRuleBundle>> existingBundles =
+      Suppliers.memoize(this::loadExistingBundles);
+  private final Supplier<ImmutableListMultimap<HashCode, RefasterRuleBundle.Entry>> existingRules =
+      Suppliers.memoize(this::indexExistingRules);
+  private final Map<String, RefasterRuleBundle.Entry> compiledRules = new HashMap<>();
+  private final Set<String> compiledClasses = new HashSet<>();
 
   RefasterRuleCompilerTaskListener(Context context) {
     this.context = context;
+    this.fingerprinter = new RefasterRuleFingerprinter(context);
   }
 
   @Override
   public void finished(TaskEvent taskEvent) {
-    if (taskEvent.getKind() != Kind.ANALYZE || JavaCompiler.instance(context).errorCount() > 0) {
+    if (JavaCompiler.instance(context).errorCount() > 0) {
       return;
     }
 
+    if (taskEvent.getKind() == Kind.ANALYZE) {
+      collectRefasterRules(taskEvent);
+    } else if (taskEvent.getKind() == Kind.COMPILATION
+        && (!compiledRules.isEmpty() || !existingRules.get().isEmpty())) {
+      try {
+        outputRefasterRuleBundle();
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to persist compiled Refaster rules", e);
+      }
+    }
+  }
+
+  private void collectRefasterRules(TaskEvent taskEvent) {
+    compiledClasses.add(((ClassSymbol) taskEvent.getTypeElement()).flatName().toString());
+
     ClassTree tree = JavacTrees.instance(context).getTree(taskEvent.getTypeElement());
-    if (tree == null || !containsRefasterRules(tree)) {
+    if (tree == null) {
       return;
     }
 
-    ImmutableMap<ClassTree, CodeTransformer> rules = compileRefasterRules(tree);
-    for (Map.Entry<ClassTree, CodeTransformer> rule : rules.entrySet()) {
-      try {
-        outputCodeTransformer(rule.getValue(), getOutputFile(taskEvent, rule.getKey()));
-      } catch (IOException e) {
-        throw new UncheckedIOException("Failed to persist compiled Refaster rules", e);
+    HashCode fingerprint =
+        fingerprinter.fingerprint(
+            taskEvent.getTypeElement(), tree, taskEvent.getCompilationUnit());
+    ImmutableList<RefasterRuleBundle.Entry> unchangedRules = existingRules.get().get(fingerprint);
+    if (!unchangedRules.isEmpty()) {
+      /* This class was compiled before, in the same environment; reuse the resulting rules. */
+      for (RefasterRuleBundle.Entry rule : unchangedRules) {
+        compiledRules.put(rule.name(), rule);
       }
+      return;
+    }
+
+    if (!containsRefasterRules(tree)) {
+      return;
+    }
+
+    VisitorState state = VisitorState.createForUtilityPurposes(context);
+    for (Map.Entry<ClassTree, AnnotatedCompositeCodeTransformer> rule :
+        compileRefasterRules(tree, state).entrySet()) {
+      String name = ASTHelpers.getSymbol(rule.getKey()).flatName().toString();
+      compiledRules.put(
+          name,
+          new RefasterRuleBundle.Entry(
+              name,
+              rule.getValue().requiredIdentifiers(),
+              RequiredTypesExtractor.extract(rule.getKey(), state),
+              fingerprint,
+              serialize(rule.getValue())));
     }
   }
 
-  private ImmutableMap<ClassTree, CodeTransformer> compileRefasterRules(ClassTree tree) {
-    ImmutableMap.Builder<ClassTree, CodeTransformer> rules = ImmutableMap.builder();
+  private ImmutableMap<ClassTree, AnnotatedCompositeCodeTransformer> compileRefasterRules(
+      ClassTree tree, VisitorState state) {
+    ImmutableMap.Builder<ClassTree, AnnotatedCompositeCodeTransformer> rules =
+        ImmutableMap.builder();
     new TreeScanner<@Nullable Void, ImmutableClassToInstanceMap<Annotation>>() {
       @Override
       public @Nullable Void visitClass(
@@ -82,7 +156,10 @@ final class RefasterRuleCompilerTaskListener implements TaskListener {
           rules.put(
               node,
               new AnnotatedCompositeCodeTransformer(
-                  toPackageName(symbol), transformers, annotations));
+                  toPackageName(symbol),
+                  transformers,
+                  annotations,
+                  RequiredIdentifiersExtractor.extract(node, state)));
         }
 
         return super.visitClass(node, merge(annotations, UTemplater.annotationMap(symbol)));
@@ -91,17 +168,6 @@ final class RefasterRuleCompilerTaskListener implements TaskListener {
     return rules.buildOrThrow();
   }
 
-  private FileObject getOutputFile(TaskEvent taskEvent, ClassTree tree) throws IOException {
-    ClassSymbol symbol = ASTHelpers.getSymbol(tree);
-
-    JavaFileManager fileManager = context.get(JavaFileManager.class);
-    return fileManager.getFileForOutput(
-        StandardLocation.CLASS_OUTPUT,
-        toPackageName(symbol),
-        toSimpleFlatName(symbol) + ".refaster",
-        taskEvent.getSourceFile());
-  }
-
   private static boolean containsRefasterRules(ClassTree tree) {
     return Boolean.TRUE.equals(
         new TreeScanner<Boolean, @Nullable Void>() {
@@ -135,16 +201,157 @@ final class RefasterRuleCompilerTaskListener implements TaskListener {
     return ASTHelpers.enclosingPackage(symbol).map(PackageSymbol::toString).orElse("");
   }
 
-  private static String toSimpleFlatName(ClassSymbol symbol) {
-    String flatName = symbol.flatName().toString();
-    int lastDot = flatName.lastIndexOf((byte) '.');
-    return lastDot < 0 ? flatName : flatName.substring(lastDot + 1);
+  private void outputRefasterRuleBundle() throws IOException {
+    JavaFileManager fileManager = context.get(JavaFileManager.class);
+    ImmutableList<RefasterRuleBundle.Entry> entries =
+        Stream.concat(compiledRules.values().stream(), getRetainedRules(fileManager).stream())
+            .sorted(comparing(RefasterRuleBundle.Entry::name))
+            .collect(toImmutableList());
+
+    if (entries.isEmpty()) {
+      /* All previously compiled rules were dropped; nothing remains to be indexed. */
+      deleteOutput(fileManager, RefasterRuleBundle.INDEX_RESOURCE_NAME);
+      deleteStaleBundles(fileManager, null);
+      return;
+    }
+
+    RefasterRuleBundle bundle = new RefasterRuleBundle(entries);
+    String resourceName = bundle.resourceName();
+    try (OutputStream out = openOutput(fileManager, resourceName)) {
+      bundle.write(out);
+    }
+    try (OutputStream out = openOutput(fileManager, RefasterRuleBundle.INDEX_RESOURCE_NAME)) {
+      RefasterRuleBundle.writeIndex(ImmutableList.of(resourceName), out);
+    }
+    deleteStaleBundles(fileManager, resourceName);
+  }
+
+  /** Deletes the pre-existing bundles in the class output directory, except the given one. */
+  private void deleteStaleBundles(JavaFileManager fileManager, @Nullable String retainedBundle)
+      throws IOException {
+    for (String resourceName : existingBundles.get().keySet()) {
+      if (!resourceName.equals(retainedBundle)) {
+        deleteOutput(fileManager, resourceName);
+      }
+    }
+  }
+
+  private static OutputStream openOutput(JavaFileManager fileManager, String resourceName)
+      throws IOException {
+    return fileManager
+        .getFileForOutput(StandardLocation.CLASS_OUTPUT, "", resourceName, null)
+        .openOutputStream();
   }
 
-  private static void outputCodeTransformer(CodeTransformer codeTransformer, FileObject target)
+  private static void deleteOutput(JavaFileManager fileManager, String resourceName)
       throws IOException {
-    try (ObjectOutput output = new ObjectOutputStream(target.openOutputStream())) {
+    FileObject file = fileManager.getFileForInput(StandardLocation.CLASS_OUTPUT, "", resourceName);
+    if (file != null) {
+      file.delete();
+    }
+  }
+
+  /**
+   * Returns the rules from a pre-existing bundle in the class output directory whose top-level
+   * class was not recompiled by the current compilation, but whose class file still exists.
+   */
+  private ImmutableList<RefasterRuleBundle.Entry> getRetainedRules(JavaFileManager fileManager)
+      throws IOException {
+    ImmutableList.Builder<RefasterRuleBundle.Entry> retainedRules = ImmutableList.builder();
+    for (RefasterRuleBundle.Entry entry : existingRules.get().values()) {
+      if (!isCompiled(entry)
+          && fileManager.getJavaFileForInput(
+                  StandardLocation.CLASS_OUTPUT, entry.name(), JavaFileObject.Kind.CLASS)
+              != null) {
+        retainedRules.add(entry);
+      }
+    }
+    return retainedRules.build();
+  }
+
+  /**
+   * Tells whether the given rule's top-level class was compiled by the current compilation, in
+   * which case the rule is superseded by whatever rules that compilation yielded.
+   */
+  private boolean isCompiled(RefasterRuleBundle.Entry entry) {
+    String name = entry.name();
+    for (int separator = name.indexOf('$');
+        separator >= 0;
+        separator = name.indexOf('$', separator + 1)) {
+      if (compiledClasses.contains(name.substring(0, separator))) {
+        return true;
+      }
+    }
+    return compiledClasses.contains(name);
+  }
+
+  /**
+   * Returns the rules from the pre-existing bundles in the class output directory, if any, keyed
+   * by their {@link RefasterRuleBundle.Entry#sourceFingerprint() source fingerprint}.
+   */
+  private ImmutableListMultimap<HashCode, RefasterRuleBundle.Entry> indexExistingRules() {
+    return existingBundles.get().values().stream()
+        .flatMap(bundle -> bundle.entries().stream())
+        .collect(
+            toImmutableListMultimap(
+                RefasterRuleBundle.Entry::sourceFingerprint, Function.identity()));
+  }
+
+  /**
+   * Loads the bundles listed in a pre-existing bundle index in the class output directory, if any,
+   * keyed by their resource name.
+   */
+  private ImmutableMap<String, RefasterRuleBundle> loadExistingBundles() {
+    JavaFileManager fileManager = context.get(JavaFileManager.class);
+    try {
+      Optional<ByteSource> index =
+          readExistingOutput(fileManager, RefasterRuleBundle.INDEX_RESOURCE_NAME);
+      if (index.isEmpty()) {
+        return ImmutableMap.of();
+      }
+
+      ImmutableMap.Builder<String, RefasterRuleBundle> bundles = ImmutableMap.builder();
+      try (InputStream in = index.orElseThrow().openStream()) {
+        for (String resourceName : RefasterRuleBundle.readIndex(in)) {
+          Optional<ByteSource> bundle = readExistingOutput(fileManager, resourceName);
+          if (bundle.isPresent()) {
+            try (InputStream bundleIn = bundle.orElseThrow().openStream()) {
+              bundles.put(resourceName, RefasterRuleBundle.read(bundleIn));
+            }
+          }
+        }
+      }
+      return bundles.buildOrThrow();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read previously compiled Refaster rules", e);
+    }
+  }
+
+  @SuppressWarnings("java:S1166" /* A missing file is reported as such. */)
+  private static Optional<ByteSource> readExistingOutput(
+      JavaFileManager fileManager, String resourceName) throws IOException {
+    try {
+      FileObject file =
+          fileManager.getFileForInput(StandardLocation.CLASS_OUTPUT, "", resourceName);
+      if (file == null) {
+        return Optional.empty();
+      }
+
+      try (InputStream in = file.openInputStream()) {
+        return Optional.of(ByteSource.wrap(in.readAllBytes()));
+      }
+    } catch (NoSuchFileException | FileNotFoundException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static ByteSource serialize(CodeTransformer codeTransformer) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutput output = new ObjectOutputStream(bytes)) {
       output.writeObject(codeTransformer);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to serialize compiled Refaster rule", e);
     }
+    return ByteSource.wrap(bytes.toByteArray());
   }
 }
@@ -0,0 +1,106 @@
+package tech.picnic.errorprone.refaster.plugin;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.main.Option;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Options;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.function.Supplier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.StandardLocation;
+import tech.picnic.errorprone.refaster.CompilationEnvironment;
+
+/**
+ * Computes fingerprints of classes that may define Refaster rules, such that rules compiled by a
+ * previous compilation can be reused if neither their source code nor the compilation environment
+ * changed.
+ *
+ * <p>A fingerprint covers the name and source code of the class, the javac version, the contents of
+ * the archive that contains this Refaster rule compiler, the compilation's source or release level,
+ * the names and contents of all files on its class, module and processor paths, and the contents
+ * of the other source files in the compilation that declare symbols referenced by the class. The
+ * latter are included because Refaster rules may reference types and constants defined elsewhere
+ * in the same compilation. Changes to any other source file do not affect the fingerprint, such
+ * that editing one rule class does not cause all others to be recompiled.
+ *
+ * <p>If any of this information cannot be determined, then a unique fingerprint is returned, such
+ * that previously compiled rules are not reused.
+ */
+final class RefasterRuleFingerprinter {
+  private static final ImmutableList<Option> ENVIRONMENT_OPTIONS =
+      ImmutableList.of(
+          Option.CLASS_PATH,
+          Option.MODULE_PATH,
+          Option.PROCESSOR_PATH,
+          Option.PROCESSOR_MODULE_PATH,
+          Option.SOURCE,
+          Option.RELEASE);
+  private static final ImmutableList<StandardLocation> ENVIRONMENT_SEARCH_PATHS =
+      ImmutableList.of(
+          StandardLocation.CLASS_PATH,
+          StandardLocation.MODULE_PATH,
+          StandardLocation.ANNOTATION_PROCESSOR_PATH);
+
+  private final Supplier<HashCode> environmentFingerprint;
+
+  RefasterRuleFingerprinter(Context context) {
+    this.environmentFingerprint = Suppliers.memoize(() -> fingerprintEnvironment(context));
+  }
+
+  /**
+   * Computes the fingerprint of the given class.
+   *
+   * @param type The class of interest.
+   * @param tree The attributed declaration of the class.
+   * @param compilationUnit The compilation unit that declares the class.
+   * @return A non-{@code null} fingerprint.
+   */
+  @SuppressWarnings("java:S1166" /* An unreadable source file yields a unique fingerprint. */)
+  HashCode fingerprint(TypeElement type, ClassTree tree, CompilationUnitTree compilationUnit) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putBytes(environmentFingerprint.get().asBytes());
+    putString(hasher, type.getQualifiedName());
+    try {
+      putString(
+          hasher, compilationUnit.getSourceFile().getCharContent(/* ignoreEncodingErrors= */ true));
+    } catch (IOException e) {
+      putUniqueValue(hasher);
+    }
+    CompilationEnvironment.putSourceDependencies(hasher, tree, compilationUnit);
+    return hasher.hash();
+  }
+
+  private static HashCode fingerprintEnvironment(Context context) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    CompilationEnvironment.putCompilerVersion(hasher);
+    /* Rules are recompiled when this compiler changes, even if its version number does not. */
+    CompilationEnvironment.putArchiveContents(hasher, RefasterRuleFingerprinter.class);
+
+    Options options = Options.instance(context);
+    for (Option option : ENVIRONMENT_OPTIONS) {
+      putString(hasher, option.primaryName);
+      putString(hasher, options.isSet(option) ? options.get(option) : "");
+    }
+    for (StandardLocation location : ENVIRONMENT_SEARCH_PATHS) {
+      CompilationEnvironment.putSearchPath(hasher, context, location);
+    }
+    return hasher.hash();
+  }
+
+  private static void putString(Hasher hasher, CharSequence value) {
+    hasher.putInt(value.length()).putString(value, UTF_8);
+  }
+
+  private static void putUniqueValue(Hasher hasher) {
+    putString(hasher, UUID.randomUUID().toString());
+  }
+}
@@ -0,0 +1,111 @@
+package tech.picnic.errorprone.refaster.plugin;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.errorprone.matchers.method.MethodMatchers.staticMethod;
+import static java.util.Objects.requireNonNullElse;
+
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.matchers.Matcher;
+import com.google.errorprone.refaster.annotation.BeforeTemplate;
+import com.google.errorprone.refaster.annotation.Placeholder;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberReferenceTree.ReferenceMode;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.RequiredIdentifiers;
+
+/**
+ * A {@link TreeScanner} that derives the {@link RequiredIdentifiers} of a Refaster rule from the
+ * method invocations and method references in its {@link BeforeTemplate} methods.
+ *
+ * <p>Method invocations of {@link Placeholder} methods and of methods defined by {@code
+ * com.google.errorprone.refaster.Refaster} do not contribute identifiers, as those may match code
+ * that does not reference the invoked method by name.
+ */
+final class RequiredIdentifiersExtractor
+    extends TreeScanner<@Nullable RequiredIdentifiers, VisitorState> {
+  private static final Matcher<ExpressionTree> REFASTER_METHOD =
+      staticMethod().onClass("com.google.errorprone.refaster.Refaster");
+  private static final Matcher<ExpressionTree> REFASTER_ANY_OF =
+      staticMethod().onClass("com.google.errorprone.refaster.Refaster").named("anyOf");
+
+  private RequiredIdentifiersExtractor() {}
+
+  /**
+   * Derives the {@link RequiredIdentifiers} of the Refaster rule defined by the given class.
+   *
+   * @param tree The Refaster rule class of interest.
+   * @param state A {@link VisitorState} describing the context in which the class was found.
+   * @return A non-{@code null} {@link RequiredIdentifiers} instance that is satisfied iff at least
+   *     one of the rule's {@link BeforeTemplate} methods may match.
+   */
+  static RequiredIdentifiers extract(ClassTree tree, VisitorState state) {
+    RequiredIdentifiersExtractor extractor = new RequiredIdentifiersExtractor();
+    return RequiredIdentifiers.anyOf(
+        tree.getMembers().stream()
+            .filter(MethodTree.class::isInstance)
+            .map(MethodTree.class::cast)
+            .filter(method -> ASTHelpers.hasAnnotation(method, BeforeTemplate.class, state))
+            .map(method -> extractor.scanOrNone(method.getBody(), state))
+            .collect(toImmutableList()));
+  }
+
+  @Override
+  public @Nullable RequiredIdentifiers visitMethodInvocation(
+      MethodInvocationTree tree, VisitorState state) {
+    if (REFASTER_ANY_OF.matches(tree, state)) {
+      return RequiredIdentifiers.anyOf(
+          tree.getArguments().stream()
+              .map(argument -> scanOrNone(argument, state))
+              .collect(toImmutableList()));
+    }
+
+    if (REFASTER_METHOD.matches(tree, state)) {
+      return super.visitMethodInvocation(tree, state);
+    }
+
+    MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+    if (ASTHelpers.hasAnnotation(symbol, Placeholder.class, state)) {
+      /* Placeholder method invocations may match arbitrary code. */
+      return null;
+    }
+
+    return RequiredIdentifiers.of(symbol.getSimpleName().toString())
+        .and(scanOrNone(tree.getMethodSelect(), state))
+        .and(scanOrNone(tree.getArguments(), state));
+  }
+
+  @Override
+  public @Nullable RequiredIdentifiers visitMemberReference(
+      MemberReferenceTree tree, VisitorState state) {
+    RequiredIdentifiers subTreeIdentifiers = scanOrNone(tree.getQualifierExpression(), state);
+    return tree.getMode() == ReferenceMode.INVOKE
+        ? RequiredIdentifiers.of(tree.getName().toString()).and(subTreeIdentifiers)
+        : subTreeIdentifiers;
+  }
+
+  @Override
+  public @Nullable RequiredIdentifiers reduce(
+      @Nullable RequiredIdentifiers r1, @Nullable RequiredIdentifiers r2) {
+    if (r1 == null) {
+      return r2;
+    }
+
+    return r2 == null ? r1 : r1.and(r2);
+  }
+
+  private RequiredIdentifiers scanOrNone(@Nullable Tree tree, VisitorState state) {
+    return requireNonNullElse(scan(tree, state), RequiredIdentifiers.NONE);
+  }
+
+  private RequiredIdentifiers scanOrNone(Iterable<? extends Tree> trees, VisitorState state) {
+    return requireNonNullElse(scan(trees, state), RequiredIdentifiers.NONE);
+  }
+}
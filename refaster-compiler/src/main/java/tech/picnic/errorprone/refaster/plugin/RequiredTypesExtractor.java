@@ -0,0 +1,136 @@
+package tech.picnic.errorprone.refaster.plugin;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.errorprone.matchers.method.MethodMatchers.staticMethod;
+import static java.util.Objects.requireNonNullElse;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.matchers.Matcher;
+import com.google.errorprone.refaster.annotation.BeforeTemplate;
+import com.google.errorprone.refaster.annotation.Placeholder;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A {@link TreeScanner} that derives the types that must be on the classpath for a Refaster rule to
+ * match, from the methods and constructors referenced by its {@link BeforeTemplate} methods.
+ *
+ * <p>Code matched by a Refaster rule necessarily references the same methods and constructors as
+ * (one of) the rule's {@link BeforeTemplate} methods, and thus requires the types that declare
+ * these members to be on the classpath. As with {@link RequiredIdentifiersExtractor}, methods
+ * defined by {@code com.google.errorprone.refaster.Refaster} and {@link Placeholder} methods do not
+ * contribute required types.
+ */
+final class RequiredTypesExtractor
+    extends TreeScanner<@Nullable ImmutableSet<String>, VisitorState> {
+  private static final Matcher<ExpressionTree> REFASTER_METHOD =
+      staticMethod().onClass("com.google.errorprone.refaster.Refaster");
+  private static final Matcher<ExpressionTree> REFASTER_ANY_OF =
+      staticMethod().onClass("com.google.errorprone.refaster.Refaster").named("anyOf");
+
+  private RequiredTypesExtractor() {}
+
+  /**
+   * Derives the fully qualified names of the types that must be on the classpath for the Refaster
+   * rule defined by the given class to match.
+   *
+   * @param tree The Refaster rule class of interest.
+   * @param state A {@link VisitorState} describing the context in which the class was found.
+   * @return The names of the types required by all of the rule's {@link BeforeTemplate} methods.
+   */
+  static ImmutableSet<String> extract(ClassTree tree, VisitorState state) {
+    RequiredTypesExtractor extractor = new RequiredTypesExtractor();
+    return intersection(
+        tree.getMembers().stream()
+            .filter(MethodTree.class::isInstance)
+            .map(MethodTree.class::cast)
+            .filter(method -> ASTHelpers.hasAnnotation(method, BeforeTemplate.class, state))
+            .map(method -> extractor.scanOrNone(method.getBody(), state))
+            .collect(toImmutableList()));
+  }
+
+  @Override
+  public @Nullable ImmutableSet<String> visitMethodInvocation(
+      MethodInvocationTree tree, VisitorState state) {
+    if (REFASTER_ANY_OF.matches(tree, state)) {
+      return intersection(
+          tree.getArguments().stream()
+              .map(argument -> scanOrNone(argument, state))
+              .collect(toImmutableList()));
+    }
+
+    if (REFASTER_METHOD.matches(tree, state)) {
+      return super.visitMethodInvocation(tree, state);
+    }
+
+    MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+    if (ASTHelpers.hasAnnotation(symbol, Placeholder.class, state)) {
+      /* Placeholder method invocations may match arbitrary code. */
+      return null;
+    }
+
+    return reduce(getDeclaringType(symbol), super.visitMethodInvocation(tree, state));
+  }
+
+  @Override
+  public @Nullable ImmutableSet<String> visitMemberReference(
+      MemberReferenceTree tree, VisitorState state) {
+    return reduce(
+        getDeclaringType(ASTHelpers.getSymbol(tree)), super.visitMemberReference(tree, state));
+  }
+
+  @Override
+  public @Nullable ImmutableSet<String> visitNewClass(NewClassTree tree, VisitorState state) {
+    return reduce(getDeclaringType(ASTHelpers.getSymbol(tree)), super.visitNewClass(tree, state));
+  }
+
+  @Override
+  public @Nullable ImmutableSet<String> reduce(
+      @Nullable ImmutableSet<String> r1, @Nullable ImmutableSet<String> r2) {
+    if (r1 == null) {
+      return r2;
+    }
+
+    return r2 == null ? r1 : Sets.union(r1, r2).immutableCopy();
+  }
+
+  private ImmutableSet<String> scanOrNone(@Nullable Tree tree, VisitorState state) {
+    return requireNonNullElse(scan(tree, state), ImmutableSet.of());
+  }
+
+  /**
+   * Returns the name of the type that declares the given member, unless said type cannot be looked
+   * up by name, as is the case for local classes and the synthetic class declaring array members.
+   */
+  private static ImmutableSet<String> getDeclaringType(Symbol symbol) {
+    ClassSymbol type = ASTHelpers.enclosingClass(symbol);
+    if (type == null
+        || type.isDirectlyOrIndirectlyLocal()
+        || !(ASTHelpers.outermostClass(type).owner instanceof PackageSymbol)) {
+      return ImmutableSet.of();
+    }
+
+    return ImmutableSet.of(type.getQualifiedName().toString());
+  }
+
+  private static ImmutableSet<String> intersection(ImmutableList<ImmutableSet<String>> sets) {
+    return sets.stream()
+        .reduce((a, b) -> Sets.intersection(a, b).immutableCopy())
+        .orElseGet(ImmutableSet::of);
+  }
+}
@@ -0,0 +1,247 @@
+package tech.picnic.errorprone.refaster.plugin;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.errorprone.FileManagers;
+import com.google.errorprone.FileObjects;
+import com.sun.tools.javac.api.JavacTool;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
+
+final class RefasterRuleCompilerTaskListenerTest {
+  private static final String BUNDLE_DIRECTORY = "META-INF/refaster";
+  private static final JavaFileObject RULES_A =
+      FileObjects.forSourceLines(
+          "A.java",
+          "import com.google.errorprone.refaster.annotation.AfterTemplate;",
+          "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+          "",
+          "class A {",
+          "  static final class StringIsEmpty {",
+          "    @BeforeTemplate",
+          "    boolean before(String s) {",
+          "      return s.length() == 0;",
+          "    }",
+          "",
+          "    @AfterTemplate",
+          "    boolean after(String s) {",
+          "      return s.isEmpty();",
+          "    }",
+          "  }",
+          "}");
+  private static final JavaFileObject RULES_B =
+      FileObjects.forSourceLines(
+          "B.java",
+          "import com.google.errorprone.refaster.annotation.AfterTemplate;",
+          "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+          "",
+          "class B {",
+          "  static final class StringValueOf {",
+          "    @BeforeTemplate",
+          "    String before(Object o) {",
+          "      return o.toString();",
+          "    }",
+          "",
+          "    @AfterTemplate",
+          "    String after(Object o) {",
+          "      return String.valueOf(o);",
+          "    }",
+          "  }",
+          "}");
+
+  @Test
+  void compileRetainsRulesOfOtherClasses(@TempDir Path outputDirectory) throws IOException {
+    compile(outputDirectory, RULES_A, RULES_B);
+    assertThat(readRuleNames(outputDirectory))
+        .containsExactly("A$StringIsEmpty", "B$StringValueOf");
+
+    compile(outputDirectory, RULES_A);
+    assertThat(readRuleNames(outputDirectory))
+        .containsExactly("A$StringIsEmpty", "B$StringValueOf");
+  }
+
+  @Test
+  void compileDropsRulesRemovedFromRecompiledClass(@TempDir Path outputDirectory)
+      throws IOException {
+    compile(outputDirectory, RULES_A, RULES_B);
+    assertThat(readRuleNames(outputDirectory))
+        .containsExactly("A$StringIsEmpty", "B$StringValueOf");
+
+    compile(
+        outputDirectory,
+        FileObjects.forSourceLines(
+            "A.java", "class A {", "  static final class StringIsEmpty {}", "}"));
+    assertThat(readRuleNames(outputDirectory)).containsExactly("B$StringValueOf");
+
+    compile(outputDirectory, FileObjects.forSourceLines("B.java", "class B {}"));
+    assertThat(readRuleNames(outputDirectory)).isEmpty();
+  }
+
+  @Test
+  void compileFingerprintsRulesIndependently(@TempDir Path outputDirectory) throws IOException {
+    compile(outputDirectory, RULES_A, RULES_B);
+    ImmutableMap<String, HashCode> fingerprints = readSourceFingerprints(outputDirectory);
+
+    compile(outputDirectory, RULES_A, RULES_B);
+    assertThat(readSourceFingerprints(outputDirectory)).isEqualTo(fingerprints);
+
+    compile(
+        outputDirectory,
+        FileObjects.forSourceLines(
+            "A.java",
+            "import com.google.errorprone.refaster.annotation.AfterTemplate;",
+            "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+            "",
+            "class A {",
+            "  static final class StringIsEmpty {",
+            "    @BeforeTemplate",
+            "    boolean before(String s) {",
+            "      return s.length() < 1;",
+            "    }",
+            "",
+            "    @AfterTemplate",
+            "    boolean after(String s) {",
+            "      return s.isEmpty();",
+            "    }",
+            "  }",
+            "}"),
+        RULES_B);
+    assertThat(readSourceFingerprints(outputDirectory))
+        .containsEntry("B$StringValueOf", fingerprints.get("B$StringValueOf"))
+        .containsKey("A$StringIsEmpty")
+        .doesNotContainEntry("A$StringIsEmpty", fingerprints.get("A$StringIsEmpty"));
+  }
+
+  @Test
+  void compileFingerprintsReferencedSources(@TempDir Path outputDirectory) throws IOException {
+    JavaFileObject rules =
+        FileObjects.forSourceLines(
+            "D.java",
+            "import com.google.errorprone.refaster.annotation.AfterTemplate;",
+            "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+            "",
+            "class D {",
+            "  static final class StringIsConstant {",
+            "    @BeforeTemplate",
+            "    boolean before(String s) {",
+            "      return s.equals(C.VALUE);",
+            "    }",
+            "",
+            "    @AfterTemplate",
+            "    boolean after(String s) {",
+            "      return C.VALUE.equals(s);",
+            "    }",
+            "  }",
+            "}");
+
+    compile(outputDirectory, rules, constant("c"), RULES_B);
+    HashCode fingerprint = readSourceFingerprints(outputDirectory).get("D$StringIsConstant");
+
+    compile(outputDirectory, rules, constant("d"), RULES_B);
+    HashCode updatedFingerprint = readSourceFingerprints(outputDirectory).get("D$StringIsConstant");
+    assertThat(updatedFingerprint).isNotEqualTo(fingerprint);
+
+    compile(
+        outputDirectory,
+        rules,
+        constant("d"),
+        RULES_B,
+        FileObjects.forSourceLines("E.java", "class E {}"));
+    assertThat(readSourceFingerprints(outputDirectory))
+        .containsEntry("D$StringIsConstant", updatedFingerprint);
+  }
+
+  private static JavaFileObject constant(String value) {
+    return FileObjects.forSourceLines(
+        "C.java", "class C {", "  static final String VALUE = \"" + value + "\";", "}");
+  }
+
+  private static void compile(Path outputDirectory, JavaFileObject... sources) {
+    List<Diagnostic<?>> diagnostics = new ArrayList<>();
+    Boolean result =
+        JavacTool.create()
+            .getTask(
+                null,
+                FileManagers.testFileManager(),
+                diagnostics::add,
+                ImmutableList.of(
+                    "-d",
+                    outputDirectory.toString(),
+                    "-proc:none",
+                    "-Xplugin:RefasterRuleCompiler"),
+                ImmutableList.of(),
+                ImmutableList.copyOf(sources))
+            .call();
+
+    assertThat(diagnostics).isEmpty();
+    assertThat(result).isTrue();
+  }
+
+  private static ImmutableList<String> readRuleNames(Path outputDirectory) throws IOException {
+    return readRules(outputDirectory).stream()
+        .map(RefasterRuleBundle.Entry::name)
+        .collect(toImmutableList());
+  }
+
+  private static ImmutableMap<String, HashCode> readSourceFingerprints(Path outputDirectory)
+      throws IOException {
+    return readRules(outputDirectory).stream()
+        .collect(
+            toImmutableMap(
+                RefasterRuleBundle.Entry::name, RefasterRuleBundle.Entry::sourceFingerprint));
+  }
+
+  /**
+   * Reads the rules contained in the bundle listed in the output directory's bundle index, while
+   * verifying that no other (stale) bundles are present.
+   */
+  private static ImmutableList<RefasterRuleBundle.Entry> readRules(Path outputDirectory)
+      throws IOException {
+    Path index = outputDirectory.resolve(RefasterRuleBundle.INDEX_RESOURCE_NAME);
+    ImmutableSet<String> resourceNames = ImmutableSet.of();
+    if (Files.exists(index)) {
+      try (InputStream in = Files.newInputStream(index)) {
+        resourceNames = RefasterRuleBundle.readIndex(in);
+      }
+    }
+    assertThat(listBundles(outputDirectory)).containsExactlyInAnyOrderElementsOf(resourceNames);
+
+    ImmutableList.Builder<RefasterRuleBundle.Entry> rules = ImmutableList.builder();
+    for (String resourceName : resourceNames) {
+      try (InputStream in = Files.newInputStream(outputDirectory.resolve(resourceName))) {
+        rules.addAll(RefasterRuleBundle.read(in).entries());
+      }
+    }
+    return rules.build();
+  }
+
+  private static ImmutableList<String> listBundles(Path outputDirectory) throws IOException {
+    Path bundleDirectory = outputDirectory.resolve(BUNDLE_DIRECTORY);
+    if (!Files.isDirectory(bundleDirectory)) {
+      return ImmutableList.of();
+    }
+
+    try (Stream<Path> files = Files.list(bundleDirectory)) {
+      return files
+          .map(file -> BUNDLE_DIRECTORY + '/' + file.getFileName())
+          .filter(resourceName -> !resourceName.equals(RefasterRuleBundle.INDEX_RESOURCE_NAME))
+          .collect(toImmutableList());
+    }
+  }
+}
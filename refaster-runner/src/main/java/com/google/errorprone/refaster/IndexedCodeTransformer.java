@@ -0,0 +1,100 @@
+package com.google.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.CodeTransformer;
+import java.util.Iterator;
+import java.util.List;
+import tech.picnic.errorprone.refaster.AnnotatedCompositeCodeTransformer;
+
+/**
+ * A {@link CodeTransformer} along with the {@link TemplateHead heads} of the {@link RefasterRule}s
+ * that it comprises, such that these rules can be applied by an {@link IndexedRefasterScanner}.
+ *
+ * <p>The rules comprised by a {@link CodeTransformer} are found by traversing any {@link
+ * AnnotatedCompositeCodeTransformer}s. Other types of {@link CodeTransformer}s are opaque: they are
+ * applied as-is.
+ *
+ * <p>Instances are created through {@link RefasterInternals#index(CodeTransformer)}.
+ */
+public final class IndexedCodeTransformer {
+  private final CodeTransformer delegate;
+  private final ImmutableList<IndexedRule> rules;
+
+  private IndexedCodeTransformer(CodeTransformer delegate, ImmutableList<IndexedRule> rules) {
+    this.delegate = delegate;
+    this.rules = rules;
+  }
+
+  /**
+   * Computes the template heads of the {@link RefasterRule}s comprised by the given {@link
+   * CodeTransformer}.
+   *
+   * @param codeTransformer The {@link CodeTransformer} to be indexed.
+   * @return A non-{@code null} {@link IndexedCodeTransformer}.
+   */
+  static IndexedCodeTransformer create(CodeTransformer codeTransformer) {
+    ImmutableList.Builder<IndexedRule> rules = ImmutableList.builder();
+    collectRules(codeTransformer, rules);
+    return new IndexedCodeTransformer(codeTransformer, rules.build());
+  }
+
+  /** Returns the {@link CodeTransformer} represented by this instance. */
+  CodeTransformer delegate() {
+    return delegate;
+  }
+
+  /** Returns the {@link RefasterRule}s comprised by {@link #delegate()}, in application order. */
+  ImmutableList<IndexedRule> rules() {
+    return rules;
+  }
+
+  /**
+   * Returns a {@link CodeTransformer} equivalent to {@link #delegate()}, except that each of the
+   * {@link RefasterRule}s it comprises instead reports the given matches.
+   *
+   * @param ruleMatches The {@link RefasterRule} matches to report, in the order of {@link
+   *     #rules()}.
+   */
+  CodeTransformer withMatches(List<? extends CodeTransformer> ruleMatches) {
+    Iterator<? extends CodeTransformer> replacements = ruleMatches.iterator();
+    return replaceRules(delegate, replacements);
+  }
+
+  private static void collectRules(
+      CodeTransformer codeTransformer, ImmutableList.Builder<IndexedRule> rules) {
+    if (codeTransformer instanceof AnnotatedCompositeCodeTransformer composite) {
+      for (CodeTransformer transformer : composite.transformers()) {
+        collectRules(transformer, rules);
+      }
+    } else if (codeTransformer instanceof RefasterRule<?, ?> rule) {
+      rules.add(
+          new IndexedRule(
+              rule,
+              rule.beforeTemplates().stream().map(TemplateHead::of).collect(toImmutableList())));
+    }
+  }
+
+  private static CodeTransformer replaceRules(
+      CodeTransformer codeTransformer, Iterator<? extends CodeTransformer> replacements) {
+    if (codeTransformer instanceof AnnotatedCompositeCodeTransformer composite) {
+      return new AnnotatedCompositeCodeTransformer(
+          composite.packageName(),
+          composite.transformers().stream()
+              .map(transformer -> replaceRules(transformer, replacements))
+              .collect(toImmutableList()),
+          composite.annotations(),
+          composite.requiredIdentifiers());
+    }
+
+    return codeTransformer instanceof RefasterRule<?, ?> ? replacements.next() : codeTransformer;
+  }
+
+  /**
+   * A {@link RefasterRule}, along with the heads of each of its {@link
+   * RefasterRule#beforeTemplates() before templates}.
+   */
+  record IndexedRule(RefasterRule<?, ?> rule, ImmutableList<ImmutableSet<TemplateHead>> heads) {}
+}
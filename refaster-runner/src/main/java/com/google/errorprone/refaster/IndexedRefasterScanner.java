@@ -0,0 +1,463 @@
+package com.google.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableListMultimap.toImmutableListMultimap;
+import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+
+import com.google.common.collect.ImmutableClassToInstanceMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.SubContext;
+import com.google.errorprone.fixes.ErrorPronePosition;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RefasterInternals.IndexedMatches;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.DoWhileLoopTree;
+import com.sun.source.tree.IfTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.SynchronizedTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.tree.WhileLoopTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCStatement;
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.ListBuffer;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.tools.JavaFileManager;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A scanner that applies the {@link RefasterRule}s comprised by a number of {@link
+ * IndexedCodeTransformer}s in a single traversal of a compilation unit.
+ *
+ * <p>Rather than unifying each {@link RefasterRule#beforeTemplates() before template} with each
+ * visited tree, this scanner indexes the templates by their {@link TemplateHead head}, such that
+ * for each visited tree only the templates that may match it are attempted. The matches reported
+ * are identical to those reported by applying each rule separately: this scanner mirrors the
+ * traversal performed by Error Prone's {@code RefasterScanner}, including its handling of
+ * suppressions, and templates are attempted in rule order.
+ *
+ * <p>This class is accessed through {@link RefasterInternals}.
+ */
+// XXX: Also discriminate method invocation templates on the erasure of the receiver type. This
+// requires accounting for subtyping and for receivers that are only known after unification.
+final class IndexedRefasterScanner extends TreeScanner<@Nullable Void, @Nullable Void> {
+  private final Context context;
+  private final ImmutableList<RuleState<?, ?>> rules;
+  private final ImmutableList<TemplateReference> wildcardTemplates;
+  private final Map<Class<? extends Tree>, ShapeIndex> templatesByShape;
+  private final ImmutableListMultimap<String, RuleState<?, ?>> rulesByTemplateClass;
+  private final boolean timed;
+  private int enabledRules;
+
+  private IndexedRefasterScanner(
+      List<IndexedCodeTransformer> codeTransformers,
+      Context context,
+      JCCompilationUnit compilationUnit,
+      boolean timed) {
+    this.context = context;
+    this.timed = timed;
+
+    ImmutableList.Builder<RuleState<?, ?>> ruleStates = ImmutableList.builder();
+    ImmutableList.Builder<TemplateReference> wildcards = ImmutableList.builder();
+    Map<Class<? extends Tree>, ShapeIndex> shapes = new HashMap<>();
+    int order = 0;
+    for (IndexedCodeTransformer codeTransformer : codeTransformers) {
+      for (IndexedCodeTransformer.IndexedRule indexedRule : codeTransformer.rules()) {
+        RuleState<?, ?> rule = RuleState.create(indexedRule.rule(), context, compilationUnit);
+        ruleStates.add(rule);
+        for (int i = 0; i < indexedRule.heads().size(); i++) {
+          TemplateReference template = new TemplateReference(order++, rule, i);
+          for (TemplateHead head : indexedRule.heads().get(i)) {
+            Class<? extends Tree> shape = head.shape();
+            if (shape == null) {
+              wildcards.add(template);
+            } else {
+              shapes.computeIfAbsent(shape, s -> new ShapeIndex()).add(head, template);
+            }
+          }
+        }
+      }
+    }
+
+    this.rules = ruleStates.build();
+    this.wildcardTemplates = wildcards.build();
+    this.templatesByShape = shapes;
+    this.rulesByTemplateClass =
+        rules.stream()
+            .collect(
+                toImmutableListMultimap(rule -> rule.rule.qualifiedTemplateClass(), rule -> rule));
+    this.enabledRules = rules.size();
+  }
+
+  /**
+   * Applies the given {@link IndexedCodeTransformer}s to the tree at the given path.
+   *
+   * @param codeTransformers The {@link IndexedCodeTransformer}s to apply.
+   * @param path The path to the tree to scan; typically a compilation unit.
+   * @param context The context in which to apply the {@link IndexedCodeTransformer}s.
+   * @param timed Whether to measure the time spent attempting each {@link IndexedCodeTransformer}'s
+   *     templates.
+   * @return For each of the given {@link IndexedCodeTransformer}s, in order, the matches it
+   *     reports, as they would be reported by {@link CodeTransformer#apply(TreePath, Context,
+   *     DescriptionListener)}.
+   */
+  static ImmutableList<IndexedMatches> apply(
+      List<IndexedCodeTransformer> codeTransformers,
+      TreePath path,
+      Context context,
+      boolean timed) {
+    IndexedRefasterScanner scanner =
+        new IndexedRefasterScanner(
+            codeTransformers, context, (JCCompilationUnit) path.getCompilationUnit(), timed);
+    scanner.scan(path.getLeaf(), null);
+
+    ImmutableList.Builder<IndexedMatches> results = ImmutableList.builder();
+    int offset = 0;
+    for (IndexedCodeTransformer codeTransformer : codeTransformers) {
+      List<RuleState<?, ?>> rules =
+          scanner.rules.subList(offset, offset + codeTransformer.rules().size());
+      offset += rules.size();
+
+      List<Description> descriptions = new ArrayList<>();
+      long start = timed ? System.nanoTime() : 0;
+      codeTransformer
+          .withMatches(rules.stream().map(RuleState::asRecordedMatches).toList())
+          .apply(path, context, descriptions::add);
+      long nanos =
+          timed
+              ? System.nanoTime() - start + rules.stream().mapToLong(rule -> rule.nanos).sum()
+              : 0;
+      results.add(
+          new IndexedMatches(
+              ImmutableList.copyOf(descriptions),
+              nanos,
+              rules.stream().mapToLong(rule -> rule.candidates).sum()));
+    }
+    return results.build();
+  }
+
+  @Override
+  public @Nullable Void scan(@Nullable Tree tree, @Nullable Void unused) {
+    if (tree == null) {
+      return null;
+    }
+
+    matchTemplates((JCTree) tree);
+    return super.scan(tree, null);
+  }
+
+  @Override
+  public @Nullable Void visitClass(ClassTree tree, @Nullable Void unused) {
+    List<RuleState<?, ?>> disabledRules = disableRules(tree);
+    if (enabledRules > 0) {
+      /* Class members are matched as if they constitute a block, like `RefasterScanner` does. */
+      ListBuffer<JCStatement> statements = new ListBuffer<>();
+      for (Tree member : tree.getMembers()) {
+        if (member instanceof JCStatement statement) {
+          statements.append(statement);
+        } else {
+          member.accept(this, null);
+        }
+      }
+      scan(TreeMaker.instance(context).Block(0, statements.toList()), null);
+    }
+    enableRules(disabledRules);
+    return null;
+  }
+
+  @Override
+  public @Nullable Void visitMethod(MethodTree tree, @Nullable Void unused) {
+    List<RuleState<?, ?>> disabledRules = disableRules(tree);
+    if (enabledRules > 0) {
+      super.visitMethod(tree, null);
+    }
+    enableRules(disabledRules);
+    return null;
+  }
+
+  @Override
+  public @Nullable Void visitVariable(VariableTree tree, @Nullable Void unused) {
+    List<RuleState<?, ?>> disabledRules = disableRules(tree);
+    if (enabledRules > 0) {
+      super.visitVariable(tree, null);
+    }
+    enableRules(disabledRules);
+    return null;
+  }
+
+  @Override
+  public @Nullable Void visitDoWhileLoop(DoWhileLoopTree tree, @Nullable Void unused) {
+    scan(tree.getStatement(), null);
+    scan(ASTHelpers.stripParentheses(tree.getCondition()), null);
+    return null;
+  }
+
+  @Override
+  public @Nullable Void visitWhileLoop(WhileLoopTree tree, @Nullable Void unused) {
+    scan(ASTHelpers.stripParentheses(tree.getCondition()), null);
+    scan(tree.getStatement(), null);
+    return null;
+  }
+
+  @Override
+  public @Nullable Void visitSynchronized(SynchronizedTree tree, @Nullable Void unused) {
+    scan(ASTHelpers.stripParentheses(tree.getExpression()), null);
+    scan(tree.getBlock(), null);
+    return null;
+  }
+
+  @Override
+  public @Nullable Void visitIf(IfTree tree, @Nullable Void unused) {
+    scan(ASTHelpers.stripParentheses(tree.getCondition()), null);
+    scan(tree.getThenStatement(), null);
+    scan(tree.getElseStatement(), null);
+    return null;
+  }
+
+  /**
+   * Attempts the templates that may match the given tree, in rule order.
+   *
+   * <p>The applicable templates are drawn from up to three lists, each of which is ordered; these
+   * lists are merged on the fly. A template with multiple heads may occur in more than one list.
+   */
+  private void matchTemplates(JCTree tree) {
+    List<TemplateReference> undiscriminated = ImmutableList.of();
+    List<TemplateReference> discriminated = ImmutableList.of();
+    Class<? extends Tree> shape = tree.getKind().asInterface();
+    ShapeIndex shapeIndex = shape == null ? null : templatesByShape.get(shape);
+    if (shapeIndex != null) {
+      undiscriminated = shapeIndex.undiscriminated;
+      if (!shapeIndex.byDiscriminator.isEmpty()) {
+        String discriminator = TemplateHead.getDiscriminator(tree);
+        if (discriminator != null) {
+          discriminated = shapeIndex.byDiscriminator.getOrDefault(discriminator, discriminated);
+        }
+      }
+    }
+
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    int previous = -1;
+    while (true) {
+      TemplateReference wildcard = i < wildcardTemplates.size() ? wildcardTemplates.get(i) : null;
+      TemplateReference shaped = j < undiscriminated.size() ? undiscriminated.get(j) : null;
+      TemplateReference named = k < discriminated.size() ? discriminated.get(k) : null;
+      TemplateReference next = first(first(wildcard, shaped), named);
+      if (next == null) {
+        return;
+      }
+
+      if (next == wildcard) {
+        i++;
+      } else if (next == shaped) {
+        j++;
+      } else {
+        k++;
+      }
+
+      if (next.order() != previous && next.rule().disabled == 0) {
+        next.rule().match(next.templateIndex(), tree, timed);
+      }
+      previous = next.order();
+    }
+  }
+
+  private static @Nullable TemplateReference first(
+      @Nullable TemplateReference a, @Nullable TemplateReference b) {
+    return a == null || (b != null && b.order() < a.order()) ? b : a;
+  }
+
+  /**
+   * Disables the rules that must not be applied to the given declaration, because it suppresses
+   * them or because it is the class that defines them.
+   *
+   * @return The rules that were disabled; to be passed to {@link #enableRules(List)} once the
+   *     declaration has been scanned.
+   */
+  private List<RuleState<?, ?>> disableRules(Tree declaration) {
+    Symbol symbol = ASTHelpers.getDeclaredSymbol(declaration);
+    if (symbol == null) {
+      return ImmutableList.of();
+    }
+
+    List<RuleState<?, ?>> disabledRules = new ArrayList<>();
+    if (declaration instanceof ClassTree) {
+      for (RuleState<?, ?> rule : rulesByTemplateClass.get(symbol.getQualifiedName().toString())) {
+        disableRule(rule, disabledRules);
+      }
+    }
+
+    /* Refaster rules can only be suppressed using annotations. */
+    if (!symbol.getAnnotationMirrors().isEmpty()) {
+      for (RuleState<?, ?> rule : rules) {
+        if (rule.disabled == 0 && rule.isSuppressed(declaration)) {
+          disableRule(rule, disabledRules);
+        }
+      }
+    }
+
+    return disabledRules;
+  }
+
+  private void disableRule(RuleState<?, ?> rule, List<RuleState<?, ?>> disabledRules) {
+    if (rule.disabled++ == 0) {
+      enabledRules--;
+    }
+    disabledRules.add(rule);
+  }
+
+  private void enableRules(List<RuleState<?, ?>> disabledRules) {
+    for (RuleState<?, ?> rule : disabledRules) {
+      if (--rule.disabled == 0) {
+        enabledRules++;
+      }
+    }
+  }
+
+  /**
+   * A reference to a before template of a rule.
+   *
+   * @param order The position of the template across all rules; templates are attempted in
+   *     ascending order.
+   */
+  private record TemplateReference(int order, RuleState<?, ?> rule, int templateIndex) {}
+
+  /** The templates that may match trees of a given shape, each in ascending order. */
+  private static final class ShapeIndex {
+    private final List<TemplateReference> undiscriminated = new ArrayList<>();
+    private final Map<String, List<TemplateReference>> byDiscriminator = new HashMap<>();
+
+    void add(TemplateHead head, TemplateReference template) {
+      String discriminator = head.discriminator();
+      if (discriminator == null) {
+        undiscriminated.add(template);
+      } else {
+        byDiscriminator.computeIfAbsent(discriminator, d -> new ArrayList<>()).add(template);
+      }
+    }
+  }
+
+  /**
+   * The state associated with the application of a single {@link RefasterRule} to a single
+   * compilation unit.
+   */
+  private static final class RuleState<M extends TemplateMatch, T extends Template<M>> {
+    private final RefasterRule<M, T> rule;
+    private final Context baseContext;
+    private final JCCompilationUnit compilationUnit;
+    private final List<Description> matches = new ArrayList<>();
+    private @Nullable Context ruleContext;
+    private @Nullable JCTree lastCandidate;
+    private int disabled;
+    private long nanos;
+    private long candidates;
+
+    private RuleState(
+        RefasterRule<M, T> rule, Context baseContext, JCCompilationUnit compilationUnit) {
+      this.rule = rule;
+      this.baseContext = baseContext;
+      this.compilationUnit = compilationUnit;
+    }
+
+    static <M extends TemplateMatch, T extends Template<M>> RuleState<M, T> create(
+        RefasterRule<M, T> rule, Context context, JCCompilationUnit compilationUnit) {
+      return new RuleState<>(rule, context, compilationUnit);
+    }
+
+    boolean isSuppressed(Tree declaration) {
+      return RefasterSuppressionHelper.suppressed(rule, declaration, getContext());
+    }
+
+    /** Attempts the given before template, recording any matches like `RefasterScanner` does. */
+    @SuppressWarnings("RestrictedApi" /* Matches are described like `RefasterScanner` does. */)
+    void match(int templateIndex, JCTree tree, boolean timed) {
+      /* The templates of a single rule are attempted consecutively for any given tree. */
+      if (tree != lastCandidate) {
+        lastCandidate = tree;
+        candidates++;
+      }
+
+      long start = timed ? System.nanoTime() : 0;
+      Context context = getContext();
+      for (M match : rule.beforeTemplates().get(templateIndex).match(tree, context)) {
+        if (rule.rejectMatchesWithComments()
+            && ASTHelpers.stringContainsComments(match.getRange(compilationUnit), context)) {
+          continue;
+        }
+
+        Description.Builder description =
+            Description.builder(
+                    ErrorPronePosition.from(match.getLocation()),
+                    rule.qualifiedTemplateClass(),
+                    "",
+                    "")
+                .overrideSeverity(WARNING);
+        if (rule.afterTemplates().isEmpty()) {
+          description.addFix(SuggestedFix.prefixWith(match.getLocation(), "/* match found */"));
+        } else {
+          for (T afterTemplate : rule.afterTemplates()) {
+            description.addFix(afterTemplate.replace(match));
+          }
+        }
+        matches.add(description.build());
+      }
+      if (timed) {
+        nanos += System.nanoTime() - start;
+      }
+    }
+
+    CodeTransformer asRecordedMatches() {
+      return new RecordedMatches(ImmutableList.copyOf(matches), rule.annotations());
+    }
+
+    /**
+     * Returns the context in which this rule's templates are matched, like {@link
+     * RefasterRule#apply(TreePath, Context, DescriptionListener)} prepares it.
+     */
+    private Context getContext() {
+      if (ruleContext == null) {
+        Context context = new SubContext(baseContext);
+        if (context.get(JavaFileManager.class) == null) {
+          JavacFileManager.preRegister(context);
+        }
+        context.put(JCCompilationUnit.class, compilationUnit);
+        context.put(PackageSymbol.class, compilationUnit.packge);
+        context.put(RefasterRule.RULE_TYPE_VARS, rule.typeVariables());
+        ruleContext = context;
+      }
+      return ruleContext;
+    }
+  }
+
+  /**
+   * A {@link CodeTransformer} that reports previously recorded matches of a {@link RefasterRule}.
+   *
+   * @param matches The matches to report.
+   * @param annotations The annotations of the {@link RefasterRule}.
+   */
+  private record RecordedMatches(
+      ImmutableList<Description> matches, ImmutableClassToInstanceMap<Annotation> annotations)
+      implements CodeTransformer {
+    @Override
+    public void apply(TreePath path, Context context, DescriptionListener listener) {
+      matches.forEach(listener::onDescribed);
+    }
+  }
+}
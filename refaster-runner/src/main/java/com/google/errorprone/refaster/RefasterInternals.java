@@ -0,0 +1,139 @@
+package com.google.errorprone.refaster;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.matchers.Description;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.util.Context;
+import java.util.List;
+
+/**
+ * The single entry point through which this project accesses the package-private parts of Error
+ * Prone's Refaster implementation.
+ *
+ * <p>Several optimizations and test utilities require access to {@link RefasterRule} and {@link
+ * Template} members that Error Prone does not expose. This class therefore resides in Error Prone's
+ * {@code com.google.errorprone.refaster} package, along with the package-private classes it
+ * delegates to. Code outside of this package must access Error Prone's Refaster internals only
+ * through this class; no other classes should be added to this package unless they are
+ * package-private collaborators of this class.
+ */
+// XXX: The members accessed through this class are not part of Error Prone's public API, and may
+// change or disappear in any Error Prone release; each Error Prone upgrade must therefore be
+// validated against this package. `RefasterRuleCollection` verifies that indexed and regular rule
+// application report identical matches for each rule collection test input in this project, while
+// `TemplateHeadTest` verifies the assumptions made about Error Prone's `UTree` types. Since split
+// packages are not supported on the module path, this approach also requires that Error Prone is
+// loaded from the classpath.
+public final class RefasterInternals {
+  private RefasterInternals() {}
+
+  /**
+   * Computes the template heads of the {@link RefasterRule}s comprised by the given {@link
+   * CodeTransformer}, such that they can be applied using {@link #applyIndexed(List, TreePath,
+   * Context, boolean)}.
+   *
+   * @param codeTransformer The {@link CodeTransformer} to be indexed.
+   * @return A non-{@code null} {@link IndexedCodeTransformer}.
+   */
+  public static IndexedCodeTransformer index(CodeTransformer codeTransformer) {
+    return IndexedCodeTransformer.create(codeTransformer);
+  }
+
+  /**
+   * Applies the given {@link IndexedCodeTransformer}s to the tree at the given path, in a single
+   * traversal.
+   *
+   * @param codeTransformers The {@link IndexedCodeTransformer}s to apply.
+   * @param path The path to the tree to scan; typically a compilation unit.
+   * @param context The context in which to apply the {@link IndexedCodeTransformer}s.
+   * @param timed Whether to measure the time spent attempting each {@link IndexedCodeTransformer}'s
+   *     templates.
+   * @return For each of the given {@link IndexedCodeTransformer}s, in order, the matches it
+   *     reports, as they would be reported by {@link CodeTransformer#apply(TreePath, Context,
+   *     DescriptionListener)}.
+   * @see IndexedRefasterScanner
+   */
+  public static ImmutableList<IndexedMatches> applyIndexed(
+      List<IndexedCodeTransformer> codeTransformers,
+      TreePath path,
+      Context context,
+      boolean timed) {
+    return IndexedRefasterScanner.apply(codeTransformers, path, context, timed);
+  }
+
+  /**
+   * Decomposes the given {@link CodeTransformer} into rules that each match only a single
+   * alternative of the original rule.
+   *
+   * <p>An alternative is either a {@link com.google.errorprone.refaster.annotation.BeforeTemplate}
+   * method or, if such a method's expression is a {@link Refaster#anyOf} invocation, one of the
+   * branches of said invocation.
+   *
+   * @param codeTransformer The {@link CodeTransformer} to decompose.
+   * @return A mapping from human-readable descriptions of the alternatives of the given rule to
+   *     associated {@link CodeTransformer}s, in declaration order; empty if the given {@link
+   *     CodeTransformer} is not a {@link RefasterRule}.
+   */
+  // XXX: Also decompose `Refaster.anyOf` invocations that are nested inside other expressions, or
+  // that are part of a `BlockTemplate`.
+  public static ImmutableMap<String, CodeTransformer> decomposeAlternatives(
+      CodeTransformer codeTransformer) {
+    if (!(codeTransformer instanceof RefasterRule<?, ?> rule)) {
+      return ImmutableMap.of();
+    }
+
+    ImmutableList<? extends Template<?>> beforeTemplates = rule.beforeTemplates();
+    ImmutableMap.Builder<String, CodeTransformer> alternatives = ImmutableMap.builder();
+    for (int i = 0; i < beforeTemplates.size(); i++) {
+      Template<?> template = beforeTemplates.get(i);
+      String templateDescription =
+          "`@BeforeTemplate` method %s of %s".formatted(i + 1, beforeTemplates.size());
+      if (template instanceof ExpressionTemplate expressionTemplate
+          && expressionTemplate.expression() instanceof UAnyOf anyOf) {
+        ImmutableList<UExpression> branches = anyOf.expressions();
+        for (int j = 0; j < branches.size(); j++) {
+          alternatives.put(
+              "`Refaster.anyOf` branch %s of %s in %s"
+                  .formatted(j + 1, branches.size(), templateDescription),
+              withBeforeTemplate(
+                  rule,
+                  ExpressionTemplate.create(
+                      expressionTemplate.annotations(),
+                      expressionTemplate.templateTypeVariables(),
+                      expressionTemplate.expressionArgumentTypes(),
+                      branches.get(j),
+                      expressionTemplate.returnType())));
+        }
+      } else {
+        alternatives.put(templateDescription, withBeforeTemplate(rule, template));
+      }
+    }
+
+    return alternatives.buildOrThrow();
+  }
+
+  private static CodeTransformer withBeforeTemplate(
+      RefasterRule<?, ?> rule, Template<?> beforeTemplate) {
+    return RefasterRule.create(
+        rule.qualifiedTemplateClass(),
+        rule.typeVariables(),
+        ImmutableList.of(beforeTemplate),
+        rule.afterTemplates(),
+        rule.annotations());
+  }
+
+  /**
+   * The matches reported by an {@link IndexedCodeTransformer}.
+   *
+   * @param descriptions The reported matches, in the order in which they were reported.
+   * @param nanos The time spent attempting the {@link IndexedCodeTransformer}'s templates, in
+   *     nanoseconds; zero if timing was not requested.
+   * @param candidates The number of trees against which the {@link IndexedCodeTransformer}'s
+   *     templates were attempted; i.e., the trees that were not ruled out by the templates' heads.
+   */
+  public record IndexedMatches(
+      ImmutableList<Description> descriptions, long nanos, long candidates) {}
+}
@@ -0,0 +1,161 @@
+package com.google.errorprone.refaster;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.sun.source.tree.ArrayAccessTree;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.ConditionalExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.InstanceOfTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.tree.UnaryTree;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The outermost shape of the trees that a {@link Template} can match.
+ *
+ * <p>A template's head is derived from the root of its {@link UTree} representation: most such
+ * roots only unify with trees of a single kind, and some additionally require the target tree to
+ * have a specific name or operator. Templates whose root may unify with arbitrary trees are
+ * represented by {@link #WILDCARD}.
+ *
+ * @param shape The interface implemented by the matched trees, or {@code null} if the template may
+ *     match trees of any kind.
+ * @param discriminator The method name, member name or operator that the matched trees must have,
+ *     or {@code null} if this is not constrained.
+ */
+record TemplateHead(@Nullable Class<? extends Tree> shape, @Nullable String discriminator) {
+  /** The head of templates that may match trees of any kind. */
+  static final TemplateHead WILDCARD = new TemplateHead(null, null);
+
+  /**
+   * The {@link UTree} types whose instances only unify with trees of the associated shape, without
+   * imposing any further constraints that can be derived cheaply.
+   */
+  private static final ImmutableMap<Class<? extends UTree<?>>, Class<? extends Tree>>
+      SINGLE_SHAPE_TEMPLATES =
+          ImmutableMap.<Class<? extends UTree<?>>, Class<? extends Tree>>builder()
+              .put(UArrayAccess.class, ArrayAccessTree.class)
+              .put(UAssign.class, AssignmentTree.class)
+              .put(UAssignOp.class, CompoundAssignmentTree.class)
+              .put(UConditional.class, ConditionalExpressionTree.class)
+              .put(UInstanceOf.class, InstanceOfTree.class)
+              .put(ULambda.class, LambdaExpressionTree.class)
+              .put(ULiteral.class, LiteralTree.class)
+              .put(UMemberReference.class, MemberReferenceTree.class)
+              .put(UNewArray.class, NewArrayTree.class)
+              .put(UNewClass.class, NewClassTree.class)
+              .put(UTypeCast.class, TypeCastTree.class)
+              .put(UUnary.class, UnaryTree.class)
+              .buildOrThrow();
+
+  /**
+   * Returns the heads of the given template.
+   *
+   * @param template The template of interest.
+   * @return A non-empty set of heads, such that the template can only match trees that have at
+   *     least one of these heads.
+   */
+  static ImmutableSet<TemplateHead> of(Template<?> template) {
+    if (template instanceof ExpressionTemplate expressionTemplate) {
+      return of(expressionTemplate.expression());
+    }
+    if (template instanceof BlockTemplate) {
+      return ImmutableSet.of(new TemplateHead(BlockTree.class, null));
+    }
+    return ImmutableSet.of(WILDCARD);
+  }
+
+  private static ImmutableSet<TemplateHead> of(UExpression expression) {
+    if (expression instanceof UAnyOf anyOf) {
+      /* Each alternative is unified with the target tree, stripped of any parentheses. */
+      ImmutableSet.Builder<TemplateHead> heads = ImmutableSet.builder();
+      heads.add(new TemplateHead(ParenthesizedTree.class, null));
+      for (UExpression alternative : anyOf.expressions()) {
+        ImmutableSet<TemplateHead> alternativeHeads = of(alternative);
+        if (alternativeHeads.contains(WILDCARD)) {
+          return alternativeHeads;
+        }
+        heads.addAll(alternativeHeads);
+      }
+      return heads.build();
+    }
+
+    if (expression instanceof UMethodInvocation methodInvocation) {
+      return ImmutableSet.of(
+          new TemplateHead(
+              MethodInvocationTree.class, getMethodName(methodInvocation.getMethodSelect())));
+    }
+
+    if (expression instanceof UMemberSelect memberSelect) {
+      /* Unqualified references to members of `this` are matched as well. */
+      String identifier = memberSelect.getIdentifier().contents();
+      return ImmutableSet.of(
+          new TemplateHead(MemberSelectTree.class, identifier),
+          new TemplateHead(IdentifierTree.class, identifier));
+    }
+
+    if (expression instanceof UBinary binary) {
+      return ImmutableSet.of(new TemplateHead(BinaryTree.class, binary.getKind().name()));
+    }
+
+    for (Map.Entry<Class<? extends UTree<?>>, Class<? extends Tree>> entry :
+        SINGLE_SHAPE_TEMPLATES.entrySet()) {
+      if (entry.getKey().isInstance(expression)) {
+        return ImmutableSet.of(new TemplateHead(entry.getValue(), null));
+      }
+    }
+
+    return ImmutableSet.of(WILDCARD);
+  }
+
+  /**
+   * Returns the name of the method invoked by the given method select, if it can be determined
+   * without unification.
+   */
+  private static @Nullable String getMethodName(UExpression methodSelect) {
+    if (methodSelect instanceof UMemberSelect memberSelect) {
+      return memberSelect.getIdentifier().contents();
+    }
+    if (methodSelect instanceof UStaticIdent staticIdent) {
+      return staticIdent.getName().contents();
+    }
+    return null;
+  }
+
+  /**
+   * Returns the discriminator of the given tree, to be compared with the {@link #discriminator()}
+   * of templates with a matching {@link #shape()}.
+   *
+   * @param tree The tree of interest.
+   * @return The tree's method name, member name or operator, if applicable.
+   */
+  static @Nullable String getDiscriminator(Tree tree) {
+    return switch (tree) {
+      case MethodInvocationTree methodInvocation -> getName(methodInvocation.getMethodSelect());
+      case BinaryTree binary -> binary.getKind().name();
+      default -> getName(tree);
+    };
+  }
+
+  private static @Nullable String getName(Tree tree) {
+    return switch (tree) {
+      case MemberSelectTree memberSelect -> memberSelect.getIdentifier().toString();
+      case IdentifierTree identifier -> identifier.getName().toString();
+      default -> null;
+    };
+  }
+}
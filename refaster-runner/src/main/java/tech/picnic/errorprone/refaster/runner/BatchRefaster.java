@@ -0,0 +1,376 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.apply.DescriptionBasedDiff;
+import com.google.errorprone.apply.ImportOrganizer;
+import com.google.errorprone.apply.PatchFileDestination;
+import com.google.errorprone.apply.SourceFile;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.api.MultiTaskListener;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * A command-line tool that applies Refaster rules to all Java source files below one or more source
+ * roots, writing the resultant changes to a unified diff patch file.
+ *
+ * <p>Unlike a regular build with Error Prone enabled, this tool only parses and attributes the
+ * sources, and then applies the selected {@link Refaster} rules; no other checks are run and no
+ * class files are generated. Source files are processed in batches of a configurable size, with
+ * each batch compiled in a separate javac context on one of a fixed number of threads. Memory usage
+ * is thus bounded by the number of threads times the batch size, rather than by the size of the
+ * code base. Each batch is processed by a dedicated {@link Refaster} instance, as such instances
+ * memoize state for the context in which they are used and are not safe for concurrent use.
+ *
+ * <p>Usage:
+ *
+ * <pre>{@code
+ * java <jvm-flags> -cp <classpath> tech.picnic.errorprone.refaster.runner.BatchRefaster \
+ *   --source-path <roots> --patch-file <file> \
+ *   [--class-path <path>] [--batch-size <n>] [--threads <n>] [-XepOpt:Refaster:<flag>=<value>...]
+ * }</pre>
+ *
+ * <p>Here {@code <classpath>} must contain this module, Error Prone and the Refaster rules to be
+ * applied, while the {@code --class-path} argument denotes the classpath against which the sources
+ * are compiled. As with any Error Prone invocation, the JVM must be started with the {@code
+ * --add-exports} and {@code --add-opens} flags that grant access to javac's internals. The {@code
+ * -XepOpt} arguments are passed to {@link Refaster} as-is; this enables e.g. restricting the
+ * applied rules using {@link Refaster#INCLUDED_RULES_PATTERN_FLAG}. Reports requested using {@link
+ * Refaster#PROFILE_REPORT_FLAG} or {@link Refaster#MATCH_STATISTICS_FLAG} are updated once each
+ * batch completes.
+ *
+ * <p>The paths in the generated patch are relative to the patch file's directory. Source files that
+ * contain compilation errors are not modified. Note that {@code @SuppressWarnings("Refaster")}
+ * annotations are not respected.
+ */
+public final class BatchRefaster {
+  private static final String SOURCE_PATH_FLAG = "--source-path";
+  private static final String CLASS_PATH_FLAG = "--class-path";
+  private static final String PATCH_FILE_FLAG = "--patch-file";
+  private static final String BATCH_SIZE_FLAG = "--batch-size";
+  private static final String THREADS_FLAG = "--threads";
+  private static final String ERROR_PRONE_FLAG_PREFIX = "-XepOpt:";
+  private static final int DEFAULT_BATCH_SIZE = 100;
+  private static final Splitter PATH_SPLITTER =
+      Splitter.on(File.pathSeparatorChar).omitEmptyStrings();
+
+  private final Configuration configuration;
+
+  @VisibleForTesting
+  BatchRefaster(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  /**
+   * Applies Refaster rules to the sources identified by the given command-line arguments.
+   *
+   * @param args The command-line arguments; see the class documentation.
+   * @throws IOException If the sources cannot be read or the patch file cannot be written.
+   * @throws InterruptedException If interrupted while waiting for the sources to be processed.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Configuration configuration;
+    try {
+      configuration = Configuration.parse(ImmutableList.copyOf(args));
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.printf(
+          "Usage: %s %s <roots> %s <file> [%s <path>] [%s <n>] [%s <n>] [%s<flag>=<value>...]%n",
+          BatchRefaster.class.getName(),
+          SOURCE_PATH_FLAG,
+          PATCH_FILE_FLAG,
+          CLASS_PATH_FLAG,
+          BATCH_SIZE_FLAG,
+          THREADS_FLAG,
+          ERROR_PRONE_FLAG_PREFIX);
+      System.exit(2);
+      return;
+    }
+
+    new BatchRefaster(configuration).run(System.out);
+  }
+
+  /**
+   * Applies Refaster rules to all configured sources, writing the resultant changes to the
+   * configured patch file.
+   *
+   * @param log The stream to which progress and a summary are written.
+   * @return The number of source files for which changes were written.
+   * @throws IOException If the sources cannot be read or the patch file cannot be written.
+   * @throws InterruptedException If interrupted while waiting for the sources to be processed.
+   */
+  @VisibleForTesting
+  int run(PrintStream log) throws IOException, InterruptedException {
+    ImmutableList<Path> sourceFiles = findSourceFiles(configuration.sourcePath());
+    Path patchFile = configuration.patchFile().toAbsolutePath();
+    Path baseDirectory = patchFile.getParent();
+    Files.createDirectories(baseDirectory);
+
+    int patchedFiles = 0;
+    List<Path> skippedFiles = new ArrayList<>();
+    try (ExecutorService executor = Executors.newFixedThreadPool(configuration.threads());
+        Writer patch = Files.newBufferedWriter(patchFile, UTF_8)) {
+      List<Future<BatchResult>> results = new ArrayList<>();
+      for (List<Path> batch : Iterables.partition(sourceFiles, configuration.batchSize())) {
+        results.add(executor.submit(() -> processBatch(batch, baseDirectory)));
+      }
+
+      /* Patches are written in submission order, such that the output is deterministic. */
+      for (Future<BatchResult> result : results) {
+        BatchResult batchResult = getResult(result);
+        for (String filePatch : batchResult.patches()) {
+          patch.write(filePatch);
+        }
+        patchedFiles += batchResult.patches().size();
+        skippedFiles.addAll(batchResult.skippedFiles());
+      }
+    }
+
+    for (Path skippedFile : skippedFiles) {
+      log.printf("Skipped %s: the file does not compile%n", skippedFile);
+    }
+    log.printf(
+        "Processed %s source files; wrote changes to %s of them to %s%n",
+        sourceFiles.size(), patchedFiles, patchFile);
+    return patchedFiles;
+  }
+
+  private static ImmutableList<Path> findSourceFiles(ImmutableList<Path> sourcePath)
+      throws IOException {
+    ImmutableList.Builder<Path> sourceFiles = ImmutableList.builder();
+    for (Path root : sourcePath) {
+      try (Stream<Path> files = Files.walk(root)) {
+        sourceFiles.addAll(
+            files
+                .filter(f -> f.getFileName().toString().endsWith(".java"))
+                .filter(Files::isRegularFile)
+                .sorted()
+                .collect(toImmutableList()));
+      }
+    }
+    return sourceFiles.build();
+  }
+
+  private static BatchResult getResult(Future<BatchResult> result)
+      throws IOException, InterruptedException {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioException) {
+        throw ioException;
+      }
+      throw new IllegalStateException("Failed to process sources", e.getCause());
+    }
+  }
+
+  /**
+   * Parses and attributes the given source files in a dedicated javac context, and applies the
+   * selected Refaster rules to each of them.
+   */
+  private BatchResult processBatch(List<Path> sourceFiles, Path baseDirectory) throws IOException {
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    JavacTool javacTool = JavacTool.create();
+    try (StandardJavaFileManager fileManager =
+        javacTool.getStandardFileManager(diagnostics, null, UTF_8)) {
+      JavacTaskImpl task =
+          (JavacTaskImpl)
+              javacTool.getTask(
+                  null,
+                  fileManager,
+                  diagnostics,
+                  getJavacOptions(),
+                  null,
+                  fileManager.getJavaFileObjectsFromPaths(sourceFiles));
+
+      /*
+       * Mimic Error Prone's compiler integration: suggested fixes require end positions to be
+       * tracked, and some rules consult the configured options.
+       */
+      JavaCompiler.instance(task.getContext()).genEndPos = true;
+      task.getContext().put(ErrorProneOptions.class, ErrorProneOptions.empty());
+
+      ImmutableList<CompilationUnitTree> compilationUnits = ImmutableList.copyOf(task.parse());
+      task.analyze();
+
+      ImmutableSet<JavaFileObject> erroneousFiles =
+          diagnostics.getDiagnostics().stream()
+              .filter(d -> d.getKind() == Diagnostic.Kind.ERROR && d.getSource() != null)
+              .map(Diagnostic::getSource)
+              .collect(toImmutableSet());
+
+      Refaster refaster = new Refaster(configuration.flags());
+      PatchFileDestination destination = new PatchFileDestination(baseDirectory, baseDirectory);
+      ImmutableList.Builder<String> patches = ImmutableList.builder();
+      ImmutableList.Builder<Path> skippedFiles = ImmutableList.builder();
+      for (CompilationUnitTree compilationUnit : compilationUnits) {
+        JavaFileObject sourceFile = compilationUnit.getSourceFile();
+        if (erroneousFiles.contains(sourceFile)) {
+          skippedFiles.add(Path.of(sourceFile.toUri()));
+          continue;
+        }
+
+        DescriptionBasedDiff diff =
+            DescriptionBasedDiff.create(
+                (JCCompilationUnit) compilationUnit, ImportOrganizer.STATIC_FIRST_ORGANIZER);
+        refaster.matchCompilationUnit(
+            compilationUnit,
+            VisitorState.createConfiguredForCompilation(
+                    task.getContext(), diff, ImmutableMap.of(), ErrorProneOptions.empty())
+                .withPath(new TreePath(compilationUnit)));
+        if (!diff.isEmpty()) {
+          SourceFile source = SourceFile.create(sourceFile);
+          diff.applyDifferences(source);
+          destination.writeFile(source);
+          String patch = destination.patchFile(sourceFile.toUri());
+          if (patch != null) {
+            patches.add(patch);
+          }
+        }
+      }
+
+      /*
+       * The batch is not compiled to completion, so signal completion explicitly. This way
+       * listeners registered by Refaster, such as those that write the profile report and match
+       * statistics, are notified.
+       */
+      MultiTaskListener.instance(task.getContext())
+          .finished(new TaskEvent(TaskEvent.Kind.COMPILATION));
+
+      return new BatchResult(patches.build(), skippedFiles.build());
+    }
+  }
+
+  private ImmutableList<String> getJavacOptions() {
+    ImmutableList.Builder<String> options = ImmutableList.builder();
+    options.add(
+        "-sourcepath",
+        configuration.sourcePath().stream()
+            .map(Path::toString)
+            .collect(joining(File.pathSeparator)));
+    if (!configuration.classPath().isEmpty()) {
+      options.add("-classpath", configuration.classPath());
+    }
+    /*
+     * Attribute all sources, even if some contain compilation errors; as with Error Prone itself,
+     * this allows the other sources to be processed.
+     */
+    options.add("-proc:none", "-XDshould-stop.ifError=FLOW");
+    return options.build();
+  }
+
+  /**
+   * The configuration of a {@link BatchRefaster} invocation.
+   *
+   * @param sourcePath The source roots below which all Java source files are processed.
+   * @param classPath The classpath against which the sources are compiled.
+   * @param patchFile The file to which the resultant changes are written.
+   * @param batchSize The maximum number of source files compiled together.
+   * @param threads The number of batches processed concurrently.
+   * @param flags The flags passed to {@link Refaster}.
+   */
+  @VisibleForTesting
+  record Configuration(
+      ImmutableList<Path> sourcePath,
+      String classPath,
+      Path patchFile,
+      int batchSize,
+      int threads,
+      ErrorProneFlags flags) {
+    Configuration {
+      checkArgument(!sourcePath.isEmpty(), "No source path specified");
+      checkArgument(batchSize > 0, "Batch size must be positive");
+      checkArgument(threads > 0, "Thread count must be positive");
+    }
+
+    /**
+     * Parses the given command-line arguments.
+     *
+     * @param args The command-line arguments to parse.
+     * @return A non-{@code null} {@link Configuration}.
+     * @throws IllegalArgumentException If the arguments are invalid or incomplete.
+     */
+    static Configuration parse(ImmutableList<String> args) {
+      String sourcePath = null;
+      String classPath = "";
+      String patchFile = null;
+      int batchSize = DEFAULT_BATCH_SIZE;
+      int threads = Runtime.getRuntime().availableProcessors();
+      ErrorProneFlags.Builder flags = ErrorProneFlags.builder();
+
+      for (int i = 0; i < args.size(); i++) {
+        String arg = args.get(i);
+        if (arg.startsWith(ERROR_PRONE_FLAG_PREFIX)) {
+          flags.parseFlag(arg);
+          continue;
+        }
+
+        checkArgument(i + 1 < args.size(), "Missing value for argument '%s'", arg);
+        String value = args.get(++i);
+        switch (arg) {
+          case SOURCE_PATH_FLAG -> sourcePath = value;
+          case CLASS_PATH_FLAG -> classPath = value;
+          case PATCH_FILE_FLAG -> patchFile = value;
+          case BATCH_SIZE_FLAG -> batchSize = parseInt(arg, value);
+          case THREADS_FLAG -> threads = parseInt(arg, value);
+          default -> throw new IllegalArgumentException("Unknown argument '%s'".formatted(arg));
+        }
+      }
+
+      checkArgument(sourcePath != null, "Missing required argument '%s'", SOURCE_PATH_FLAG);
+      checkArgument(patchFile != null, "Missing required argument '%s'", PATCH_FILE_FLAG);
+      return new Configuration(
+          PATH_SPLITTER.splitToStream(sourcePath).map(Path::of).collect(toImmutableList()),
+          classPath,
+          Path.of(patchFile),
+          batchSize,
+          threads,
+          flags.build());
+    }
+
+    private static int parseInt(String arg, String value) {
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            "Invalid value '%s' for argument '%s'".formatted(value, arg), e);
+      }
+    }
+  }
+
+  private record BatchResult(ImmutableList<String> patches, ImmutableList<Path> skippedFiles) {}
+}
@@ -0,0 +1,139 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Utility class for reading and updating the CSV reports written by {@link Refaster}.
+ *
+ * <p>Each report starts with a header, followed by one record per key. A record comprises the key
+ * and one count for each of the header's remaining fields. Keys must not contain commas.
+ */
+final class CsvReport {
+  private static final Splitter LINE_SPLITTER = Splitter.on('\n').omitEmptyStrings();
+  private static final Splitter FIELD_SPLITTER = Splitter.on(',');
+
+  /**
+   * Guards concurrent updates of reports by the current JVM. Such updates are also guarded by a
+   * {@link FileLock}, but that type of lock is held on behalf of the JVM as a whole.
+   */
+  private static final Object UPDATE_LOCK = new Object();
+
+  private CsvReport() {}
+
+  /**
+   * Reads the records of the given report.
+   *
+   * @param path The report to read.
+   * @param header The report's expected header.
+   * @return A mapping from keys to counts.
+   * @throws IOException If the report cannot be read.
+   * @throws IllegalArgumentException If the report is malformed.
+   */
+  static ImmutableMap<String, long[]> read(Path path, String header) throws IOException {
+    return ImmutableMap.copyOf(parse(Files.readString(path, UTF_8), header));
+  }
+
+  /**
+   * Adds the given counts to those in the given report, creating it if necessary.
+   *
+   * <p>The report is updated atomically with respect to concurrent updates by this and other JVMs,
+   * such that multiple compilations can contribute to the same report.
+   *
+   * @param path The report to update.
+   * @param header The report's header.
+   * @param counts The counts to add, by key.
+   * @param order The order in which to write the report's records.
+   * @throws IOException If the report cannot be read or written.
+   * @throws IllegalArgumentException If the existing report is malformed.
+   */
+  static void merge(
+      Path path,
+      String header,
+      Map<String, long[]> counts,
+      Comparator<Map.Entry<String, long[]>> order)
+      throws IOException {
+    synchronized (UPDATE_LOCK) {
+      try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+        /* The lock is released once the channel is closed. */
+        channel.lock();
+        ByteBuffer existing = ByteBuffer.allocate((int) channel.size());
+        int read = 0;
+        while (existing.hasRemaining() && read >= 0) {
+          read = channel.read(existing);
+        }
+
+        Map<String, long[]> records = parse(new String(existing.array(), UTF_8), header);
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+          records.merge(entry.getKey(), entry.getValue(), CsvReport::sum);
+        }
+
+        channel.truncate(0);
+        channel.write(
+            UTF_8.encode(
+                ImmutableList.sortedCopyOf(order, records.entrySet()).stream()
+                    .map(e -> toRecord(e.getKey(), e.getValue()))
+                    .collect(joining("\n", header + '\n', "\n"))),
+            0);
+      }
+    }
+  }
+
+  private static Map<String, long[]> parse(String content, String header) {
+    Map<String, long[]> records = new HashMap<>();
+    ImmutableList<String> lines = ImmutableList.copyOf(LINE_SPLITTER.split(content));
+    if (lines.isEmpty()) {
+      return records;
+    }
+
+    checkArgument(header.equals(lines.get(0)), "Unexpected header '%s'", lines.get(0));
+    int fieldCount = FIELD_SPLITTER.splitToList(header).size();
+    for (String line : lines.subList(1, lines.size())) {
+      ImmutableList<String> fields = ImmutableList.copyOf(FIELD_SPLITTER.split(line));
+      checkArgument(fields.size() == fieldCount, "Malformed record '%s'", line);
+      long[] counts = new long[fieldCount - 1];
+      try {
+        for (int i = 0; i < counts.length; i++) {
+          counts[i] = Long.parseLong(fields.get(i + 1));
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Malformed record '%s'".formatted(line), e);
+      }
+      records.merge(fields.get(0), counts, CsvReport::sum);
+    }
+    return records;
+  }
+
+  private static long[] sum(long[] a, long[] b) {
+    long[] sum = new long[a.length];
+    for (int i = 0; i < sum.length; i++) {
+      sum[i] = a[i] + b[i];
+    }
+    return sum;
+  }
+
+  private static String toRecord(String key, long[] counts) {
+    StringBuilder record = new StringBuilder(key);
+    for (long count : counts) {
+      record.append(',').append(count);
+    }
+    return record.toString();
+  }
+}
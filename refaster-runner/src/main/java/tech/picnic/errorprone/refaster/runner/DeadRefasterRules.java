@@ -0,0 +1,205 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.collect.ImmutableSortedSet.toImmutableSortedSet;
+import static java.util.Comparator.naturalOrder;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A command-line tool that lists the Refaster rules that did not produce any matches across a
+ * number of builds, based on the statistics files written by {@link Refaster} when passed {@link
+ * Refaster#MATCH_STATISTICS_FLAG}.
+ *
+ * <p>Usage:
+ *
+ * <pre>{@code
+ * java -cp <classpath> tech.picnic.errorprone.refaster.runner.DeadRefasterRules \
+ *   [--min-builds <n>] [--name-pattern] <statistics-file>...
+ * }</pre>
+ *
+ * <p>Each statistics file represents a single build. A rule is reported if it did not match in any
+ * of the builds, and was loaded by at least {@code --min-builds} of them (default: 1). Rules are
+ * identified by their fully qualified name. By passing {@code --name-pattern} the tool instead
+ * outputs a value for {@link Refaster#INCLUDED_RULES_PATTERN_FLAG} that excludes the reported rules,
+ * while still including any rule not covered by the statistics. As said flag matches rule names
+ * excluding their package, a reported rule is not excluded if another rule that is not reported
+ * has the same name.
+ */
+public final class DeadRefasterRules {
+  private static final String MIN_BUILDS_FLAG = "--min-builds";
+  private static final String NAME_PATTERN_FLAG = "--name-pattern";
+
+  private final Configuration configuration;
+
+  @VisibleForTesting
+  DeadRefasterRules(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  /**
+   * Lists the dead Refaster rules identified by the statistics files referenced by the given
+   * command-line arguments.
+   *
+   * @param args The command-line arguments; see the class documentation.
+   * @throws IOException If a statistics file cannot be read.
+   */
+  public static void main(String[] args) throws IOException {
+    Configuration configuration;
+    try {
+      configuration = Configuration.parse(ImmutableList.copyOf(args));
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.printf(
+          "Usage: %s [%s <n>] [%s] <statistics-file>...%n",
+          DeadRefasterRules.class.getName(), MIN_BUILDS_FLAG, NAME_PATTERN_FLAG);
+      System.exit(2);
+      return;
+    }
+
+    new DeadRefasterRules(configuration).run(System.out);
+  }
+
+  /**
+   * Writes the dead Refaster rules, or a pattern that excludes them, to the given stream.
+   *
+   * @param out The stream to which output is written.
+   * @throws IOException If a statistics file cannot be read.
+   */
+  @VisibleForTesting
+  void run(PrintStream out) throws IOException {
+    ImmutableList.Builder<ImmutableMap<String, Long>> statistics = ImmutableList.builder();
+    for (Path statisticsFile : configuration.statisticsFiles()) {
+      statistics.add(RefasterMatchStatistics.read(statisticsFile));
+    }
+
+    ImmutableList<ImmutableMap<String, Long>> builds = statistics.build();
+    ImmutableSortedSet<String> deadRules = findDeadRules(builds, configuration.minBuilds());
+    if (configuration.namePattern()) {
+      out.println(toExclusionPattern(toExcludableNames(builds, deadRules)));
+    } else {
+      deadRules.forEach(out::println);
+    }
+  }
+
+  /**
+   * Returns the rules that did not match in any of the given builds, but were loaded by at least
+   * the given number of them.
+   */
+  @VisibleForTesting
+  static ImmutableSortedSet<String> findDeadRules(
+      ImmutableList<ImmutableMap<String, Long>> builds, int minBuilds) {
+    Map<String, Long> matches = new HashMap<>();
+    Map<String, Integer> buildCounts = new HashMap<>();
+    for (ImmutableMap<String, Long> build : builds) {
+      for (Map.Entry<String, Long> entry : build.entrySet()) {
+        matches.merge(entry.getKey(), entry.getValue(), Long::sum);
+        buildCounts.merge(entry.getKey(), 1, Integer::sum);
+      }
+    }
+
+    return matches.entrySet().stream()
+        .filter(e -> e.getValue() == 0 && buildCounts.get(e.getKey()) >= minBuilds)
+        .map(Map.Entry::getKey)
+        .collect(toImmutableSortedSet(naturalOrder()));
+  }
+
+  /**
+   * Returns the names, excluding their package, of the given dead rules that are not shared by any
+   * other rule in the given builds.
+   */
+  @VisibleForTesting
+  static ImmutableSortedSet<String> toExcludableNames(
+      ImmutableList<ImmutableMap<String, Long>> builds, ImmutableSortedSet<String> deadRules) {
+    ImmutableSet<String> liveNames =
+        builds.stream()
+            .flatMap(build -> build.keySet().stream())
+            .filter(rule -> !deadRules.contains(rule))
+            .map(LazyCodeTransformer::toSimpleName)
+            .collect(toImmutableSet());
+    return deadRules.stream()
+        .map(LazyCodeTransformer::toSimpleName)
+        .filter(name -> !liveNames.contains(name))
+        .collect(toImmutableSortedSet(naturalOrder()));
+  }
+
+  /** Returns a pattern that matches any rule name, except for the given ones. */
+  @VisibleForTesting
+  static String toExclusionPattern(ImmutableSortedSet<String> excludedRules) {
+    return excludedRules.isEmpty()
+        ? ".*"
+        : excludedRules.stream().map(Pattern::quote).collect(joining("|", "(?!(?:", ")$).*"));
+  }
+
+  /**
+   * The configuration of a {@link DeadRefasterRules} invocation.
+   *
+   * @param statisticsFiles The statistics files to combine, one per build.
+   * @param minBuilds The minimum number of builds that must have loaded a rule for it to be
+   *     reported.
+   * @param namePattern Whether to output a pattern that excludes the reported rules, rather than
+   *     the rules themselves.
+   */
+  @VisibleForTesting
+  record Configuration(ImmutableList<Path> statisticsFiles, int minBuilds, boolean namePattern) {
+    Configuration {
+      checkArgument(!statisticsFiles.isEmpty(), "No statistics files specified");
+      checkArgument(minBuilds > 0, "Minimum number of builds must be positive");
+    }
+
+    /**
+     * Parses the given command-line arguments.
+     *
+     * @param args The command-line arguments to parse.
+     * @return A non-{@code null} {@link Configuration}.
+     * @throws IllegalArgumentException If the arguments are invalid or incomplete.
+     */
+    static Configuration parse(ImmutableList<String> args) {
+      ImmutableList.Builder<String> statisticsFiles = ImmutableList.builder();
+      int minBuilds = 1;
+      boolean namePattern = false;
+
+      for (int i = 0; i < args.size(); i++) {
+        String arg = args.get(i);
+        switch (arg) {
+          case MIN_BUILDS_FLAG -> {
+            checkArgument(i + 1 < args.size(), "Missing value for argument '%s'", arg);
+            minBuilds = parseInt(arg, args.get(++i));
+          }
+          case NAME_PATTERN_FLAG -> namePattern = true;
+          default -> {
+            checkArgument(!arg.startsWith("--"), "Unknown argument '%s'", arg);
+            statisticsFiles.add(arg);
+          }
+        }
+      }
+
+      return new Configuration(
+          statisticsFiles.build().stream().map(Path::of).collect(toImmutableList()),
+          minBuilds,
+          namePattern);
+    }
+
+    private static int parseInt(String arg, String value) {
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            "Invalid value '%s' for argument '%s'".formatted(value, arg), e);
+      }
+    }
+  }
+}
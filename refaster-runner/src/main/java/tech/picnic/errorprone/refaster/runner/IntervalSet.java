@@ -0,0 +1,77 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A mutable set of non-empty, half-open integer intervals, optimized for the overlap checks
+ * performed while selecting non-conflicting Refaster matches.
+ *
+ * <p>Intervals are stored as a map from start to end position. Overlapping and adjacent intervals
+ * are coalesced, such that the stored intervals are disjoint and ordered both by start and end
+ * position. As a result, both {@link #intersects(int, int)} and {@link #add(int, int)} take
+ * logarithmic (amortized) time, without allocating {@link com.google.common.collect.Range}
+ * instances.
+ *
+ * <p>Instances of this class are not thread-safe.
+ */
+// XXX: This class is public only so that it can be benchmarked by the `error-prone-benchmarks`
+// module.
+public final class IntervalSet {
+  private final NavigableMap<Integer, Integer> intervals = new TreeMap<>();
+
+  /** Instantiates a new, empty {@link IntervalSet} instance. */
+  public IntervalSet() {}
+
+  /**
+   * Tells whether any interval in this set intersects with the given interval.
+   *
+   * @param start The inclusive start of the interval of interest.
+   * @param end The exclusive end of the interval of interest.
+   * @return {@code true} iff the given interval is non-empty and overlaps with a stored interval.
+   */
+  public boolean intersects(int start, int end) {
+    checkArgument(start <= end, "Invalid interval [%s, %s)", start, end);
+    if (start == end) {
+      return false;
+    }
+
+    /* Only the last interval starting before `end` may end after `start`. */
+    Map.@Nullable Entry<Integer, Integer> candidate = intervals.lowerEntry(end);
+    return candidate != null && candidate.getValue() > start;
+  }
+
+  /**
+   * Adds the given interval to this set. Empty intervals are ignored.
+   *
+   * @param start The inclusive start of the interval to be added.
+   * @param end The exclusive end of the interval to be added.
+   */
+  public void add(int start, int end) {
+    checkArgument(start <= end, "Invalid interval [%s, %s)", start, end);
+    if (start == end) {
+      return;
+    }
+
+    int mergedStart = start;
+    int mergedEnd = end;
+    Map.@Nullable Entry<Integer, Integer> preceding = intervals.floorEntry(start);
+    if (preceding != null && preceding.getValue() >= start) {
+      mergedStart = preceding.getKey();
+      mergedEnd = Math.max(mergedEnd, preceding.getValue());
+    }
+
+    /* Remove all intervals subsumed by or adjacent to the merged interval. */
+    NavigableMap<Integer, Integer> covered = intervals.subMap(mergedStart, true, mergedEnd, true);
+    if (!covered.isEmpty()) {
+      mergedEnd = Math.max(mergedEnd, covered.lastEntry().getValue());
+      covered.clear();
+    }
+
+    intervals.put(mergedStart, mergedEnd);
+  }
+}
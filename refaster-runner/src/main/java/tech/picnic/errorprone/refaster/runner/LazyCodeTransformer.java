@@ -0,0 +1,199 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableClassToInstanceMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.refaster.IndexedCodeTransformer;
+import com.google.errorprone.refaster.RefasterInternals;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.lang.annotation.Annotation;
+import java.util.Optional;
+import java.util.function.Supplier;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
+import tech.picnic.errorprone.refaster.RequiredIdentifiers;
+
+/**
+ * A {@link CodeTransformer} that deserializes the Refaster rule it represents only once it is first
+ * used.
+ *
+ * <p>The rule's name, {@link RequiredIdentifiers} and required types are available without
+ * deserializing the rule.
+ */
+final class LazyCodeTransformer implements CodeTransformer {
+  private final RefasterRuleBundle.Entry entry;
+  private final Supplier<Optional<CodeTransformer>> delegate;
+  private final Supplier<Optional<IndexedCodeTransformer>> indexedDelegate;
+  private volatile boolean loaded;
+
+  LazyCodeTransformer(RefasterRuleBundle.Entry entry) {
+    this.entry = entry;
+    this.delegate =
+        Suppliers.memoize(
+            () -> {
+              Optional<CodeTransformer> codeTransformer = loadCodeTransformer(entry);
+              loaded = true;
+              return codeTransformer;
+            });
+    this.indexedDelegate =
+        Suppliers.memoize(() -> delegate.get().map(RefasterInternals::index));
+  }
+
+  private LazyCodeTransformer(RefasterRuleBundle.Entry entry, LazyCodeTransformer loadedRule) {
+    this.entry = entry;
+    this.delegate = loadedRule.delegate;
+    this.indexedDelegate = loadedRule.indexedDelegate;
+    this.loaded = true;
+  }
+
+  /**
+   * Returns the name of the represented Refaster rule, excluding the name of the package in which
+   * it resides.
+   */
+  String name() {
+    return toSimpleName(entry.name());
+  }
+
+  /**
+   * Returns the fully qualified name of the represented Refaster rule. Unlike its {@link #name()},
+   * this name uniquely identifies the rule.
+   */
+  String qualifiedName() {
+    return entry.name();
+  }
+
+  /**
+   * Returns the name of the Refaster rule with the given fully qualified name, excluding the name
+   * of the package in which it resides.
+   */
+  static String toSimpleName(String qualifiedName) {
+    return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+  }
+
+  /** Returns the identifiers that must be present for the represented Refaster rule to match. */
+  RequiredIdentifiers requiredIdentifiers() {
+    return entry.requiredIdentifiers();
+  }
+
+  /**
+   * Returns the fully qualified names of the types that must be on the classpath for the
+   * represented Refaster rule to match.
+   */
+  ImmutableSet<String> requiredTypes() {
+    return entry.requiredTypes();
+  }
+
+  /**
+   * Returns the size of the serialized representation of the represented Refaster rule; a rough
+   * proxy for the cost of applying it.
+   */
+  long serializedSize() {
+    try {
+      return entry.codeTransformer().size();
+    } catch (IOException e) {
+      throw new IllegalStateException("Can't read `CodeTransformer` " + entry.name(), e);
+    }
+  }
+
+  /**
+   * Returns a hash that uniquely identifies the represented Refaster rule, without deserializing
+   * it.
+   */
+  HashCode fingerprint() {
+    return fingerprint(entry);
+  }
+
+  /**
+   * Returns a hash that uniquely identifies the Refaster rule represented by the given bundle
+   * entry, without deserializing it.
+   */
+  static HashCode fingerprint(RefasterRuleBundle.Entry entry) {
+    try {
+      return Hashing.sha256()
+          .newHasher()
+          .putString(entry.name(), UTF_8)
+          .putBytes(entry.codeTransformer().hash(Hashing.sha256()).asBytes())
+          .hash();
+    } catch (IOException e) {
+      throw new IllegalStateException("Can't read `CodeTransformer` " + entry.name(), e);
+    }
+  }
+
+  /**
+   * Returns a {@link LazyCodeTransformer} for the given bundle entry, which must have the same
+   * {@link #fingerprint(RefasterRuleBundle.Entry) fingerprint} as the entry represented by this
+   * instance.
+   *
+   * <p>If this instance's rule was already deserialized, then the returned instance shares the
+   * deserialized and indexed rule. Either way the returned instance does not reference this
+   * instance's bundle entry, such that the bundle from which it was read can be garbage collected.
+   *
+   * @param sameEntry A bundle entry representing the same rule, read from another bundle.
+   * @return A non-{@code null} {@link LazyCodeTransformer}.
+   */
+  LazyCodeTransformer withEntry(RefasterRuleBundle.Entry sameEntry) {
+    return loaded ? new LazyCodeTransformer(sameEntry, this) : new LazyCodeTransformer(sameEntry);
+  }
+
+  /**
+   * Returns the represented Refaster rule, deserializing it if this did not happen before.
+   *
+   * @return The deserialized rule, unless it is incompatible with the current classpath.
+   */
+  Optional<CodeTransformer> load() {
+    return delegate.get();
+  }
+
+  /**
+   * Returns the represented Refaster rule, deserializing and indexing it if this did not happen
+   * before.
+   *
+   * @return The deserialized rule, unless it is incompatible with the current classpath.
+   */
+  Optional<IndexedCodeTransformer> loadIndexed() {
+    return indexedDelegate.get();
+  }
+
+  @Override
+  public void apply(TreePath path, Context context, DescriptionListener listener) {
+    delegate.get().ifPresent(transformer -> transformer.apply(path, context, listener));
+  }
+
+  @Override
+  public ImmutableClassToInstanceMap<Annotation> annotations() {
+    return delegate
+        .get()
+        .map(CodeTransformer::annotations)
+        .orElseGet(ImmutableClassToInstanceMap::of);
+  }
+
+  @Override
+  public String toString() {
+    return "LazyCodeTransformer[" + entry.name() + ']';
+  }
+
+  @SuppressWarnings("java:S1166" /* The caught exception's stack trace is not relevant. */)
+  private static Optional<CodeTransformer> loadCodeTransformer(RefasterRuleBundle.Entry entry) {
+    try (InputStream in = entry.codeTransformer().openStream();
+        ObjectInputStream ois = new ObjectInputStream(in)) {
+      @SuppressWarnings("BanSerializableRead" /* Part of the Refaster API. */)
+      CodeTransformer codeTransformer = (CodeTransformer) ois.readObject();
+      return Optional.of(codeTransformer);
+    } catch (ClassCastException e) {
+      /* This resource does not appear to be compatible with the current classpath. */
+      // XXX: Should we log this?
+      return Optional.empty();
+    } catch (ClassNotFoundException | IOException e) {
+      throw new IllegalStateException("Can't load `CodeTransformer` " + entry.name(), e);
+    }
+  }
+}
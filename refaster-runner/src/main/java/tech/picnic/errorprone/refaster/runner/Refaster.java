@@ -1,27 +1,22 @@
 package tech.picnic.errorprone.refaster.runner;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.ImmutableRangeSet.toImmutableRangeSet;
 import static com.google.errorprone.BugPattern.LinkType.NONE;
 import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 import static com.google.errorprone.BugPattern.SeverityLevel.SUGGESTION;
 import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
 import static com.google.errorprone.BugPattern.StandardTags.SIMPLIFICATION;
-import static java.util.function.Predicate.not;
+import static java.util.Comparator.comparingInt;
 
 import com.google.auto.service.AutoService;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
-import com.google.common.collect.ImmutableRangeSet;
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
-import com.google.common.collect.TreeRangeSet;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
 import com.google.errorprone.BugPattern;
 import com.google.errorprone.BugPattern.SeverityLevel;
-import com.google.errorprone.CodeTransformer;
-import com.google.errorprone.CompositeCodeTransformer;
 import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.ErrorProneOptions.Severity;
 import com.google.errorprone.SubContext;
@@ -32,23 +27,72 @@ import com.google.errorprone.bugpatterns.BugChecker.CompilationUnitTreeMatcher;
 import com.google.errorprone.fixes.ErrorProneEndPosTable;
 import com.google.errorprone.fixes.Replacement;
 import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.IndexedCodeTransformer;
+import com.google.errorprone.refaster.RefasterInternals;
+import com.google.errorprone.refaster.RefasterInternals.IndexedMatches;
+import com.google.errorprone.suppliers.Supplier;
 import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.model.JavacElements;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Pattern;
-import java.util.stream.Stream;
 import javax.inject.Inject;
+import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.matchers.MatcherResultCache;
+import tech.picnic.errorprone.utils.PatchSink;
 
 /**
  * A {@link BugChecker} that flags code that can be simplified using Refaster rules located on the
  * classpath.
  *
- * <p>This checker locates all {@code *.refaster} classpath resources and assumes that they contain
- * a {@link CodeTransformer}. The set of loaded Refaster rules can be restricted by passing {@code
- * -XepOpt:Refaster:NamePattern=<someRegex>}.
+ * <p>This checker loads the Refaster rules contained in all {@link
+ * tech.picnic.errorprone.refaster.RefasterRuleBundle} classpath resources. The set of loaded
+ * Refaster rules can be restricted by passing {@code -XepOpt:Refaster:NamePattern=<someRegex>}. By
+ * additionally passing {@code -XepOpt:Refaster:Shard=<index>/<count>} only the given {@link
+ * RuleShard shard} of the selected rules is loaded; this enables spreading a large migration across
+ * multiple machines.
+ *
+ * <p>Refaster rules are only applied to compilation units that contain each of the rule's {@link
+ * tech.picnic.errorprone.refaster.RequiredIdentifiers required identifiers}. Rules are deserialized
+ * only once the first such compilation unit is encountered. Likewise, Refaster rules are applied
+ * only if the types declaring the methods referenced by the rule are on the classpath; this check
+ * is performed once per compilation.
+ *
+ * <p>Refaster rules are applied to each compilation unit on the compiler thread, as the javac data
+ * structures consulted by Refaster rules are not designed for concurrent access. To apply Refaster
+ * rules to a large code base using multiple threads, use {@link BatchRefaster}, which compiles each
+ * batch of source files in a separate javac context.
+ *
+ * <p>By passing {@code -XepOpt:Refaster:ProfileReport=<path>} per-rule timing and match statistics
+ * are added to the specified CSV file once compilation completes. Hit rates of the cache of
+ * {@code @Matches} and {@code @NotMatches} matcher results are added to a sibling CSV file; see
+ * {@link RefasterProfiler}.
+ *
+ * <p>By passing {@code -XepOpt:Refaster:MatchStatistics=<path>} the number of matches produced by
+ * each rule is added to the specified CSV file once compilation completes. This enables
+ * identification of rules that never match using {@link DeadRefasterRules}.
+ *
+ * <p>By passing {@code -XepOpt:Refaster:CacheDirectory=<path>} the matches reported for each
+ * compilation unit are cached in the specified directory, such that unmodified source files can
+ * skip rule matching in subsequent builds. See {@link RefasterResultCache} for the conditions under
+ * which cached results are reused.
+ *
+ * <p>By passing {@code -XepOpt:Refaster:PatchDirectory=<path>} the changes suggested for each
+ * compilation unit are additionally written to the specified directory as soon as the compilation
+ * unit has been processed; see {@link PatchSink}. Once compilation completes, these per-file diffs
+ * can be combined into a single patch file by running:
+ *
+ * <pre>{@code
+ * java -cp <classpath> tech.picnic.errorprone.utils.PatchSink <path> <patch-file>
+ * }</pre>
  */
 @AutoService(BugChecker.class)
 @BugPattern(
@@ -61,10 +105,58 @@ public final class Refaster extends BugChecker implements CompilationUnitTreeMat
   /** Flag to pass a pattern that restricts which Refaster rules are loaded. */
   public static final String INCLUDED_RULES_PATTERN_FLAG = "Refaster:NamePattern";
 
+  /**
+   * Flag to pass the one-based index and total number of shards into which the Refaster rules
+   * selected by {@link #INCLUDED_RULES_PATTERN_FLAG} are partitioned, in the form {@code
+   * <index>/<count>}; only the rules in the indicated shard are loaded.
+   */
+  public static final String SHARD_FLAG = "Refaster:Shard";
+
+  /**
+   * Flag to pass the path of a file to which per-rule profiling statistics are written once
+   * compilation completes.
+   */
+  public static final String PROFILE_REPORT_FLAG = "Refaster:ProfileReport";
+
+  /**
+   * Flag to pass the path of a file to which per-rule match counts are added once compilation
+   * completes.
+   */
+  public static final String MATCH_STATISTICS_FLAG = "Refaster:MatchStatistics";
+
+  /**
+   * Flag to pass the path of a directory in which the matches reported for each compilation unit
+   * are cached across builds.
+   */
+  public static final String CACHE_DIRECTORY_FLAG = "Refaster:CacheDirectory";
+
+  /**
+   * Flag to pass the path of a directory to which the changes suggested for each compilation unit
+   * are written as unified diffs. These diffs can be combined into a single patch file using {@link
+   * PatchSink#main(String[])}.
+   */
+  public static final String PATCH_DIRECTORY_FLAG = "Refaster:PatchDirectory";
+
   private static final long serialVersionUID = 1L;
 
-  @SuppressWarnings({"java:S1948", "serial"} /* Concrete instance will be `Serializable`. */)
-  private final CodeTransformer codeTransformer;
+  @SuppressWarnings({"java:S1948", "serial"} /* Rules are loaded lazily; not serialized. */)
+  private final ImmutableList<LazyCodeTransformer> codeTransformers;
+
+  @SuppressWarnings({"java:S1948", "serial"} /* Computed once per compilation; not serialized. */)
+  private final Supplier<ImmutableList<LazyCodeTransformer>> applicableCodeTransformers =
+      VisitorState.memoize(this::getApplicableCodeTransformers);
+
+  @SuppressWarnings({"java:S1948", "serial"} /* Profiling state is not serialized. */)
+  private final @Nullable RefasterProfiler profiler;
+
+  @SuppressWarnings({"java:S1948", "serial"} /* Statistics are not serialized. */)
+  private final @Nullable RefasterMatchStatistics matchStatistics;
+
+  @SuppressWarnings({"java:S1948", "serial"} /* Cache state is not serialized. */)
+  private final @Nullable RefasterResultCache resultCache;
+
+  @SuppressWarnings({"java:S1948", "serial"} /* Patch output state is not serialized. */)
+  private final @Nullable PatchSink patchSink;
 
   /** Instantiates a default {@link Refaster} instance. */
   public Refaster() {
@@ -79,26 +171,177 @@ public final class Refaster extends BugChecker implements CompilationUnitTreeMat
   @Inject
   @VisibleForTesting
   public Refaster(ErrorProneFlags flags) {
-    codeTransformer = createCompositeCodeTransformer(flags);
+    codeTransformers = getCodeTransformers(flags);
+    profiler = flags.get(PROFILE_REPORT_FLAG).map(Path::of).map(RefasterProfiler::new).orElse(null);
+    matchStatistics =
+        flags
+            .get(MATCH_STATISTICS_FLAG)
+            .map(
+                file ->
+                    new RefasterMatchStatistics(
+                        Path.of(file),
+                        codeTransformers.stream()
+                            .map(LazyCodeTransformer::qualifiedName)
+                            .collect(toImmutableList())))
+            .orElse(null);
+    /*
+     * Cached compilation units are not matched against any rules, so their matches would not be
+     * counted.
+     */
+    checkArgument(
+        matchStatistics == null || flags.get(CACHE_DIRECTORY_FLAG).isEmpty(),
+        "Flags '%s' and '%s' cannot be combined",
+        MATCH_STATISTICS_FLAG,
+        CACHE_DIRECTORY_FLAG);
+    resultCache =
+        flags
+            .get(CACHE_DIRECTORY_FLAG)
+            .map(directory -> new RefasterResultCache(Path.of(directory), codeTransformers))
+            .orElse(null);
+    patchSink = flags.get(PATCH_DIRECTORY_FLAG).map(Path::of).map(PatchSink::new).orElse(null);
   }
 
   @CanIgnoreReturnValue
   @Override
   public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
-    /* First, collect all matches. */
-    List<Description> matches = new ArrayList<>();
-    codeTransformer.apply(state.getPath(), new SubContext(state.context), matches::add);
+    Optional<SeverityLevel> severityOverride = getSeverityOverride(state);
+    Optional<HashCode> cacheKey = Optional.empty();
+    if (resultCache != null) {
+      cacheKey = resultCache.getKey(tree, severityOverride, state.context);
+      Optional<ImmutableList<Description>> cachedResults = cacheKey.flatMap(resultCache::get);
+      if (cachedResults.isPresent()) {
+        /* This compilation unit was processed before; report the same matches. */
+        report(cachedResults.orElseThrow(), tree, state);
+        return Description.NO_MATCH;
+      }
+    }
+
+    /* First, collect all matches of rules that may apply to this compilation unit. */
+    if (profiler != null) {
+      profiler.registerForReporting(state.context);
+    }
+    if (matchStatistics != null) {
+      matchStatistics.registerForReporting(state.context);
+    }
+
+    ImmutableSet<String> identifiers = collectIdentifiers(tree);
+    ImmutableList<LazyCodeTransformer> candidates =
+        applicableCodeTransformers.get(state).stream()
+            .filter(t -> isCandidate(t, identifiers))
+            .collect(toImmutableList());
+    /*
+     * Rules are applied in contexts derived from this one; registering it ensures that matcher
+     * results memoized on behalf of one rule are available to all others.
+     */
+    MatcherResultCache.shareResults(state.context);
+    ImmutableListMultimap<String, Description> matches = collectMatches(candidates, state);
+    if (matchStatistics != null) {
+      for (LazyCodeTransformer candidate : candidates) {
+        matchStatistics.recordMatches(
+            candidate.qualifiedName(), matches.get(candidate.qualifiedName()).size());
+      }
+    }
 
-    /* Then apply them. */
-    applyMatches(matches, ErrorProneEndPosTable.create(tree), state);
+    /* Then select the non-overlapping subset to be reported. */
+    ErrorProneEndPosTable endPositions = ErrorProneEndPosTable.create(tree);
+    ImmutableList<Description> results = selectMatches(matches, endPositions, severityOverride);
+    report(results, tree, state);
+    if (resultCache != null && cacheKey.isPresent()) {
+      resultCache.put(cacheKey.orElseThrow(), results, endPositions);
+    }
 
     /* Any matches were already reported by the code above, directly to the `VisitorState`. */
     return Description.NO_MATCH;
   }
 
+  private void report(
+      ImmutableList<Description> descriptions, CompilationUnitTree tree, VisitorState state) {
+    descriptions.forEach(state::reportMatch);
+    if (patchSink != null) {
+      patchSink.write(tree, descriptions);
+    }
+  }
+
+  /**
+   * Returns the subset of {@link #codeTransformers} whose required types are all on the classpath
+   * of the current compilation; other Refaster rules cannot match any of its compilation units.
+   */
+  private ImmutableList<LazyCodeTransformer> getApplicableCodeTransformers(VisitorState state) {
+    JavacElements elements = JavacElements.instance(state.context);
+    Map<String, Boolean> knownTypes = new HashMap<>();
+    return codeTransformers.stream()
+        .filter(
+            t ->
+                t.requiredTypes().stream()
+                    .allMatch(
+                        type -> knownTypes.computeIfAbsent(type, n -> isKnownType(n, elements))))
+        .collect(toImmutableList());
+  }
+
+  /**
+   * Tells whether a type with the given name is on the classpath.
+   *
+   * <p>Like {@code ThirdPartyLibrary#isKnownClass}, this method consults javac's symbol table,
+   * loading the type if necessary. Unlike said method it also accepts non-public types, as these
+   * may declare members inherited by public types.
+   */
+  private static boolean isKnownType(String typeName, JavacElements elements) {
+    return elements.getTypeElement(typeName) != null;
+  }
+
+  private boolean isCandidate(
+      LazyCodeTransformer codeTransformer, ImmutableSet<String> identifiers) {
+    if (codeTransformer.requiredIdentifiers().isSatisfiedBy(identifiers)) {
+      return true;
+    }
+
+    if (profiler != null) {
+      profiler.recordSkip(codeTransformer.qualifiedName());
+    }
+    return false;
+  }
+
   /**
-   * Reports a subset of the given matches, such that no two reported matches suggest a replacement
-   * of the same part of the source code.
+   * Applies the given Refaster rules, returning their matches keyed by fully qualified rule name.
+   *
+   * <p>The rules are applied in a single traversal of the compilation unit, during which each tree
+   * is matched only against the templates whose outermost shape is compatible with it; see {@link
+   * RefasterInternals#applyIndexed}.
+   */
+  private ImmutableListMultimap<String, Description> collectMatches(
+      List<LazyCodeTransformer> codeTransformers, VisitorState state) {
+    List<String> names = new ArrayList<>();
+    List<IndexedCodeTransformer> indexedTransformers = new ArrayList<>();
+    for (LazyCodeTransformer codeTransformer : codeTransformers) {
+      Optional<IndexedCodeTransformer> indexedTransformer = codeTransformer.loadIndexed();
+      if (indexedTransformer.isPresent()) {
+        names.add(codeTransformer.qualifiedName());
+        indexedTransformers.add(indexedTransformer.orElseThrow());
+      } else if (profiler != null) {
+        profiler.recordApplication(codeTransformer.qualifiedName(), 0, 0, 0);
+      }
+    }
+
+    ImmutableList<IndexedMatches> results =
+        RefasterInternals.applyIndexed(
+            indexedTransformers, state.getPath(), new SubContext(state.context), profiler != null);
+
+    ImmutableListMultimap.Builder<String, Description> matches = ImmutableListMultimap.builder();
+    for (int i = 0; i < results.size(); i++) {
+      String name = names.get(i);
+      IndexedMatches result = results.get(i);
+      if (profiler != null) {
+        profiler.recordApplication(
+            name, result.nanos(), result.candidates(), result.descriptions().size());
+      }
+      matches.putAll(name, result.descriptions());
+    }
+    return matches.build();
+  }
+
+  /**
+   * Selects the subset of the given matches to be reported, such that no two reported matches
+   * suggest a replacement of the same part of the source code.
    *
    * <p>In the common case all matches will be reported. In case of overlap the match that replaces
    * the largest piece of source code is preferred. In case two matches wish to replace exactly the
@@ -106,27 +349,37 @@ public final class Refaster extends BugChecker implements CompilationUnitTreeMat
    */
   // XXX: This selection logic solves an issue described in
   // https://github.com/google/error-prone/issues/559. Consider contributing it back upstream.
-  private void applyMatches(
-      Iterable<Description> allMatches, ErrorProneEndPosTable endPositions, VisitorState state) {
-    ImmutableList<Description> byReplacementSize =
-        ImmutableList.sortedCopyOf(
-            Comparator.<Description>comparingInt(d -> getReplacedCodeSize(d, endPositions))
-                .reversed()
-                .thenComparingInt(d -> getInsertedCodeSize(d, endPositions)),
-            allMatches);
-
-    RangeSet<Integer> replacedSections = TreeRangeSet.create();
-    for (Description description : byReplacementSize) {
-      ImmutableRangeSet<Integer> ranges = getReplacementRanges(description, endPositions);
-      if (ranges.asRanges().stream().noneMatch(replacedSections::intersects)) {
+  private ImmutableList<Description> selectMatches(
+      ImmutableListMultimap<String, Description> allMatches,
+      ErrorProneEndPosTable endPositions,
+      Optional<SeverityLevel> severityOverride) {
+    ImmutableList<Match> byReplacementSize =
+        allMatches.entries().stream()
+            .map(e -> Match.create(e.getKey(), e.getValue(), endPositions))
+            .sorted(
+                comparingInt(Match::replacedCodeSize)
+                    .reversed()
+                    .thenComparingInt(Match::insertedCodeSize))
+            .collect(toImmutableList());
+
+    ImmutableList.Builder<Description> selected = ImmutableList.builder();
+    IntervalSet replacedSections = new IntervalSet();
+    for (Match match : byReplacementSize) {
+      if (match.replacements().stream()
+          .noneMatch(r -> replacedSections.intersects(r.startPosition(), r.endPosition()))) {
         /*
          * This suggested fix does not overlap with any ("larger") replacement seen until now, so
          * apply it.
          */
-        state.reportMatch(augmentDescription(description, getSeverityOverride(state)));
-        replacedSections.addAll(ranges);
+        selected.add(augmentDescription(match.description(), severityOverride));
+        for (Replacement replacement : match.replacements()) {
+          replacedSections.add(replacement.startPosition(), replacement.endPosition());
+        }
+      } else if (profiler != null) {
+        profiler.recordRejection(match.rule());
       }
     }
+    return selected.build();
   }
 
   private Optional<SeverityLevel> getSeverityOverride(VisitorState state) {
@@ -169,47 +422,81 @@ public final class Refaster extends BugChecker implements CompilationUnitTreeMat
         .build();
   }
 
-  private static int getReplacedCodeSize(
-      Description description, ErrorProneEndPosTable endPositions) {
-    return getReplacements(description, endPositions).mapToInt(Replacement::length).sum();
+  /**
+   * A {@link Description} produced by a Refaster rule, along with the replacements it suggests.
+   *
+   * <p>The replacements are computed only once, as doing so requires traversal of the suggested
+   * fixes.
+   */
+  private record Match(
+      String rule,
+      Description description,
+      ImmutableList<Replacement> replacements,
+      int replacedCodeSize,
+      int insertedCodeSize) {
+    static Match create(String rule, Description description, ErrorProneEndPosTable endPositions) {
+      ImmutableList<Replacement> replacements =
+          description.fixes.stream()
+              .flatMap(fix -> fix.getReplacements(endPositions).stream())
+              .collect(toImmutableList());
+      return new Match(
+          rule,
+          description,
+          replacements,
+          replacements.stream().mapToInt(Replacement::length).sum(),
+          // XXX: It might be nicer to prefer the shortest replacement _post formatting_.
+          replacements.stream().mapToInt(r -> r.replaceWith().length()).sum());
+    }
   }
 
-  // XXX: It might be nicer to prefer the shortest replacement _post formatting_.
-  private static int getInsertedCodeSize(
-      Description description, ErrorProneEndPosTable endPositions) {
-    return getReplacements(description, endPositions).mapToInt(r -> r.replaceWith().length()).sum();
-  }
+  /**
+   * Collects the names of all identifiers, member selects and member references in the given
+   * compilation unit.
+   */
+  private static ImmutableSet<String> collectIdentifiers(CompilationUnitTree tree) {
+    ImmutableSet.Builder<String> identifiers = ImmutableSet.builder();
+    new TreeScanner<@Nullable Void, @Nullable Void>() {
+      @Override
+      public @Nullable Void visitIdentifier(IdentifierTree node, @Nullable Void unused) {
+        identifiers.add(node.getName().toString());
+        return super.visitIdentifier(node, null);
+      }
 
-  private static ImmutableRangeSet<Integer> getReplacementRanges(
-      Description description, ErrorProneEndPosTable endPositions) {
-    return getReplacements(description, endPositions)
-        .map(Replacement::range)
-        .filter(not(Range::isEmpty))
-        .collect(toImmutableRangeSet());
-  }
+      @Override
+      public @Nullable Void visitMemberSelect(MemberSelectTree node, @Nullable Void unused) {
+        identifiers.add(node.getIdentifier().toString());
+        return super.visitMemberSelect(node, null);
+      }
 
-  private static Stream<Replacement> getReplacements(
-      Description description, ErrorProneEndPosTable endPositions) {
-    return description.fixes.stream().flatMap(fix -> fix.getReplacements(endPositions).stream());
+      @Override
+      public @Nullable Void visitMemberReference(MemberReferenceTree node, @Nullable Void unused) {
+        identifiers.add(node.getName().toString());
+        return super.visitMemberReference(node, null);
+      }
+    }.scan(tree, null);
+    return identifiers.build();
   }
 
-  private static CodeTransformer createCompositeCodeTransformer(ErrorProneFlags flags) {
-    ImmutableListMultimap<String, CodeTransformer> allTransformers =
-        CodeTransformers.getAllCodeTransformers();
-    return CompositeCodeTransformer.compose(
+  private static ImmutableList<LazyCodeTransformer> getCodeTransformers(ErrorProneFlags flags) {
+    ImmutableList<LazyCodeTransformer> allTransformers =
+        CodeTransformers.getAllLazyCodeTransformers();
+    ImmutableList<LazyCodeTransformer> selectedTransformers =
         flags
             .get(INCLUDED_RULES_PATTERN_FLAG)
             .map(Pattern::compile)
-            .<ImmutableCollection<CodeTransformer>>map(
-                nameFilter -> filterCodeTransformers(allTransformers, nameFilter))
-            .orElseGet(allTransformers::values));
+            .map(nameFilter -> filterCodeTransformers(allTransformers, nameFilter))
+            .orElse(allTransformers);
+    return flags
+        .get(SHARD_FLAG)
+        .map(RuleShard::parse)
+        .map(shard -> shard.select(selectedTransformers))
+        .orElse(selectedTransformers);
   }
 
-  private static ImmutableList<CodeTransformer> filterCodeTransformers(
-      ImmutableListMultimap<String, CodeTransformer> transformers, Pattern nameFilter) {
-    return transformers.entries().stream()
-        .filter(e -> nameFilter.matcher(e.getKey()).matches())
-        .map(Map.Entry::getValue)
+  private static ImmutableList<LazyCodeTransformer> filterCodeTransformers(
+      ImmutableList<LazyCodeTransformer> transformers, Pattern nameFilter) {
+    return transformers.stream()
+        .filter(t -> nameFilter.matcher(t.name()).matches())
         .collect(toImmutableList());
   }
 }
@@ -0,0 +1,94 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskEvent.Kind;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.api.MultiTaskListener;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the matches produced by each Refaster rule, and adds these counts to a CSV file once
+ * compilation completes.
+ *
+ * <p>The file lists each rule loaded by {@link Refaster}, including rules that did not produce any
+ * matches. If the file already exists, the new counts are added to the existing ones. This way a
+ * single file accumulates the statistics of all compilations that constitute a build, such as those
+ * of the modules of a multi-module project. The files produced by separate builds can subsequently
+ * be combined using {@link DeadRefasterRules}.
+ *
+ * <p>Instances of this class are thread-safe.
+ */
+final class RefasterMatchStatistics {
+  private static final String HEADER = "rule,matches";
+
+  private final Path statisticsFile;
+  private final ConcurrentMap<String, LongAdder> matchCounts = new ConcurrentHashMap<>();
+  private final AtomicBoolean registered = new AtomicBoolean();
+
+  RefasterMatchStatistics(Path statisticsFile, Iterable<String> rules) {
+    this.statisticsFile = statisticsFile;
+    for (String rule : rules) {
+      matchCounts.put(rule, new LongAdder());
+    }
+  }
+
+  /**
+   * Arranges for the statistics to be written once the compilation associated with the given
+   * context completes. Invocations after the first are ignored.
+   */
+  void registerForReporting(Context context) {
+    if (registered.compareAndSet(false, true)) {
+      MultiTaskListener.instance(context)
+          .add(
+              new TaskListener() {
+                @Override
+                public void finished(TaskEvent taskEvent) {
+                  if (taskEvent.getKind() == Kind.COMPILATION) {
+                    writeStatistics();
+                  }
+                }
+              });
+    }
+  }
+
+  void recordMatches(String rule, int matches) {
+    matchCounts.computeIfAbsent(rule, r -> new LongAdder()).add(matches);
+  }
+
+  /**
+   * Reads the match counts from the given statistics file.
+   *
+   * @param statisticsFile The file to read.
+   * @return A mapping from rule names to match counts.
+   * @throws IOException If the file cannot be read.
+   * @throws IllegalArgumentException If the file is malformed.
+   */
+  static ImmutableSortedMap<String, Long> read(Path statisticsFile) throws IOException {
+    return ImmutableSortedMap.copyOf(
+        Maps.transformValues(CsvReport.read(statisticsFile, HEADER), counts -> counts[0]));
+  }
+
+  private void writeStatistics() {
+    try {
+      CsvReport.merge(
+          statisticsFile,
+          HEADER,
+          ImmutableMap.copyOf(
+              Maps.transformValues(matchCounts, count -> new long[] {count.sumThenReset()})),
+          Map.Entry.<String, long[]>comparingByKey());
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Error while writing Refaster match statistics to '%s'".formatted(statisticsFile), e);
+    }
+  }
+}
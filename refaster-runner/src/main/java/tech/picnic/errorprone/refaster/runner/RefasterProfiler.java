@@ -0,0 +1,182 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.util.Comparator.comparingLong;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.ErrorProneTimings;
+import com.google.common.collect.Maps;
+import com.google.common.io.MoreFiles;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskEvent.Kind;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.api.MultiTaskListener;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import tech.picnic.errorprone.refaster.matchers.MatcherResultCache;
+
+/**
+ * Collects per-rule statistics about the application of Refaster rules, and writes these to a CSV
+ * file once compilation completes.
+ *
+ * <p>For each rule the report lists how often it was applied to a compilation unit, how often it
+ * was skipped because a compilation unit lacks its required identifiers, the cumulative time spent
+ * applying it (including the one-off cost of deserializing it), the number of candidate trees
+ * against which its templates were attempted, the number of matches it produced and how many of
+ * those were discarded because they overlap with a preferred match. Rules are listed in order of
+ * decreasing cumulative application time.
+ *
+ * <p>If the report already exists, the new statistics are added to the existing ones. This way a
+ * single report covers all compilations that constitute a build, such as those of the modules of a
+ * multi-module project. Statistics are reset once written, such that repeated compilations in
+ * the same JVM do not report them more than once.
+ *
+ * <p>Alongside the report a second CSV file, whose name is derived from that of the report, lists
+ * for each type of {@code @Matches} and {@code @NotMatches} matcher how often its result was
+ * requested, and how often a memoized result was returned; see {@link MatcherResultCache}. These
+ * statistics are accumulated in the same manner.
+ *
+ * <p>Likewise, a third CSV file lists the cumulative time spent by each Error Prone check enabled
+ * in the compilation, as tracked by {@link ErrorProneTimings}. Error Prone itself does not expose
+ * these timings, while they put the cost of Refaster into perspective.
+ *
+ * <p>Instances of this class are thread-safe.
+ */
+final class RefasterProfiler {
+  private static final String HEADER =
+      "rule,applications,skips,apply_nanos,candidates,matches,rejected_matches";
+  private static final String MATCHER_HEADER = "matcher,lookups,hits";
+  private static final String CHECK_HEADER = "check,nanos";
+
+  /** The index of the cumulative application time among a rule record's counts. */
+  private static final int NANOS_INDEX = 2;
+
+  /** The index of the number of lookups among a matcher record's counts. */
+  private static final int LOOKUPS_INDEX = 0;
+
+  /** The index of the cumulative time among a check record's counts. */
+  private static final int CHECK_NANOS_INDEX = 0;
+
+  private final Path reportPath;
+  private final Path matcherReportPath;
+  private final Path checkReportPath;
+  private final ConcurrentMap<String, RuleStatistics> statistics = new ConcurrentHashMap<>();
+  private final AtomicBoolean registered = new AtomicBoolean();
+
+  RefasterProfiler(Path reportPath) {
+    this.reportPath = reportPath;
+    this.matcherReportPath = getSiblingReportPath(reportPath, "matchers");
+    this.checkReportPath = getSiblingReportPath(reportPath, "checks");
+  }
+
+  private static Path getSiblingReportPath(Path reportPath, String suffix) {
+    return reportPath.resolveSibling(
+        "%s-%s.csv".formatted(MoreFiles.getNameWithoutExtension(reportPath), suffix));
+  }
+
+  /**
+   * Arranges for the report to be written once the compilation associated with the given context
+   * completes, and for {@link MatcherResultCache} statistics to be collected for said compilation.
+   * Invocations after the first are ignored.
+   */
+  void registerForReporting(Context context) {
+    if (registered.compareAndSet(false, true)) {
+      MatcherResultCache.collectStatistics(context);
+      MultiTaskListener.instance(context)
+          .add(
+              new TaskListener() {
+                @Override
+                public void finished(TaskEvent taskEvent) {
+                  if (taskEvent.getKind() == Kind.COMPILATION) {
+                    writeReports(context);
+                  }
+                }
+              });
+    }
+  }
+
+  void recordSkip(String rule) {
+    getStatistics(rule).skips.increment();
+  }
+
+  void recordApplication(String rule, long nanos, long candidates, int matches) {
+    RuleStatistics ruleStatistics = getStatistics(rule);
+    ruleStatistics.applications.increment();
+    ruleStatistics.nanos.add(nanos);
+    ruleStatistics.candidates.add(candidates);
+    ruleStatistics.matches.add(matches);
+  }
+
+  void recordRejection(String rule) {
+    getStatistics(rule).rejectedMatches.increment();
+  }
+
+  private RuleStatistics getStatistics(String rule) {
+    return statistics.computeIfAbsent(rule, r -> new RuleStatistics());
+  }
+
+  private void writeReports(Context context) {
+    writeReport(
+        reportPath,
+        HEADER,
+        ImmutableMap.copyOf(Maps.transformValues(statistics, RuleStatistics::drainCounts)),
+        NANOS_INDEX);
+    writeReport(
+        matcherReportPath,
+        MATCHER_HEADER,
+        Maps.transformValues(
+            MatcherResultCache.drainStatistics(context), s -> new long[] {s.lookups(), s.hits()}),
+        LOOKUPS_INDEX);
+    writeReport(
+        checkReportPath,
+        CHECK_HEADER,
+        Maps.transformValues(
+            ErrorProneTimings.instance(context).timings(), d -> new long[] {d.toNanos()}),
+        CHECK_NANOS_INDEX);
+  }
+
+  /**
+   * Adds the given counts to those in the specified report, ordering its records by decreasing
+   * value of the count at the given index.
+   */
+  private static void writeReport(
+      Path path, String header, Map<String, long[]> counts, int sortIndex) {
+    try {
+      CsvReport.merge(
+          path,
+          header,
+          counts,
+          comparingLong((Map.Entry<String, long[]> e) -> e.getValue()[sortIndex])
+              .reversed()
+              .thenComparing(Map.Entry::getKey));
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Error while writing Refaster profile report to '%s'".formatted(path), e);
+    }
+  }
+
+  private static final class RuleStatistics {
+    private final LongAdder applications = new LongAdder();
+    private final LongAdder skips = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder candidates = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder rejectedMatches = new LongAdder();
+
+    private long[] drainCounts() {
+      return new long[] {
+        applications.sumThenReset(),
+        skips.sumThenReset(),
+        nanos.sumThenReset(),
+        candidates.sumThenReset(),
+        matches.sumThenReset(),
+        rejectedMatches.sumThenReset()
+      };
+    }
+  }
+}
@@ -0,0 +1,348 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.fixes.ErrorProneEndPosTable;
+import com.google.errorprone.fixes.ErrorPronePosition;
+import com.google.errorprone.fixes.Fix;
+import com.google.errorprone.fixes.Replacement;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Context;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+import javax.tools.StandardLocation;
+import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.CompilationEnvironment;
+
+/**
+ * An on-disk cache of the {@link Description}s reported by {@link Refaster} for individual
+ * compilation units.
+ *
+ * <p>Entries are keyed by a hash of the compilation unit's source code, the loaded Refaster rules,
+ * the configured severity, the contents of the other source files in the same compilation that
+ * declare symbols referenced by the compilation unit, and the compilation environment. The latter
+ * comprises the {@code javac} and Error Prone versions and the contents of all class and module
+ * path entries. This means that cached results are reused only if none of the types referenced by
+ * the compilation unit may have changed, while edits to unrelated source files or rebuilds of
+ * dependencies that yield identical output do not invalidate any entries.
+ *
+ * <p>Each entry is written to a temporary file that is subsequently atomically moved into place, so
+ * that multiple {@code javac} processes may safely share a cache directory. Entries are never
+ * evicted; the cache directory may be cleared at any time. Failure to read or write an entry is not
+ * fatal: in that case the Refaster rules are simply applied.
+ *
+ * <p>Instances of this class are thread-safe.
+ */
+final class RefasterResultCache {
+  private static final int FORMAT_VERSION = 1;
+  private static final String IMPORT_PREFIX = "import ";
+  private static final String STATIC_IMPORT_PREFIX = "import static ";
+
+  private final Path directory;
+  private final Supplier<HashCode> rulesFingerprint;
+  private final Map<Context, HashCode> environmentFingerprints =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  RefasterResultCache(Path directory, ImmutableList<LazyCodeTransformer> codeTransformers) {
+    this.directory = directory;
+    this.rulesFingerprint = Suppliers.memoize(() -> fingerprint(codeTransformers));
+  }
+
+  /**
+   * Computes the key under which the results for the given compilation unit are cached.
+   *
+   * @return The cache key, or an empty {@link Optional} if the compilation unit's source code could
+   *     not be read.
+   */
+  Optional<HashCode> getKey(
+      CompilationUnitTree tree, Optional<SeverityLevel> severityOverride, Context context) {
+    CharSequence source;
+    try {
+      source = tree.getSourceFile().getCharContent(/* ignoreEncodingErrors= */ true);
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher().putInt(FORMAT_VERSION);
+    hasher.putBytes(rulesFingerprint.get().asBytes());
+    hasher.putBytes(
+        environmentFingerprints
+            .computeIfAbsent(context, RefasterResultCache::fingerprintEnvironment)
+            .asBytes());
+    putString(hasher, severityOverride.map(SeverityLevel::name).orElse(""));
+    putString(hasher, source);
+    CompilationEnvironment.putSourceDependencies(hasher, tree, tree);
+    return Optional.of(hasher.hash());
+  }
+
+  /**
+   * Returns the {@link Description}s cached under the given key, if any.
+   *
+   * @param key The cache key, as computed by {@link #getKey}.
+   * @return The cached descriptions, or an empty {@link Optional} if there is no (readable) cache
+   *     entry for the given key.
+   */
+  @SuppressWarnings("java:S1166" /* An unreadable cache entry is treated as a cache miss. */)
+  Optional<ImmutableList<Description>> get(HashCode key) {
+    byte[] content;
+    try {
+      content = Files.readAllBytes(directory.resolve(key.toString()));
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(readDescriptions(new DataInputStream(new ByteArrayInputStream(content))));
+    } catch (IOException | RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Caches the given {@link Description}s under the given key.
+   *
+   * @param key The cache key, as computed by {@link #getKey}.
+   * @param descriptions The descriptions reported for the compilation unit identified by the key.
+   * @param endPositions The end positions of the compilation unit identified by the key.
+   */
+  @SuppressWarnings("java:S1166" /* Failure to populate the cache is not fatal. */)
+  void put(
+      HashCode key, ImmutableList<Description> descriptions, ErrorProneEndPosTable endPositions) {
+    Path temporaryFile = null;
+    try {
+      Files.createDirectories(directory);
+      temporaryFile = Files.createTempFile(directory, key + "-", ".tmp");
+      try (OutputStream out = Files.newOutputStream(temporaryFile)) {
+        writeDescriptions(descriptions, endPositions, new DataOutputStream(out));
+      }
+      Files.move(temporaryFile, directory.resolve(key.toString()), ATOMIC_MOVE);
+    } catch (IOException e) {
+      /* Another process may have concurrently written the same entry. */
+      deleteIfPresent(temporaryFile);
+    }
+  }
+
+  /**
+   * Fingerprints the parts of the compilation environment that may affect the types referenced by
+   * any compilation unit, or the way in which Refaster rules are matched against them.
+   */
+  private static HashCode fingerprintEnvironment(Context context) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    CompilationEnvironment.putCompilerVersion(hasher);
+    CompilationEnvironment.putCodeSource(hasher, BugChecker.class);
+    CompilationEnvironment.putCodeSource(hasher, RefasterResultCache.class);
+    CompilationEnvironment.putSearchPath(hasher, context, StandardLocation.CLASS_PATH);
+    CompilationEnvironment.putSearchPath(hasher, context, StandardLocation.MODULE_PATH);
+    return hasher.hash();
+  }
+
+  private static HashCode fingerprint(ImmutableList<LazyCodeTransformer> codeTransformers) {
+    Hasher hasher = Hashing.sha256().newHasher().putInt(codeTransformers.size());
+    for (LazyCodeTransformer codeTransformer : codeTransformers) {
+      hasher.putBytes(codeTransformer.fingerprint().asBytes());
+    }
+    return hasher.hash();
+  }
+
+  private static void putString(Hasher hasher, CharSequence value) {
+    hasher.putInt(value.length()).putString(value, UTF_8);
+  }
+
+  @SuppressWarnings("java:S1166" /* A leftover temporary file is harmless. */)
+  private static void deleteIfPresent(@Nullable Path file) {
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        /* The file will not be read, so we can ignore this. */
+      }
+    }
+  }
+
+  private static void writeDescriptions(
+      ImmutableList<Description> descriptions,
+      ErrorProneEndPosTable endPositions,
+      DataOutputStream data)
+      throws IOException {
+    data.writeInt(FORMAT_VERSION);
+    data.writeInt(descriptions.size());
+    for (Description description : descriptions) {
+      writeString(description.checkName, data);
+      writeNullableString(description.getLink(), data);
+      writeString(description.getRawMessage(), data);
+      writeString(description.severity().name(), data);
+      data.writeInt(description.position.getStartPosition());
+      data.writeInt(description.position.getPreferredPosition());
+      data.writeInt(description.position.getEndPosition(endPositions));
+      data.writeInt(description.fixes.size());
+      for (Fix fix : description.fixes) {
+        writeFix(fix, endPositions, data);
+      }
+    }
+    data.flush();
+  }
+
+  private static void writeFix(Fix fix, ErrorProneEndPosTable endPositions, DataOutputStream data)
+      throws IOException {
+    writeString(fix.getShortDescription(), data);
+    ImmutableSet<Replacement> replacements = fix.getReplacements(endPositions);
+    data.writeInt(replacements.size());
+    for (Replacement replacement : replacements) {
+      data.writeInt(replacement.startPosition());
+      data.writeInt(replacement.endPosition());
+      writeString(replacement.replaceWith(), data);
+    }
+    writeStrings(fix.getImportsToAdd(), data);
+    writeStrings(fix.getImportsToRemove(), data);
+  }
+
+  @SuppressWarnings("RestrictedApi" /* We recreate previously reported `Description`s here. */)
+  private static ImmutableList<Description> readDescriptions(DataInputStream data)
+      throws IOException {
+    if (data.readInt() != FORMAT_VERSION) {
+      throw new IOException("Unsupported cache entry format");
+    }
+
+    int descriptionCount = data.readInt();
+    ImmutableList.Builder<Description> descriptions =
+        ImmutableList.builderWithExpectedSize(descriptionCount);
+    for (int i = 0; i < descriptionCount; i++) {
+      String checkName = readString(data);
+      String link = readNullableString(data);
+      String message = readString(data);
+      SeverityLevel severity = SeverityLevel.valueOf(readString(data));
+      CachedPosition position = new CachedPosition(data.readInt(), data.readInt(), data.readInt());
+      Description.Builder description =
+          Description.builder(position, checkName, link, message).overrideSeverity(severity);
+      int fixCount = data.readInt();
+      for (int j = 0; j < fixCount; j++) {
+        description.addFix(readFix(data));
+      }
+      descriptions.add(description.build());
+    }
+
+    if (data.available() > 0) {
+      throw new IOException("Cache entry contains trailing data");
+    }
+
+    return descriptions.build();
+  }
+
+  private static SuggestedFix readFix(DataInputStream data) throws IOException {
+    SuggestedFix.Builder fix = SuggestedFix.builder().setShortDescription(readString(data));
+    int replacementCount = data.readInt();
+    for (int i = 0; i < replacementCount; i++) {
+      fix.replace(data.readInt(), data.readInt(), readString(data));
+    }
+    for (String importToAdd : readStrings(data)) {
+      if (importToAdd.startsWith(STATIC_IMPORT_PREFIX)) {
+        fix.addStaticImport(importToAdd.substring(STATIC_IMPORT_PREFIX.length()));
+      } else {
+        fix.addImport(importToAdd.substring(IMPORT_PREFIX.length()));
+      }
+    }
+    for (String importToRemove : readStrings(data)) {
+      if (importToRemove.startsWith(STATIC_IMPORT_PREFIX)) {
+        fix.removeStaticImport(importToRemove.substring(STATIC_IMPORT_PREFIX.length()));
+      } else {
+        fix.removeImport(importToRemove.substring(IMPORT_PREFIX.length()));
+      }
+    }
+    return fix.build();
+  }
+
+  private static void writeStrings(ImmutableSet<String> values, DataOutputStream data)
+      throws IOException {
+    data.writeInt(values.size());
+    for (String value : values) {
+      writeString(value, data);
+    }
+  }
+
+  private static ImmutableList<String> readStrings(DataInputStream data) throws IOException {
+    int count = data.readInt();
+    ImmutableList.Builder<String> values = ImmutableList.builderWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      values.add(readString(data));
+    }
+    return values.build();
+  }
+
+  private static void writeNullableString(@Nullable String value, DataOutputStream data)
+      throws IOException {
+    data.writeBoolean(value != null);
+    if (value != null) {
+      writeString(value, data);
+    }
+  }
+
+  private static @Nullable String readNullableString(DataInputStream data) throws IOException {
+    return data.readBoolean() ? readString(data) : null;
+  }
+
+  /**
+   * Writes the given string as length-prefixed UTF-8. Unlike {@link DataOutputStream#writeUTF},
+   * this supports strings of arbitrary length.
+   */
+  private static void writeString(String value, DataOutputStream data) throws IOException {
+    byte[] bytes = value.getBytes(UTF_8);
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  }
+
+  private static String readString(DataInputStream data) throws IOException {
+    int length = data.readInt();
+    if (length < 0 || length > data.available()) {
+      throw new IOException("Cache entry is truncated");
+    }
+
+    byte[] bytes = new byte[length];
+    data.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  /** The source code position of a cached {@link Description}. */
+  private record CachedPosition(int start, int preferred, int end) implements ErrorPronePosition {
+    @Override
+    public int getStartPosition() {
+      return start;
+    }
+
+    @Override
+    public int getPreferredPosition() {
+      return preferred;
+    }
+
+    @Override
+    public @Nullable JCTree getTree() {
+      return null;
+    }
+
+    @Override
+    public int getEndPosition(ErrorProneEndPosTable endPositions) {
+      return end;
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.io.Resources;
+import com.google.common.reflect.ClassPath;
+import com.google.common.reflect.ClassPath.ResourceInfo;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
+import tech.picnic.errorprone.refaster.RequiredIdentifiers;
+
+/**
+ * A registry of the Refaster rules contained in the {@link RefasterRuleBundle}s visible to a given
+ * {@link ClassLoader}, which remains valid across compilations performed by the same JVM.
+ *
+ * <p>Build daemons and IDE compile servers may reuse the Error Prone class loader across many
+ * compilations, during which the JARs or directories that contain rule bundles may be replaced.
+ * Each time the registry is consulted it therefore checks whether the set of rule bundles, or the
+ * size or modification time of any of the files from which they were read, has changed. If so, the
+ * rule bundles are read anew. Rules whose {@link LazyCodeTransformer#fingerprint() fingerprint} is
+ * unchanged retain their deserialized and indexed representation; other rules are discarded.
+ *
+ * <p>Rule bundles are located through the {@link RefasterRuleBundle#INDEX_RESOURCE_NAME bundle
+ * indices} visible to the class loader, such that the classpath need not be scanned. Only if no such
+ * index is found, for compatibility with rule JARs built by older versions of this project, does the
+ * registry instead scan the classpath for individually serialized rules stored in {@value
+ * #LEGACY_RULE_SUFFIX} resources.
+ *
+ * <p>Instances of this class are thread-safe.
+ */
+// XXX: While rule bundles are read without consulting the JVM's cache of opened JARs, classes
+// referenced by deserialized rules are still loaded through the class loader, which may not reflect
+// a modified JAR. This is fine for rule definitions, but not for e.g. custom `Matcher`s.
+final class RefasterRuleRegistry {
+  private static final String LEGACY_RULE_SUFFIX = ".refaster";
+  /**
+   * The source fingerprint assigned to legacy rules; it is unknown, and not used by the registry.
+   */
+  private static final HashCode UNKNOWN_SOURCE_FINGERPRINT = HashCode.fromInt(0);
+
+  private final ClassLoader classLoader;
+  // XXX: Legacy rules are read at most once, as scanning the full classpath is expensive. As a
+  // result, modifications to JARs containing legacy rules are not picked up. Drop this fallback once
+  // rule JARs in the old format are no longer supported.
+  private final Supplier<ImmutableList<RefasterRuleBundle.Entry>> legacyRules =
+      Suppliers.memoize(this::loadLegacyRules);
+  private @Nullable ImmutableList<ResourceStamp> stamps;
+  private ImmutableList<LazyCodeTransformer> transformers = ImmutableList.of();
+  private ImmutableMap<HashCode, LazyCodeTransformer> transformersByFingerprint = ImmutableMap.of();
+
+  RefasterRuleRegistry(ClassLoader classLoader) {
+    this.classLoader = classLoader;
+  }
+
+  /**
+   * Returns the Refaster rules contained in the rule bundles currently visible to this registry's
+   * class loader, reading these bundles only if they changed since they were last read.
+   *
+   * @return A list of lazily deserialized {@link LazyCodeTransformer}s, in bundle order.
+   */
+  synchronized ImmutableList<LazyCodeTransformer> getTransformers() {
+    ImmutableList<URL> resources = getRuleBundleResources();
+    ImmutableList<ResourceStamp> currentStamps =
+        resources.stream().map(ResourceStamp::of).collect(toImmutableList());
+    if (!currentStamps.equals(stamps)) {
+      load(resources);
+      stamps = currentStamps;
+    }
+    return transformers;
+  }
+
+  private void load(ImmutableList<URL> resources) {
+    ImmutableList.Builder<RefasterRuleBundle.Entry> entries = ImmutableList.builder();
+    for (URL resource : resources) {
+      entries.addAll(loadRuleBundle(resource).entries());
+    }
+    if (resources.isEmpty()) {
+      entries.addAll(legacyRules.get());
+    }
+
+    ImmutableList.Builder<LazyCodeTransformer> loaded = ImmutableList.builder();
+    Map<HashCode, LazyCodeTransformer> loadedByFingerprint = new LinkedHashMap<>();
+    for (RefasterRuleBundle.Entry entry : entries.build()) {
+      HashCode fingerprint = LazyCodeTransformer.fingerprint(entry);
+      LazyCodeTransformer previous = transformersByFingerprint.get(fingerprint);
+      LazyCodeTransformer transformer =
+          previous != null ? previous.withEntry(entry) : new LazyCodeTransformer(entry);
+      loaded.add(transformer);
+      loadedByFingerprint.putIfAbsent(fingerprint, transformer);
+    }
+
+    transformers = loaded.build();
+    transformersByFingerprint = ImmutableMap.copyOf(loadedByFingerprint);
+  }
+
+  /**
+   * Returns the locations of the rule bundles listed in the bundle indices visible to this
+   * registry's class loader.
+   *
+   * @throws IllegalStateException If an index lists a rule bundle that cannot be found, as happens
+   *     when rule JARs are combined without merging their bundle indices.
+   */
+  private ImmutableList<URL> getRuleBundleResources() {
+    try {
+      Set<URL> bundles = new LinkedHashSet<>();
+      for (URL index :
+          Collections.list(classLoader.getResources(RefasterRuleBundle.INDEX_RESOURCE_NAME))) {
+        for (String resourceName : readIndex(index)) {
+          List<URL> resources = Collections.list(classLoader.getResources(resourceName));
+          checkState(
+              !resources.isEmpty(),
+              "Refaster rule bundle '%s' listed in '%s' cannot be found",
+              resourceName,
+              index);
+          bundles.addAll(resources);
+        }
+      }
+      return ImmutableList.copyOf(bundles);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to locate Refaster rule bundles", e);
+    }
+  }
+
+  private static ImmutableSet<String> readIndex(URL index) throws IOException {
+    try (InputStream in = openUncached(index)) {
+      return RefasterRuleBundle.readIndex(in);
+    }
+  }
+
+  /**
+   * Scans the classpath for {@value #LEGACY_RULE_SUFFIX} resources, each containing a single
+   * serialized Refaster rule, as produced by older versions of the Refaster rule compiler.
+   */
+  private ImmutableList<RefasterRuleBundle.Entry> loadLegacyRules() {
+    ImmutableSet<ResourceInfo> resources;
+    try {
+      resources = ClassPath.from(classLoader).getResources();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to scan classpath for resources", e);
+    }
+
+    return resources.stream()
+        .filter(resource -> resource.getResourceName().endsWith(LEGACY_RULE_SUFFIX))
+        .flatMap(resource -> toLegacyRule(resource).stream())
+        .collect(toImmutableList());
+  }
+
+  @SuppressWarnings("java:S1166" /* The caught exception's stack trace is not relevant. */)
+  private static Optional<RefasterRuleBundle.Entry> toLegacyRule(ResourceInfo resource) {
+    String resourceName = resource.getResourceName();
+    URL url;
+    try {
+      url = resource.url();
+    } catch (NoSuchElementException e) {
+      /*
+       * For some reason we can't load the resource; skip it. This issue has been observed when
+       * executing the code using Maven Surefire, in which case `ResourceInfo` may reference a path
+       * relative to the current working directory.
+       */
+      return Optional.empty();
+    }
+
+    return Optional.of(
+        new RefasterRuleBundle.Entry(
+            resourceName
+                .substring(0, resourceName.length() - LEGACY_RULE_SUFFIX.length())
+                .replace('/', '.'),
+            RequiredIdentifiers.NONE,
+            ImmutableSet.of(),
+            UNKNOWN_SOURCE_FINGERPRINT,
+            Resources.asByteSource(url)));
+  }
+
+  private static RefasterRuleBundle loadRuleBundle(URL resource) {
+    try (InputStream in = openUncached(resource)) {
+      return RefasterRuleBundle.read(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Can't load Refaster rule bundle from " + resource, e);
+    }
+  }
+
+  private static InputStream openUncached(URL resource) throws IOException {
+    URLConnection connection = resource.openConnection();
+    connection.setUseCaches(false);
+    return connection.getInputStream();
+  }
+
+  /**
+   * The state of the file from which a rule bundle is read.
+   *
+   * @param resource The location of the rule bundle.
+   * @param size The size of the JAR or file containing the rule bundle, or {@code -1} if unknown.
+   * @param lastModified The modification time of the JAR or file containing the rule bundle, in
+   *     milliseconds since the epoch, or {@code -1} if unknown.
+   */
+  private record ResourceStamp(String resource, long size, long lastModified) {
+    static ResourceStamp of(URL resource) {
+      return getBackingFile(resource)
+          .flatMap(ResourceStamp::readAttributes)
+          .map(
+              attributes ->
+                  new ResourceStamp(
+                      resource.toString(),
+                      attributes.size(),
+                      attributes.lastModifiedTime().toMillis()))
+          .orElseGet(() -> new ResourceStamp(resource.toString(), -1, -1));
+    }
+
+    @SuppressWarnings("java:S1166" /* The caught exception's stack trace is not relevant. */)
+    private static Optional<Path> getBackingFile(URL resource) {
+      try {
+        URL location = resource;
+        if ("jar".equals(resource.getProtocol())) {
+          /* This does not open the JAR. */
+          location = ((JarURLConnection) resource.openConnection()).getJarFileURL();
+        }
+        return "file".equals(location.getProtocol())
+            ? Optional.of(Path.of(location.toURI()))
+            : Optional.empty();
+      } catch (IOException | URISyntaxException e) {
+        return Optional.empty();
+      }
+    }
+
+    @SuppressWarnings("java:S1166" /* The caught exception's stack trace is not relevant. */)
+    private static Optional<BasicFileAttributes> readAttributes(Path path) {
+      try {
+        return Optional.of(Files.readAttributes(path, BasicFileAttributes.class));
+      } catch (IOException e) {
+        return Optional.empty();
+      }
+    }
+  }
+}
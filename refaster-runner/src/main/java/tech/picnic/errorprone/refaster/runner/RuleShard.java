@@ -0,0 +1,87 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Comparator.comparingLong;
+
+import com.google.common.collect.ImmutableList;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One of a number of disjoint subsets of Refaster rules, such that the application of a large set
+ * of rules can be spread across multiple build agents or {@code javac} invocations.
+ *
+ * <p>Rules are assigned to shards by greedily adding the next most expensive rule to the shard with
+ * the lowest total cost, using the size of a rule's serialized representation as a proxy for the
+ * cost of applying it. Rules of equal size are ordered by their fully qualified name, such that the
+ * assignment depends only on the set of rules being partitioned, and thus is the same across
+ * invocations.
+ *
+ * @param index The one-based index of this shard.
+ * @param count The total number of shards.
+ */
+record RuleShard(int index, int count) {
+  private static final Pattern FORMAT = Pattern.compile("(\\d+)/(\\d+)");
+
+  RuleShard {
+    checkArgument(
+        0 < index && index <= count,
+        "Invalid shard %s/%s; expected 0 < index <= count",
+        index,
+        count);
+  }
+
+  /**
+   * Parses a shard specification of the form {@code <index>/<count>}.
+   *
+   * @param specification The shard specification to parse.
+   * @return A non-{@code null} {@link RuleShard}.
+   * @throws IllegalArgumentException If the specification is malformed.
+   */
+  static RuleShard parse(String specification) {
+    Matcher matcher = FORMAT.matcher(specification);
+    checkArgument(
+        matcher.matches(),
+        "Invalid shard '%s'; expected a value of the form '<index>/<count>'",
+        specification);
+    return new RuleShard(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+  }
+
+  /**
+   * Returns the subset of the given Refaster rules that belong to this shard.
+   *
+   * @param codeTransformers The Refaster rules to partition.
+   * @return The rules assigned to this shard, in their original order.
+   */
+  ImmutableList<LazyCodeTransformer> select(ImmutableList<LazyCodeTransformer> codeTransformers) {
+    ImmutableList<LazyCodeTransformer> byDecreasingCost =
+        ImmutableList.sortedCopyOf(
+            comparingLong(LazyCodeTransformer::serializedSize)
+                .reversed()
+                .thenComparing(LazyCodeTransformer::qualifiedName),
+            codeTransformers);
+
+    PriorityQueue<Bucket> buckets =
+        new PriorityQueue<>(comparingLong(Bucket::cost).thenComparing(Bucket::index));
+    for (int i = 1; i <= count; i++) {
+      buckets.add(new Bucket(i, 0));
+    }
+
+    Set<LazyCodeTransformer> selected = new HashSet<>();
+    for (LazyCodeTransformer codeTransformer : byDecreasingCost) {
+      Bucket cheapest = buckets.remove();
+      if (cheapest.index() == index) {
+        selected.add(codeTransformer);
+      }
+      buckets.add(new Bucket(cheapest.index(), cheapest.cost() + codeTransformer.serializedSize()));
+    }
+
+    return codeTransformers.stream().filter(selected::contains).collect(toImmutableList());
+  }
+
+  private record Bucket(int index, long cost) {}
+}
@@ -0,0 +1,170 @@
+package com.google.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.errorprone.FileManagers;
+import com.google.errorprone.FileObjects;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import org.junit.jupiter.api.Test;
+
+final class TemplateHeadTest {
+  @Test
+  void singleShapeTemplate() {
+    assertThat(
+            getHeads(
+                "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+                "",
+                "class A {",
+                "  @BeforeTemplate",
+                "  StringBuilder before(String s) {",
+                "    return new StringBuilder(s);",
+                "  }",
+                "}"))
+        .containsExactly(ImmutableSet.of(new TemplateHead(NewClassTree.class, null)));
+  }
+
+  @Test
+  void wildcardTemplate() {
+    assertThat(
+            getHeads(
+                "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+                "",
+                "class A {",
+                "  @BeforeTemplate",
+                "  boolean before(boolean b) {",
+                "    return b;",
+                "  }",
+                "}"))
+        .containsExactly(ImmutableSet.of(TemplateHead.WILDCARD));
+  }
+
+  @Test
+  void anyOfTemplate() {
+    assertThat(
+            getHeads(
+                "import com.google.errorprone.refaster.Refaster;",
+                "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+                "",
+                "class A {",
+                "  @BeforeTemplate",
+                "  boolean before(String s) {",
+                "    return Refaster.anyOf(s.length() == 0, s.isEmpty());",
+                "  }",
+                "}"))
+        .containsExactly(
+            ImmutableSet.of(
+                new TemplateHead(ParenthesizedTree.class, null),
+                new TemplateHead(BinaryTree.class, "EQUAL_TO"),
+                new TemplateHead(MethodInvocationTree.class, "isEmpty")));
+  }
+
+  @Test
+  void anyOfTemplateWithWildcardAlternative() {
+    assertThat(
+            getHeads(
+                "import com.google.errorprone.refaster.Refaster;",
+                "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+                "",
+                "class A {",
+                "  @BeforeTemplate",
+                "  boolean before(String s, boolean b) {",
+                "    return Refaster.anyOf(s.isEmpty(), b);",
+                "  }",
+                "}"))
+        .containsExactly(ImmutableSet.of(TemplateHead.WILDCARD));
+  }
+
+  @Test
+  void blockTemplate() {
+    assertThat(
+            getHeads(
+                "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+                "import java.util.List;",
+                "",
+                "class A {",
+                "  @BeforeTemplate",
+                "  void before(List<String> list) {",
+                "    list.clear();",
+                "  }",
+                "}"))
+        .containsExactly(ImmutableSet.of(new TemplateHead(BlockTree.class, null)));
+  }
+
+  @Test
+  void placeholderTemplate() {
+    assertThat(
+            getHeads(
+                "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+                "import com.google.errorprone.refaster.annotation.Placeholder;",
+                "",
+                "abstract class A {",
+                "  @Placeholder",
+                "  abstract boolean test(String s);",
+                "",
+                "  @BeforeTemplate",
+                "  boolean before(String s) {",
+                "    return test(s);",
+                "  }",
+                "}"))
+        .containsExactly(ImmutableSet.of(TemplateHead.WILDCARD));
+  }
+
+  @Test
+  void placeholderArgumentTemplate() {
+    assertThat(
+            getHeads(
+                "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+                "import com.google.errorprone.refaster.annotation.Placeholder;",
+                "import java.util.Objects;",
+                "",
+                "abstract class A {",
+                "  @Placeholder",
+                "  abstract String transform(String s);",
+                "",
+                "  @BeforeTemplate",
+                "  String before(String s) {",
+                "    return Objects.requireNonNull(transform(s));",
+                "  }",
+                "}"))
+        .containsExactly(
+            ImmutableSet.of(new TemplateHead(MethodInvocationTree.class, "requireNonNull")));
+  }
+
+  /**
+   * Compiles the given Refaster rule and returns the heads of each of its before templates, in
+   * declaration order.
+   */
+  private static ImmutableList<ImmutableSet<TemplateHead>> getHeads(String... ruleSourceLines) {
+    JavacTaskImpl task =
+        (JavacTaskImpl)
+            JavacTool.create()
+                .getTask(
+                    null,
+                    FileManagers.testFileManager(),
+                    null,
+                    ImmutableList.of("-proc:none"),
+                    null,
+                    ImmutableList.of(FileObjects.forSourceLines("A.java", ruleSourceLines)));
+    CompilationUnitTree compilationUnit = Iterables.getOnlyElement(task.parse());
+    task.analyze();
+    RefasterRule<?, ?> rule =
+        (RefasterRule<?, ?>)
+            Iterables.getOnlyElement(
+                RefasterRuleBuilderScanner.extractRules(
+                    (ClassTree) Iterables.getOnlyElement(compilationUnit.getTypeDecls()),
+                    task.getContext()));
+    return rule.beforeTemplates().stream().map(TemplateHead::of).collect(toImmutableList());
+  }
+}
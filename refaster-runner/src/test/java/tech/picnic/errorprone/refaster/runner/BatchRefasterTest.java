@@ -0,0 +1,154 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import tech.picnic.errorprone.refaster.runner.BatchRefaster.Configuration;
+
+final class BatchRefasterTest {
+  @Test
+  void parseConfiguration() {
+    Configuration configuration =
+        Configuration.parse(
+            ImmutableList.of(
+                "--source-path",
+                "a" + File.pathSeparator + "b",
+                "--patch-file",
+                "out.patch",
+                "--class-path",
+                "lib.jar",
+                "--batch-size",
+                "10",
+                "--threads",
+                "3",
+                "-XepOpt:Refaster:NamePattern=.*FooRules.*"));
+
+    assertThat(configuration.sourcePath()).containsExactly(Path.of("a"), Path.of("b"));
+    assertThat(configuration.patchFile()).isEqualTo(Path.of("out.patch"));
+    assertThat(configuration.classPath()).isEqualTo("lib.jar");
+    assertThat(configuration.batchSize()).isEqualTo(10);
+    assertThat(configuration.threads()).isEqualTo(3);
+    assertThat(configuration.flags().get("Refaster:NamePattern")).hasValue(".*FooRules.*");
+  }
+
+  @ValueSource(
+      strings = {
+        "--patch-file out.patch",
+        "--source-path src",
+        "--source-path src --patch-file",
+        "--source-path src --patch-file out.patch --batch-size 0",
+        "--source-path src --patch-file out.patch --threads x",
+        "--source-path src --patch-file out.patch --unknown value"
+      })
+  @ParameterizedTest
+  void parseInvalidConfiguration(String args) {
+    assertThatThrownBy(() -> Configuration.parse(ImmutableList.copyOf(args.split(" "))))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void run(@TempDir Path directory) throws IOException, InterruptedException {
+    Path sourceRoot = directory.resolve("src");
+    Files.createDirectories(sourceRoot.resolve("pkg"));
+    Files.writeString(
+        sourceRoot.resolve("pkg/A.java"),
+        """
+        package pkg;
+
+        class A {
+          boolean m(String s) {
+            return s.toCharArray().length == 0;
+          }
+        }
+        """);
+    Files.writeString(
+        sourceRoot.resolve("pkg/B.java"),
+        """
+        package pkg;
+
+        class B {
+          boolean m(String s) {
+            return s.toCharArray().length == 1 && new A().m(s);
+          }
+        }
+        """);
+    Files.writeString(
+        sourceRoot.resolve("pkg/C.java"),
+        """
+        package pkg;
+
+        class C {
+          boolean m(String s) {
+            return s.toCharArray().length == 0 && unknown();
+          }
+        }
+        """);
+    Path patchFile = directory.resolve("out.patch");
+    Path profileReport = directory.resolve("profile.csv");
+    Path matchStatistics = directory.resolve("statistics.csv");
+
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    int patchedFiles =
+        new BatchRefaster(
+                Configuration.parse(
+                    ImmutableList.of(
+                        "--source-path",
+                        sourceRoot.toString(),
+                        "--patch-file",
+                        patchFile.toString(),
+                        "--batch-size",
+                        "1",
+                        "--threads",
+                        "2",
+                        "-XepOpt:Refaster:NamePattern=.*\\$StringOfSize(Zero|One)Rule",
+                        "-XepOpt:Refaster:ProfileReport=" + profileReport,
+                        "-XepOpt:Refaster:MatchStatistics=" + matchStatistics)))
+            .run(new PrintStream(log, /* autoFlush= */ true, UTF_8));
+
+    assertThat(patchedFiles).isEqualTo(2);
+    assertThat(patchFile)
+        .content(UTF_8)
+        .isEqualTo(
+            """
+            --- src/pkg/A.java
+            +++ src/pkg/A.java
+            @@ -3,5 +3,5 @@
+             class A {
+               boolean m(String s) {
+            -    return s.toCharArray().length == 0;
+            +    return s.isEmpty();
+               }
+             }
+            --- src/pkg/B.java
+            +++ src/pkg/B.java
+            @@ -3,5 +3,5 @@
+             class B {
+               boolean m(String s) {
+            -    return s.toCharArray().length == 1 && new A().m(s);
+            +    return s.length() == 1 && new A().m(s);
+               }
+             }
+            """);
+    assertThat(log.toString(UTF_8))
+        .contains("Skipped " + sourceRoot.resolve("pkg/C.java"))
+        .contains("Processed 3 source files; wrote changes to 2 of them to " + patchFile);
+    assertThat(profileReport).exists();
+    assertThat(RefasterMatchStatistics.read(matchStatistics))
+        .containsExactly(
+            entry(FooRules.class.getName() + "$StringOfSizeOneRule", 1L),
+            entry(FooRules.class.getName() + "$StringOfSizeZeroRule", 1L));
+  }
+}
@@ -2,6 +2,7 @@ package tech.picnic.errorprone.refaster.runner;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.google.common.collect.ImmutableSet;
 import org.junit.jupiter.api.Test;
 
 final class CodeTransformersTest {
@@ -19,4 +20,20 @@ final class CodeTransformersTest {
             "FooRules$ExtraGrouping$StringOfSizeTwoRule",
             "FooRules$ExtraGrouping$StringOfSizeThreeRule");
   }
+
+  /**
+   * Verifies that the code transformers compiled from {@link FooRules} require the presence of the
+   * method invoked by their {@code @BeforeTemplate} methods, as well as the type declaring it.
+   */
+  @Test
+  void getAllLazyCodeTransformers() {
+    assertThat(CodeTransformers.getAllLazyCodeTransformers())
+        .hasSize(5)
+        .allSatisfy(
+            transformer -> {
+              assertThat(transformer.requiredIdentifiers().clauses())
+                  .containsExactly(ImmutableSet.of("toCharArray"));
+              assertThat(transformer.requiredTypes()).containsExactly("java.lang.String");
+            });
+  }
 }
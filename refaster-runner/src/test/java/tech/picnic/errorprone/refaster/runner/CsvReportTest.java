@@ -0,0 +1,56 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class CsvReportTest {
+  private static final String HEADER = "key,a,b";
+
+  @Test
+  void mergeAndRead(@TempDir Path directory) throws IOException {
+    Path report = directory.resolve("report.csv");
+
+    CsvReport.merge(
+        report,
+        HEADER,
+        ImmutableMap.of("x", new long[] {1, 2}, "y", new long[] {3, 4}),
+        Map.Entry.comparingByKey());
+    CsvReport.merge(
+        report,
+        HEADER,
+        ImmutableMap.of("y", new long[] {5, 6}, "z", new long[] {0, 7}),
+        Map.Entry.<String, long[]>comparingByKey().reversed());
+
+    assertThat(report).content(UTF_8).isEqualTo("key,a,b\nz,0,7\ny,8,10\nx,1,2\n");
+    assertThat(CsvReport.read(report, HEADER))
+        .containsOnlyKeys("x", "y", "z")
+        .hasEntrySatisfying("y", counts -> assertThat(counts).containsExactly(8, 10));
+  }
+
+  @Test
+  void readWithUnexpectedHeader(@TempDir Path directory) throws IOException {
+    Path report = Files.writeString(directory.resolve("report.csv"), "key,a\nx,1\n", UTF_8);
+
+    assertThatThrownBy(() -> CsvReport.read(report, HEADER))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Unexpected header 'key,a'");
+  }
+
+  @Test
+  void readWithMalformedRecord(@TempDir Path directory) throws IOException {
+    Path report = Files.writeString(directory.resolve("report.csv"), "key,a,b\nx,1,y\n", UTF_8);
+
+    assertThatThrownBy(() -> CsvReport.read(report, HEADER))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Malformed record 'x,1,y'");
+  }
+}
@@ -0,0 +1,118 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import tech.picnic.errorprone.refaster.runner.DeadRefasterRules.Configuration;
+
+final class DeadRefasterRulesTest {
+  @Test
+  void parseConfiguration() {
+    Configuration configuration =
+        Configuration.parse(
+            ImmutableList.of("a.csv", "--min-builds", "3", "--name-pattern", "b.csv"));
+
+    assertThat(configuration.statisticsFiles()).containsExactly(Path.of("a.csv"), Path.of("b.csv"));
+    assertThat(configuration.minBuilds()).isEqualTo(3);
+    assertThat(configuration.namePattern()).isTrue();
+  }
+
+  @ValueSource(
+      strings = {
+        "--name-pattern",
+        "a.csv --min-builds",
+        "a.csv --min-builds 0",
+        "a.csv --min-builds x",
+        "a.csv --unknown"
+      })
+  @ParameterizedTest
+  void parseInvalidConfiguration(String args) {
+    assertThatThrownBy(() -> Configuration.parse(ImmutableList.copyOf(args.split(" "))))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void findDeadRules() {
+    ImmutableList<ImmutableMap<String, Long>> builds =
+        ImmutableList.of(
+            ImmutableMap.of("A", 0L, "B", 0L, "C", 1L, "D", 0L),
+            ImmutableMap.of("A", 0L, "B", 2L, "C", 0L));
+
+    assertThat(DeadRefasterRules.findDeadRules(builds, 1)).containsExactly("A", "D");
+    assertThat(DeadRefasterRules.findDeadRules(builds, 2)).containsExactly("A");
+    assertThat(DeadRefasterRules.findDeadRules(builds, 3)).isEmpty();
+  }
+
+  @Test
+  void toExclusionPattern() {
+    Pattern pattern =
+        Pattern.compile(
+            DeadRefasterRules.toExclusionPattern(
+                ImmutableSortedSet.of("FooRules$BarRule", "FooRules$BazRule")));
+
+    assertThat(pattern.matcher("FooRules$BarRule").matches()).isFalse();
+    assertThat(pattern.matcher("FooRules$BazRule").matches()).isFalse();
+    assertThat(pattern.matcher("FooRules$BarRuleVariant").matches()).isTrue();
+    assertThat(pattern.matcher("FooRules$QuxRule").matches()).isTrue();
+    assertThat(DeadRefasterRules.toExclusionPattern(ImmutableSortedSet.of())).isEqualTo(".*");
+  }
+
+  @Test
+  void run(@TempDir Path directory) throws IOException {
+    Path build1 = directory.resolve("build-1.csv");
+    Path build2 = directory.resolve("build-2.csv");
+    Files.writeString(build1, "rule,matches\npkg.FooRules$A,0\npkg.FooRules$B,1\n", UTF_8);
+    Files.writeString(build2, "rule,matches\npkg.FooRules$A,0\npkg.FooRules$C,0\n", UTF_8);
+
+    assertThat(run("--min-builds", "2", build1.toString(), build2.toString()))
+        .isEqualTo("pkg.FooRules$A\n");
+    assertThat(run(build1.toString(), build2.toString()))
+        .isEqualTo("pkg.FooRules$A\npkg.FooRules$C\n");
+    assertThat(run("--name-pattern", build1.toString(), build2.toString()))
+        .isEqualTo("(?!(?:\\QFooRules$A\\E|\\QFooRules$C\\E)$).*\n");
+  }
+
+  @Test
+  void toExcludableNames() {
+    ImmutableList<ImmutableMap<String, Long>> builds =
+        ImmutableList.of(
+            ImmutableMap.of("a.FooRules$A", 0L, "a.FooRules$B", 0L, "b.FooRules$B", 1L),
+            ImmutableMap.of("b.FooRules$C", 0L));
+
+    assertThat(
+            DeadRefasterRules.toExcludableNames(
+                builds, ImmutableSortedSet.of("a.FooRules$A", "a.FooRules$B", "b.FooRules$C")))
+        .containsExactly("FooRules$A", "FooRules$C");
+  }
+
+  @Test
+  void runWithMalformedStatistics(@TempDir Path directory) throws IOException {
+    Path statistics = directory.resolve("statistics.csv");
+    Files.writeString(statistics, "rule,count\nFooRules$A,0\n", UTF_8);
+
+    assertThatThrownBy(() -> run(statistics.toString()))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Unexpected header 'rule,count'");
+  }
+
+  private static String run(String... args) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new DeadRefasterRules(Configuration.parse(ImmutableList.copyOf(args)))
+        .run(new PrintStream(out, /* autoFlush= */ true, UTF_8));
+    return out.toString(UTF_8);
+  }
+}
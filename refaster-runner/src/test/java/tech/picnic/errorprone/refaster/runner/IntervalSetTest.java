@@ -0,0 +1,91 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+final class IntervalSetTest {
+  private static Stream<Arguments> intersectsTestCases() {
+    /* { start, end, expected } */
+    return Stream.of(
+        arguments(0, 10, false),
+        arguments(0, 11, true),
+        arguments(15, 15, false),
+        arguments(12, 18, true),
+        arguments(5, 35, true),
+        arguments(19, 21, true),
+        arguments(20, 25, false),
+        arguments(25, 30, false),
+        arguments(20, 30, false),
+        arguments(29, 31, true),
+        arguments(39, 50, true),
+        arguments(40, 50, false));
+  }
+
+  @MethodSource("intersectsTestCases")
+  @ParameterizedTest
+  void intersects(int start, int end, boolean expected) {
+    IntervalSet intervals = new IntervalSet();
+    intervals.add(10, 20);
+    intervals.add(30, 40);
+
+    assertThat(intervals.intersects(start, end)).isEqualTo(expected);
+  }
+
+  @Test
+  void addMergesIntervals() {
+    IntervalSet intervals = new IntervalSet();
+    intervals.add(10, 20);
+    intervals.add(20, 30);
+    intervals.add(40, 50);
+    intervals.add(60, 70);
+    intervals.add(25, 65);
+    intervals.add(80, 80);
+
+    assertThat(intervals.intersects(9, 10)).isFalse();
+    assertThat(intervals.intersects(69, 70)).isTrue();
+    assertThat(intervals.intersects(70, 80)).isFalse();
+    assertThat(intervals.intersects(79, 81)).isFalse();
+  }
+
+  @Test
+  void invalidInterval() {
+    IntervalSet intervals = new IntervalSet();
+
+    assertThatThrownBy(() -> intervals.add(2, 1))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Invalid interval [2, 1)");
+    assertThatThrownBy(() -> intervals.intersects(2, 1))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Invalid interval [2, 1)");
+  }
+
+  @Test
+  void agreesWithRangeSet() {
+    Random random = new Random(0);
+    IntervalSet intervals = new IntervalSet();
+    RangeSet<Integer> ranges = TreeRangeSet.create();
+
+    for (int i = 0; i < 100_000; i++) {
+      int start = random.nextInt(1_000_000);
+      int end = start + random.nextInt(20);
+      boolean intersects = ranges.intersects(Range.closedOpen(start, end));
+
+      assertThat(intervals.intersects(start, end)).isEqualTo(intersects);
+      if (!intersects) {
+        intervals.add(start, end);
+        ranges.add(Range.closedOpen(start, end));
+      }
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
+import tech.picnic.errorprone.refaster.RequiredIdentifiers;
+
+final class LazyCodeTransformerTest {
+  private static final RefasterRuleBundle.Entry INVALID_ENTRY =
+      new RefasterRuleBundle.Entry(
+          "com.example.FooRules$BarRule",
+          RequiredIdentifiers.of("bar"),
+          ImmutableSet.of("com.example.Bar"),
+          HashCode.fromInt(0),
+          ByteSource.wrap("not a serialized object".getBytes(UTF_8)));
+
+  @Test
+  void metadataDoesNotRequireDeserialization() {
+    LazyCodeTransformer codeTransformer = new LazyCodeTransformer(INVALID_ENTRY);
+
+    assertThat(codeTransformer.name()).isEqualTo("FooRules$BarRule");
+    assertThat(codeTransformer.requiredIdentifiers()).isEqualTo(RequiredIdentifiers.of("bar"));
+    assertThat(codeTransformer.requiredTypes()).containsExactly("com.example.Bar");
+  }
+
+  @Test
+  void annotationsRequiresDeserialization() {
+    LazyCodeTransformer codeTransformer = new LazyCodeTransformer(INVALID_ENTRY);
+
+    assertThatThrownBy(codeTransformer::annotations)
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("Can't load `CodeTransformer` com.example.FooRules$BarRule");
+  }
+}
@@ -0,0 +1,170 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.util.Objects.requireNonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.MoreFiles;
+import com.google.errorprone.CodeTransformer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
+import tech.picnic.errorprone.refaster.RequiredIdentifiers;
+
+final class RefasterRuleRegistryTest {
+  @Test
+  void getTransformers(@TempDir Path classpathRoot) throws IOException {
+    RefasterRuleBundle bundle = readTestRuleBundle();
+    writeRuleBundle(bundle, classpathRoot, Instant.ofEpochSecond(1));
+
+    try (URLClassLoader classLoader =
+        new URLClassLoader(new URL[] {classpathRoot.toUri().toURL()}, null)) {
+      RefasterRuleRegistry registry = new RefasterRuleRegistry(classLoader);
+
+      ImmutableList<LazyCodeTransformer> transformers = registry.getTransformers();
+      assertThat(transformers).hasSize(bundle.entries().size());
+      assertThat(registry.getTransformers()).isSameAs(transformers);
+
+      /* Replace the bundle with one that lacks its first rule. */
+      LazyCodeTransformer retainedTransformer = transformers.get(1);
+      CodeTransformer retainedRule = retainedTransformer.load().orElseThrow();
+      writeRuleBundle(
+          new RefasterRuleBundle(bundle.entries().subList(1, bundle.entries().size())),
+          classpathRoot,
+          Instant.ofEpochSecond(2));
+
+      ImmutableList<LazyCodeTransformer> reloadedTransformers = registry.getTransformers();
+      assertThat(reloadedTransformers)
+          .extracting(LazyCodeTransformer::name)
+          .containsExactlyElementsOf(
+              transformers.subList(1, transformers.size()).stream()
+                  .map(LazyCodeTransformer::name)
+                  .toList());
+      assertThat(reloadedTransformers.getFirst().load()).containsSame(retainedRule);
+      assertThat(reloadedTransformers.get(1).fingerprint())
+          .isEqualTo(transformers.get(2).fingerprint());
+      assertThat(registry.getTransformers()).isSameAs(reloadedTransformers);
+    }
+  }
+
+  @Test
+  void getTransformersFromMergedIndex(@TempDir Path classpathRoot) throws IOException {
+    RefasterRuleBundle bundle = readTestRuleBundle();
+    RefasterRuleBundle first = new RefasterRuleBundle(bundle.entries().subList(0, 1));
+    RefasterRuleBundle second =
+        new RefasterRuleBundle(bundle.entries().subList(1, bundle.entries().size()));
+    writeRuleBundle(first, classpathRoot, Instant.ofEpochSecond(1));
+    writeRuleBundle(second, classpathRoot, Instant.ofEpochSecond(1));
+    writeIndex(classpathRoot, ImmutableList.of(first.resourceName(), second.resourceName()));
+
+    try (URLClassLoader classLoader =
+        new URLClassLoader(new URL[] {classpathRoot.toUri().toURL()}, null)) {
+      assertThat(
+              new RefasterRuleRegistry(classLoader)
+                  .getTransformers().stream().map(LazyCodeTransformer::fingerprint))
+          .containsExactlyElementsOf(
+              bundle.entries().stream().map(LazyCodeTransformer::fingerprint).toList());
+    }
+  }
+
+  @Test
+  void getTransformersWithMissingBundle(@TempDir Path classpathRoot) throws IOException {
+    writeIndex(classpathRoot, ImmutableList.of("META-INF/refaster/rules-missing.bundle"));
+
+    try (URLClassLoader classLoader =
+        new URLClassLoader(new URL[] {classpathRoot.toUri().toURL()}, null)) {
+      RefasterRuleRegistry registry = new RefasterRuleRegistry(classLoader);
+
+      assertThatThrownBy(registry::getTransformers)
+          .isInstanceOf(IllegalStateException.class)
+          .hasMessageStartingWith(
+              "Refaster rule bundle 'META-INF/refaster/rules-missing.bundle' listed in ");
+    }
+  }
+
+  @Test
+  void getTransformersFromLegacyResources(@TempDir Path classpathRoot) throws IOException {
+    RefasterRuleBundle.Entry entry = readTestRuleBundle().entries().getFirst();
+    Path legacyRule = classpathRoot.resolve("pkg/LegacyRules.refaster");
+    Files.createDirectories(legacyRule.getParent());
+    entry.codeTransformer().copyTo(MoreFiles.asByteSink(legacyRule));
+
+    try (URLClassLoader classLoader =
+        new URLClassLoader(new URL[] {classpathRoot.toUri().toURL()}, null)) {
+      ImmutableList<LazyCodeTransformer> transformers =
+          new RefasterRuleRegistry(classLoader).getTransformers();
+
+      assertThat(transformers).extracting(LazyCodeTransformer::name).containsExactly("LegacyRules");
+      assertThat(transformers.getFirst().requiredIdentifiers()).isEqualTo(RequiredIdentifiers.NONE);
+      assertThat(transformers.getFirst().load()).isPresent();
+    }
+  }
+
+  @Test
+  void getTransformersIgnoresLegacyResourcesIfIndexPresent(@TempDir Path classpathRoot)
+      throws IOException {
+    RefasterRuleBundle bundle = readTestRuleBundle();
+    writeRuleBundle(bundle, classpathRoot, Instant.ofEpochSecond(1));
+    Path legacyRule = classpathRoot.resolve("pkg/LegacyRules.refaster");
+    Files.createDirectories(legacyRule.getParent());
+    bundle.entries().getFirst().codeTransformer().copyTo(MoreFiles.asByteSink(legacyRule));
+
+    try (URLClassLoader classLoader =
+        new URLClassLoader(new URL[] {classpathRoot.toUri().toURL()}, null)) {
+      assertThat(new RefasterRuleRegistry(classLoader).getTransformers())
+          .extracting(LazyCodeTransformer::qualifiedName)
+          .containsExactlyElementsOf(
+              bundle.entries().stream().map(RefasterRuleBundle.Entry::name).toList());
+    }
+  }
+
+  private static RefasterRuleBundle readTestRuleBundle() throws IOException {
+    ClassLoader classLoader = RefasterRuleRegistryTest.class.getClassLoader();
+    String resourceName;
+    try (InputStream in =
+        requireNonNull(
+            classLoader.getResourceAsStream(RefasterRuleBundle.INDEX_RESOURCE_NAME),
+            "Rule bundle index not found")) {
+      resourceName = RefasterRuleBundle.readIndex(in).iterator().next();
+    }
+
+    try (InputStream in =
+        requireNonNull(classLoader.getResourceAsStream(resourceName), "Rule bundle not found")) {
+      return RefasterRuleBundle.read(in);
+    }
+  }
+
+  /**
+   * Writes the given bundle to the given classpath root, along with an index that lists only this
+   * bundle.
+   */
+  private static void writeRuleBundle(
+      RefasterRuleBundle bundle, Path classpathRoot, Instant lastModified) throws IOException {
+    Path file = classpathRoot.resolve(bundle.resourceName());
+    Files.createDirectories(file.getParent());
+    try (OutputStream out = Files.newOutputStream(file)) {
+      bundle.write(out);
+    }
+    Files.setLastModifiedTime(file, FileTime.from(lastModified));
+    writeIndex(classpathRoot, ImmutableList.of(bundle.resourceName()));
+  }
+
+  private static void writeIndex(Path classpathRoot, ImmutableList<String> resourceNames)
+      throws IOException {
+    Path index = classpathRoot.resolve(RefasterRuleBundle.INDEX_RESOURCE_NAME);
+    Files.createDirectories(index.getParent());
+    try (OutputStream out = Files.newOutputStream(index)) {
+      RefasterRuleBundle.writeIndex(resourceNames, out);
+    }
+  }
+}
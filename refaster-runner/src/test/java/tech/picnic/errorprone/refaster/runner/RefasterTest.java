@@ -1,27 +1,38 @@
 package tech.picnic.errorprone.refaster.runner;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.MoreCollectors.onlyElement;
 import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 import static com.google.errorprone.BugPattern.SeverityLevel.SUGGESTION;
 import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Comparator.comparingInt;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.BugCheckerInfo;
 import com.google.errorprone.BugCheckerRefactoringTestHelper;
 import com.google.errorprone.BugPattern.SeverityLevel;
 import com.google.errorprone.CompilationTestHelper;
+import com.google.errorprone.ErrorProneFlags;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import tech.picnic.errorprone.utils.PatchSink;
 
 final class RefasterTest {
+  private static final String FOO_RULES = FooRules.class.getName();
   private static final Pattern DIAGNOSTIC_STRING_OF_SIZE_ZERO =
       Pattern.compile(
           "\\[Refaster Rule\\] FooRules\\.StringOfSizeZeroRule: Refactoring opportunity\\s+.+\\s+");
@@ -66,6 +77,40 @@ final class RefasterTest {
         .doTest();
   }
 
+  @Test
+  void suppression() {
+    CompilationTestHelper.newInstance(Refaster.class, getClass())
+        .setArgs("-XepOpt:Refaster:NamePattern=.*\\$(StringOfSizeZeroRule|StringOfSizeOneRule)$")
+        .matchAllDiagnostics()
+        .expectErrorMessage("StringOfSizeZeroRule", DIAGNOSTIC_STRING_OF_SIZE_ZERO.asPredicate())
+        .expectErrorMessage("StringOfSizeOneRule", DIAGNOSTIC_STRING_OF_SIZE_ONE.asPredicate())
+        .addSourceLines(
+            "A.java",
+            "class A {",
+            "  @SuppressWarnings(\"StringOfSizeZeroRule\")",
+            "  void m1() {",
+            "    boolean b1 = \"foo\".toCharArray().length == 0;",
+            "    // BUG: Diagnostic matches: StringOfSizeOneRule",
+            "    boolean b2 = \"bar\".toCharArray().length == 1;",
+            "  }",
+            "",
+            "  void m2() {",
+            "    // BUG: Diagnostic matches: StringOfSizeZeroRule",
+            "    boolean b1 = \"foo\".toCharArray().length == 0;",
+            "    @SuppressWarnings(\"StringOfSizeOneRule\")",
+            "    boolean b2 = \"bar\".toCharArray().length == 1;",
+            "  }",
+            "",
+            "  @SuppressWarnings(\"StringOfSizeZeroRule\")",
+            "  static final class B {",
+            "    boolean f1 = \"foo\".toCharArray().length == 0;",
+            "    // BUG: Diagnostic matches: StringOfSizeOneRule",
+            "    boolean f2 = (\"bar\".toCharArray().length == 1);",
+            "  }",
+            "}")
+        .doTest();
+  }
+
   private static Stream<Arguments> severityAssignmentTestCases() {
     /*
      * The _actual_ default severity is assigned by the `CodeTransformer`s to which the `Refaster`
@@ -253,4 +298,285 @@ final class RefasterTest {
             "}")
         .doTest();
   }
+
+  @Test
+  void cachedReplacement(@TempDir Path cacheDirectory) throws IOException {
+    verifyReplacementUsingCache(cacheDirectory);
+    Path entry = getOnlyCacheEntry(cacheDirectory);
+    byte[] content = Files.readAllBytes(entry);
+
+    verifyReplacementUsingCache(cacheDirectory);
+    assertThat(getOnlyCacheEntry(cacheDirectory)).isEqualTo(entry).hasBinaryContent(content);
+
+    /* Corrupt cache entries are ignored and replaced. */
+    Files.write(entry, new byte[] {1, 2, 3});
+    verifyReplacementUsingCache(cacheDirectory);
+    assertThat(getOnlyCacheEntry(cacheDirectory)).isEqualTo(entry).hasBinaryContent(content);
+  }
+
+  @Test
+  void cachedReplacementWithOtherSource(@TempDir Path cacheDirectory) throws IOException {
+    verifyReplacementUsingCache(cacheDirectory);
+    Path entry = getOnlyCacheEntry(cacheDirectory);
+
+    /* A source file that is not referenced by the compilation unit does not affect its entry. */
+    BugCheckerRefactoringTestHelper.newInstance(Refaster.class, getClass())
+        .setArgs("-XepOpt:Refaster:CacheDirectory=" + cacheDirectory)
+        .addInputLines(
+            "A.java",
+            "class A {",
+            "  void m() {",
+            "    boolean b1 = \"foo\".toCharArray().length == 0;",
+            "    boolean b2 = \"bar\".toCharArray().length == 1;",
+            "  }",
+            "}")
+        .addOutputLines(
+            "A.java",
+            "class A {",
+            "  void m() {",
+            "    boolean b1 = \"foo\".isEmpty();",
+            "    boolean b2 = \"bar\".length() == 1;",
+            "  }",
+            "}")
+        .addInputLines("B.java", "class B {}")
+        .expectUnchanged()
+        .doTest();
+
+    try (Stream<Path> entries = Files.list(cacheDirectory)) {
+      assertThat(entries).hasSize(2).contains(entry);
+    }
+  }
+
+  @Test
+  void cachedReplacementWithModifiedReferencedSource(@TempDir Path cacheDirectory)
+      throws IOException {
+    /* A change to a source file referenced by the compilation unit invalidates its entry. */
+    verifyReferencingReplacementUsingCache(cacheDirectory, "class B {", "  String s;", "}", "// B");
+    verifyReferencingReplacementUsingCache(cacheDirectory, "class B {", "  String s;", "}", "// C");
+    try (Stream<Path> entries = Files.list(cacheDirectory)) {
+      assertThat(entries).hasSize(4);
+    }
+  }
+
+  private static Path getOnlyCacheEntry(Path cacheDirectory) throws IOException {
+    try (Stream<Path> entries = Files.list(cacheDirectory)) {
+      return entries.collect(onlyElement());
+    }
+  }
+
+  private void verifyReplacementUsingCache(Path cacheDirectory) {
+    BugCheckerRefactoringTestHelper.newInstance(Refaster.class, getClass())
+        .setArgs("-XepOpt:Refaster:CacheDirectory=" + cacheDirectory)
+        .addInputLines(
+            "A.java",
+            "class A {",
+            "  void m() {",
+            "    boolean b1 = \"foo\".toCharArray().length == 0;",
+            "    boolean b2 = \"bar\".toCharArray().length == 1;",
+            "  }",
+            "}")
+        .addOutputLines(
+            "A.java",
+            "class A {",
+            "  void m() {",
+            "    boolean b1 = \"foo\".isEmpty();",
+            "    boolean b2 = \"bar\".length() == 1;",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  /**
+   * Verifies the replacements made in a compilation unit that refers to the class declared by the
+   * given source, using the given cache directory.
+   */
+  private void verifyReferencingReplacementUsingCache(
+      Path cacheDirectory, String... otherSourceLines) {
+    BugCheckerRefactoringTestHelper.newInstance(Refaster.class, getClass())
+        .setArgs("-XepOpt:Refaster:CacheDirectory=" + cacheDirectory)
+        .addInputLines(
+            "A.java",
+            "class A {",
+            "  void m(B b) {",
+            "    boolean b1 = \"foo\".toCharArray().length == 0;",
+            "  }",
+            "}")
+        .addOutputLines(
+            "A.java",
+            "class A {",
+            "  void m(B b) {",
+            "    boolean b1 = \"foo\".isEmpty();",
+            "  }",
+            "}")
+        .addInputLines("B.java", otherSourceLines)
+        .expectUnchanged()
+        .doTest();
+  }
+
+  @Test
+  void patchDirectory(@TempDir Path outputDirectory) throws IOException {
+    /* Diffs are emitted only for source files below the working directory. */
+    String sourcePath = Path.of("A.java").toAbsolutePath().toString();
+    Path patchDirectory = outputDirectory.resolve("diffs");
+    BugCheckerRefactoringTestHelper.newInstance(Refaster.class, getClass())
+        .setArgs("-XepOpt:Refaster:PatchDirectory=" + patchDirectory)
+        .addInputLines(
+            sourcePath,
+            "class A {",
+            "  void m() {",
+            "    boolean b1 = \"foo\".toCharArray().length == 0;",
+            "    boolean b2 = \"bar\".toCharArray().length == 1;",
+            "  }",
+            "}")
+        .addOutputLines(
+            sourcePath,
+            "class A {",
+            "  void m() {",
+            "    boolean b1 = \"foo\".isEmpty();",
+            "    boolean b2 = \"bar\".length() == 1;",
+            "  }",
+            "}")
+        .doTest();
+
+    Path patchFile = outputDirectory.resolve("refaster.patch");
+    PatchSink.merge(patchDirectory, patchFile);
+    assertThat(patchFile)
+        .content(UTF_8)
+        .isEqualTo(
+            """
+            --- a/A.java
+            +++ b/A.java
+            @@ -1,6 +1,6 @@
+             class A {
+               void m() {
+            -    boolean b1 = "foo".toCharArray().length == 0;
+            -    boolean b2 = "bar".toCharArray().length == 1;
+            +    boolean b1 = "foo".isEmpty();
+            +    boolean b2 = "bar".length() == 1;
+               }
+             }
+            """);
+  }
+
+  @Test
+  void profileReport(@TempDir Path outputDirectory) throws IOException {
+    Path report = outputDirectory.resolve("refaster-profile.csv");
+
+    CompilationTestHelper.newInstance(Refaster.class, getClass())
+        .setArgs("-XepOpt:Refaster:ProfileReport=" + report)
+        .matchAllDiagnostics()
+        .expectErrorMessage("StringOfSizeZeroRule", DIAGNOSTIC_STRING_OF_SIZE_ZERO.asPredicate())
+        .addSourceLines(
+            "A.java",
+            "class A {",
+            "  void m() {",
+            "    // BUG: Diagnostic matches: StringOfSizeZeroRule",
+            "    boolean b1 = \"foo\".toCharArray().length == 0;",
+            "  }",
+            "}")
+        .addSourceLines(
+            "B.java",
+            "class B {",
+            "  void m() {",
+            "    boolean b1 = \"foo\".length() == 0;",
+            "  }",
+            "}")
+        .doTest();
+
+    ImmutableList<String> lines = ImmutableList.copyOf(Files.readAllLines(report));
+    assertThat(lines)
+        .first()
+        .isEqualTo("rule,applications,skips,apply_nanos,candidates,matches,rejected_matches");
+    assertThat(lines.stream().skip(1).map(line -> line.split(",", -1)))
+        .extracting(r -> r[0], r -> r[1], r -> r[2], r -> r[4], r -> r[5], r -> r[6])
+        .containsExactlyInAnyOrder(
+            tuple(FOO_RULES + "$StringOfSizeZeroRule", "1", "1", "1", "1", "0"),
+            tuple(FOO_RULES + "$StringOfSizeZeroVerboseRule", "1", "1", "1", "1", "1"),
+            tuple(FOO_RULES + "$StringOfSizeOneRule", "1", "1", "1", "0", "0"),
+            tuple(FOO_RULES + "$ExtraGrouping$StringOfSizeTwoRule", "1", "1", "1", "0", "0"),
+            tuple(FOO_RULES + "$ExtraGrouping$StringOfSizeThreeRule", "1", "1", "1", "0", "0"));
+    assertThat(Files.readAllLines(outputDirectory.resolve("refaster-profile-matchers.csv")))
+        .first()
+        .isEqualTo("matcher,lookups,hits");
+    assertThat(Files.readAllLines(outputDirectory.resolve("refaster-profile-checks.csv")))
+        .startsWith("check,nanos")
+        .anyMatch(line -> line.startsWith("Refaster,"));
+  }
+
+  @Test
+  void profileReportAccumulation(@TempDir Path outputDirectory) throws IOException {
+    Path report = outputDirectory.resolve("refaster-profile.csv");
+
+    for (int i = 0; i < 2; i++) {
+      CompilationTestHelper.newInstance(Refaster.class, getClass())
+          .setArgs(
+              "-XepOpt:Refaster:NamePattern=.*\\$StringOfSizeZeroRule",
+              "-XepOpt:Refaster:ProfileReport=" + report)
+          .matchAllDiagnostics()
+          .expectErrorMessage("StringOfSizeZeroRule", DIAGNOSTIC_STRING_OF_SIZE_ZERO.asPredicate())
+          .addSourceLines(
+              "A.java",
+              "class A {",
+              "  void m() {",
+              "    // BUG: Diagnostic matches: StringOfSizeZeroRule",
+              "    boolean b1 = \"foo\".toCharArray().length == 0;",
+              "  }",
+              "}")
+          .doTest();
+    }
+
+    ImmutableList<String> lines = ImmutableList.copyOf(Files.readAllLines(report));
+    assertThat(lines)
+        .first()
+        .isEqualTo("rule,applications,skips,apply_nanos,candidates,matches,rejected_matches");
+    assertThat(lines.stream().skip(1).map(line -> line.split(",", -1)))
+        .extracting(r -> r[0], r -> r[1], r -> r[2], r -> r[4], r -> r[5], r -> r[6])
+        .containsExactly(tuple(FOO_RULES + "$StringOfSizeZeroRule", "2", "0", "2", "2", "0"));
+  }
+
+  @Test
+  void matchStatistics(@TempDir Path outputDirectory) throws IOException {
+    Path statistics = outputDirectory.resolve("refaster-statistics.csv");
+
+    for (int i = 0; i < 2; i++) {
+      CompilationTestHelper.newInstance(Refaster.class, getClass())
+          .setArgs(
+              "-XepOpt:Refaster:NamePattern=.*\\$StringOfSize(Zero|One)Rule",
+              "-XepOpt:Refaster:MatchStatistics=" + statistics)
+          .matchAllDiagnostics()
+          .expectErrorMessage("StringOfSizeZeroRule", DIAGNOSTIC_STRING_OF_SIZE_ZERO.asPredicate())
+          .addSourceLines(
+              "A.java",
+              "class A {",
+              "  void m() {",
+              "    // BUG: Diagnostic matches: StringOfSizeZeroRule",
+              "    boolean b1 = \"foo\".toCharArray().length == 0;",
+              "  }",
+              "}")
+          .doTest();
+    }
+
+    assertThat(statistics)
+        .content(UTF_8)
+        .isEqualTo(
+            """
+            rule,matches
+            %1$s$StringOfSizeOneRule,0
+            %1$s$StringOfSizeZeroRule,2
+            """
+                .formatted(FOO_RULES));
+  }
+
+  @Test
+  void matchStatisticsWithCacheDirectory() {
+    ErrorProneFlags flags =
+        ErrorProneFlags.fromMap(
+            ImmutableMap.of(
+                "Refaster:MatchStatistics", "statistics.csv", "Refaster:CacheDirectory", "cache"));
+
+    assertThatThrownBy(() -> new Refaster(flags))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage(
+            "Flags 'Refaster:MatchStatistics' and 'Refaster:CacheDirectory' cannot be combined");
+  }
 }
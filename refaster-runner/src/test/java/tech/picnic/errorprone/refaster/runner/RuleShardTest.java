@@ -0,0 +1,82 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparingInt;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteSource;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
+import tech.picnic.errorprone.refaster.RequiredIdentifiers;
+
+final class RuleShardTest {
+  @Test
+  void parse() {
+    assertThat(RuleShard.parse("3/8")).isEqualTo(new RuleShard(3, 8));
+  }
+
+  @ValueSource(strings = {"", "1", "1/", "/2", "a/b", "-1/2", "1/2/3"})
+  @ParameterizedTest
+  void parseMalformed(String specification) {
+    assertThatThrownBy(() -> RuleShard.parse(specification))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage(
+            "Invalid shard '%s'; expected a value of the form '<index>/<count>'", specification);
+  }
+
+  @ValueSource(strings = {"0/2", "3/2", "0/0"})
+  @ParameterizedTest
+  void parseOutOfBounds(String specification) {
+    assertThatThrownBy(() -> RuleShard.parse(specification))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Invalid shard %s; expected 0 < index <= count", specification);
+  }
+
+  @ValueSource(ints = {1, 2, 3, 5, 8})
+  @ParameterizedTest
+  void select(int count) {
+    ImmutableList<LazyCodeTransformer> codeTransformers =
+        CodeTransformers.getAllLazyCodeTransformers();
+
+    ImmutableList<ImmutableList<LazyCodeTransformer>> shards =
+        IntStream.rangeClosed(1, count)
+            .mapToObj(index -> new RuleShard(index, count).select(codeTransformers))
+            .collect(toImmutableList());
+
+    assertThat(shards.stream().flatMap(ImmutableList::stream))
+        .containsExactlyInAnyOrderElementsOf(codeTransformers);
+    assertThat(shards)
+        .allSatisfy(
+            shard ->
+                assertThat(shard).isSortedAccordingTo(comparingInt(codeTransformers::indexOf)));
+  }
+
+  @Test
+  void selectIndependentOfOrderOfRulesWithSameSimpleName() {
+    LazyCodeTransformer first = createCodeTransformer("com.example.a.FooRules$BarRule");
+    LazyCodeTransformer second = createCodeTransformer("com.example.b.FooRules$BarRule");
+    RuleShard shard = new RuleShard(1, 2);
+
+    assertThat(shard.select(ImmutableList.of(first, second)))
+        .containsExactly(first)
+        .isEqualTo(shard.select(ImmutableList.of(second, first)));
+  }
+
+  private static LazyCodeTransformer createCodeTransformer(String name) {
+    return new LazyCodeTransformer(
+        new RefasterRuleBundle.Entry(
+            name,
+            RequiredIdentifiers.NONE,
+            ImmutableSet.of(),
+            HashCode.fromInt(0),
+            ByteSource.wrap("rule".getBytes(UTF_8))));
+  }
+}
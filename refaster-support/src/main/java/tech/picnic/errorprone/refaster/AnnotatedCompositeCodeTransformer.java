@@ -39,11 +39,14 @@ import tech.picnic.errorprone.refaster.annotation.Severity;
  * @param packageName The package in which the wrapped {@link CodeTransformer}s reside.
  * @param transformers The {@link CodeTransformer}s to which to delegate.
  * @param annotations The annotations that are applicable to this {@link CodeTransformer}.
+ * @param requiredIdentifiers The identifiers that must be present in a compilation unit for any of
+ *     the wrapped {@link CodeTransformer}s to match.
  */
 public record AnnotatedCompositeCodeTransformer(
     String packageName,
     ImmutableList<CodeTransformer> transformers,
-    ImmutableClassToInstanceMap<Annotation> annotations)
+    ImmutableClassToInstanceMap<Annotation> annotations,
+    RequiredIdentifiers requiredIdentifiers)
     implements CodeTransformer, Serializable {
   private static final long serialVersionUID = 1L;
   private static final Splitter CLASS_NAME_SPLITTER = Splitter.on('.').limit(2);
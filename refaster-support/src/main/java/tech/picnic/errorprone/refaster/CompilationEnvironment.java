@@ -0,0 +1,341 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparing;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Streams;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Utility class that fingerprints (parts of) the environment of a {@code javac} compilation, such
+ * that results derived from one compilation can be safely reused by another.
+ *
+ * <p>Each method adds its fingerprint to a given {@link Hasher}. If (part of) the requested
+ * information cannot be determined, then a unique value is added instead, such that the resultant
+ * hash does not match that of any other compilation.
+ */
+public final class CompilationEnvironment {
+  // XXX: Entries are never evicted. Consider bounding this map if long-lived compiler processes
+  // observe many distinct file versions.
+  private static final Map<FileVersion, HashCode> FILE_FINGERPRINTS = new ConcurrentHashMap<>();
+
+  private CompilationEnvironment() {}
+
+  /**
+   * Adds the full version of the {@code javac} compiler to the given {@link Hasher}.
+   *
+   * @param hasher The hasher to update.
+   */
+  public static void putCompilerVersion(Hasher hasher) {
+    putString(hasher, JavaCompiler.fullVersion());
+  }
+
+  /**
+   * Adds the names and contents of all files on the given search path of the current compilation
+   * to the given {@link Hasher}.
+   *
+   * <p>Each path entry that is a directory is fingerprinted by all files contained in it. This way
+   * the fingerprint changes if e.g. a dependency is rebuilt at the same location, but not if it is
+   * merely rebuilt with identical output. The compilation's class output directory is the
+   * exception: build tools commonly put it on the class path, while its contents are (re)written by
+   * the compilation itself. Files in this directory that are not rewritten are assumed to derive
+   * from the compilation's source files, which are covered by {@link
+   * #putSourceDependencies(Hasher, Tree, CompilationUnitTree)}.
+   *
+   * @param hasher The hasher to update.
+   * @param context The context of the compilation of interest.
+   * @param location The search path to fingerprint.
+   */
+  @SuppressWarnings("java:S1166" /* An undeterminable search path yields a unique value. */)
+  public static void putSearchPath(Hasher hasher, Context context, StandardLocation location) {
+    putString(hasher, location.getName());
+
+    if (!(context.get(JavaFileManager.class) instanceof StandardJavaFileManager fileManager)) {
+      putUniqueValue(hasher);
+      return;
+    }
+
+    Iterable<? extends Path> paths;
+    try {
+      paths = fileManager.getLocationAsPaths(location);
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      putUniqueValue(hasher);
+      return;
+    }
+
+    if (paths != null) {
+      ImmutableSet<Path> classOutput = getClassOutput(fileManager);
+      for (Path path : paths) {
+        putString(hasher, path.toString());
+        if (!classOutput.contains(path.toAbsolutePath().normalize())) {
+          hasher.putBytes(fingerprintPath(path).asBytes());
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the contents of the source files that declare the classes, methods and fields referenced
+   * by the given tree to the given {@link Hasher}.
+   *
+   * <p>Only source files that are part of the current compilation are considered, except for the
+   * source file of the given compilation unit; referenced classes loaded from a class file are
+   * instead covered by {@link #putSearchPath(Hasher, Context, StandardLocation)}. The location of
+   * the source files is not taken into account. The given tree must have been attributed.
+   *
+   * @param hasher The hasher to update.
+   * @param tree The tree of interest.
+   * @param compilationUnit The compilation unit that contains the tree.
+   */
+  // XXX: Only direct references are considered. So e.g. a change to the initializer of a constant
+  // that is referenced by (the initializer of) a referenced constant goes unnoticed.
+  public static void putSourceDependencies(
+      Hasher hasher, Tree tree, CompilationUnitTree compilationUnit) {
+    Set<JavaFileObject> sourceFiles = new HashSet<>();
+    new TreeScanner<@Nullable Void, @Nullable Void>() {
+      @Override
+      public @Nullable Void visitIdentifier(IdentifierTree node, @Nullable Void unused) {
+        addSourceFile(node);
+        return super.visitIdentifier(node, unused);
+      }
+
+      @Override
+      public @Nullable Void visitMemberSelect(MemberSelectTree node, @Nullable Void unused) {
+        addSourceFile(node);
+        return super.visitMemberSelect(node, unused);
+      }
+
+      private void addSourceFile(Tree reference) {
+        ClassSymbol outermostClass = getOutermostClass(TreeInfo.symbol((JCTree) reference));
+        JavaFileObject sourceFile = outermostClass == null ? null : getSourceFile(outermostClass);
+        if (sourceFile != null) {
+          sourceFiles.add(sourceFile);
+        }
+      }
+    }.scan(tree, null);
+    sourceFiles.remove(compilationUnit.getSourceFile());
+
+    ImmutableList<HashCode> sourceFingerprints =
+        sourceFiles.stream()
+            .map(CompilationEnvironment::fingerprintSourceFile)
+            .sorted(comparing(HashCode::toString))
+            .collect(toImmutableList());
+
+    hasher.putInt(sourceFingerprints.size());
+    for (HashCode sourceFingerprint : sourceFingerprints) {
+      hasher.putBytes(sourceFingerprint.asBytes());
+    }
+  }
+
+  /**
+   * Adds the contents of the archive from which the given class was loaded to the given {@link
+   * Hasher}, such that the fingerprint changes if the associated code changes, even if its version
+   * number does not.
+   *
+   * <p>If the class was not loaded from an archive, then its classpath entry is fingerprinted as
+   * per {@link #putCodeSource(Hasher, Class)} instead.
+   *
+   * @param hasher The hasher to update.
+   * @param clazz The class of interest.
+   */
+  @SuppressWarnings("java:S1166" /* An unidentifiable archive yields a unique value. */)
+  public static void putArchiveContents(Hasher hasher, Class<?> clazz) {
+    Path location = getCodeSourceLocation(clazz);
+    if (location == null || !Files.isRegularFile(location)) {
+      putCodeSource(hasher, clazz);
+      return;
+    }
+
+    try {
+      hasher.putBytes(MoreFiles.asByteSource(location).hash(Hashing.sha256()).asBytes());
+    } catch (IOException e) {
+      putUniqueValue(hasher);
+    }
+  }
+
+  /**
+   * Adds the file names and contents of the classpath entry from which the given class was loaded
+   * to the given {@link Hasher}.
+   *
+   * <p>Unlike {@link #putArchiveContents(Hasher, Class)}, this also supports classes loaded from a
+   * directory.
+   *
+   * @param hasher The hasher to update.
+   * @param clazz The class of interest.
+   */
+  public static void putCodeSource(Hasher hasher, Class<?> clazz) {
+    Path location = getCodeSourceLocation(clazz);
+    if (location == null) {
+      putUniqueValue(hasher);
+    } else {
+      putString(hasher, location.toString());
+      hasher.putBytes(fingerprintPath(location).asBytes());
+    }
+  }
+
+  /**
+   * Fingerprints the given file or directory by the (relative) names and contents of all files it
+   * comprises.
+   *
+   * <p>File contents are hashed only once per JVM for any given combination of file path, size and
+   * modification time, such that long-lived compiler processes need not repeatedly read unmodified
+   * class path entries.
+   *
+   * @param path The file or directory of interest.
+   * @return A non-{@code null} fingerprint; unique if the path cannot be fully inspected.
+   */
+  @VisibleForTesting
+  @SuppressWarnings("java:S1166" /* An unreadable path yields a unique fingerprint. */)
+  static HashCode fingerprintPath(Path path) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    if (!Files.exists(path)) {
+      /* Javac ignores nonexistent path entries, but their later creation should be noticed. */
+      hasher.putBoolean(false);
+      return hasher.hash();
+    }
+
+    try (Stream<Path> files = Files.walk(path)) {
+      for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+        putString(hasher, path.relativize(file).toString());
+        hasher.putBytes(fingerprintFile(file).asBytes());
+      }
+    } catch (IOException | RuntimeException e) {
+      putUniqueValue(hasher);
+    }
+    return hasher.hash();
+  }
+
+  private static HashCode fingerprintFile(Path file) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    FileVersion version =
+        new FileVersion(
+            file.toAbsolutePath().normalize(), attributes.size(), attributes.lastModifiedTime());
+    return FILE_FINGERPRINTS.computeIfAbsent(
+        version,
+        v -> {
+          try {
+            return MoreFiles.asByteSource(v.path()).hash(Hashing.sha256());
+          } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + v.path(), e);
+          }
+        });
+  }
+
+  @SuppressWarnings("java:S1166" /* An unreadable source file yields a unique fingerprint. */)
+  private static HashCode fingerprintSourceFile(JavaFileObject sourceFile) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    try {
+      putString(hasher, sourceFile.getCharContent(/* ignoreEncodingErrors= */ true));
+    } catch (IOException | UnsupportedOperationException e) {
+      putUniqueValue(hasher);
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * Returns the source file from which the given class was entered, if any. Classes loaded from a
+   * class file are excluded: they may refer to a source file that is not available.
+   */
+  private static @Nullable JavaFileObject getSourceFile(ClassSymbol symbol) {
+    JavaFileObject sourceFile = symbol.sourcefile;
+    JavaFileObject classFile = symbol.classfile;
+    return sourceFile != null
+            && sourceFile.getKind() == JavaFileObject.Kind.SOURCE
+            && (classFile == null || classFile.getKind() == JavaFileObject.Kind.SOURCE)
+        ? sourceFile
+        : null;
+  }
+
+  /**
+   * Returns the outermost class enclosing the given symbol, if any. Unlike {@link
+   * Symbol#outermostClass()}, this method also supports synthetic symbols that are not owned by a
+   * package.
+   */
+  private static @Nullable ClassSymbol getOutermostClass(@Nullable Symbol symbol) {
+    ClassSymbol outermostClass = null;
+    for (Symbol owner = symbol; owner != null; owner = owner.owner) {
+      if (owner instanceof ClassSymbol classSymbol) {
+        outermostClass = classSymbol;
+      }
+    }
+    return outermostClass;
+  }
+
+  @SuppressWarnings("java:S1166" /* An unidentifiable code source is reported as such. */)
+  private static @Nullable Path getCodeSourceLocation(Class<?> clazz) {
+    CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+    if (codeSource == null) {
+      return null;
+    }
+
+    try {
+      return Path.of(codeSource.getLocation().toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  @SuppressWarnings("java:S1166" /* An undeterminable output directory is not excluded. */)
+  private static ImmutableSet<Path> getClassOutput(StandardJavaFileManager fileManager) {
+    try {
+      Iterable<? extends Path> paths =
+          fileManager.getLocationAsPaths(StandardLocation.CLASS_OUTPUT);
+      return paths == null
+          ? ImmutableSet.of()
+          : Streams.stream(paths)
+              .map(path -> path.toAbsolutePath().normalize())
+              .collect(toImmutableSet());
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      return ImmutableSet.of();
+    }
+  }
+
+  private static void putString(Hasher hasher, CharSequence value) {
+    hasher.putInt(value.length()).putString(value, UTF_8);
+  }
+
+  private static void putUniqueValue(Hasher hasher) {
+    putString(hasher, UUID.randomUUID().toString());
+  }
+
+  /** A specific version of a file, as identified by its path, size and modification time. */
+  private record FileVersion(Path path, long size, FileTime lastModifiedTime) {}
+}
@@ -0,0 +1,285 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.function.Predicate.not;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.errorprone.CodeTransformer;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * A collection of compiled Refaster rules, stored in a single versioned resource with a table of
+ * contents.
+ *
+ * <p>The table of contents lists the name, {@link RequiredIdentifiers}, required types and source
+ * fingerprint of each rule, as well as the size of its serialized {@link CodeTransformer}. This
+ * enables locating individual rules without deserializing any of the others.
+ *
+ * @param entries The Refaster rules contained in this bundle.
+ */
+public record RefasterRuleBundle(ImmutableList<Entry> entries) {
+  /**
+   * The path of the index of Refaster rule bundles, relative to the root of the classpath entry
+   * holding it.
+   *
+   * <p>The index lists the {@link #resourceName() resource name} of each rule bundle on a separate
+   * line; {@code #} starts a comment. The index resides next to the rule bundles rather than in
+   * {@code META-INF/services}, as it is not a {@link java.util.ServiceLoader} provider-configuration
+   * file. Tools that combine multiple rule JARs into one must concatenate their indices, e.g. using
+   * the Maven Shade Plugin's {@code AppendingTransformer}. Combining rule JARs <em>without</em>
+   * merging their indices causes all but one index to be dropped, and with it the rules contained
+   * in the other JARs.
+   */
+  public static final String INDEX_RESOURCE_NAME = "META-INF/refaster/index";
+
+  private static final String RESOURCE_NAME_PREFIX = "META-INF/refaster/rules-";
+  private static final String RESOURCE_NAME_SUFFIX = ".bundle";
+  private static final int RESOURCE_NAME_HASH_LENGTH = 16;
+  private static final char INDEX_COMMENT_PREFIX = '#';
+
+  /** The bytes {@code RFST}, identifying a Refaster rule bundle. */
+  private static final int MAGIC = 0x52465354;
+
+  private static final int FORMAT_VERSION = 3;
+
+  /**
+   * Reads the resource names listed in a Refaster rule bundle index.
+   *
+   * <p>The input stream is fully consumed, but not closed.
+   *
+   * @param in The input stream to read from.
+   * @return The distinct resource names listed in the index, in order of appearance.
+   * @throws IOException If the input stream cannot be read.
+   * @see #INDEX_RESOURCE_NAME
+   */
+  public static ImmutableSet<String> readIndex(InputStream in) throws IOException {
+    return new String(in.readAllBytes(), UTF_8)
+        .lines()
+        .map(line -> line.substring(0, indexOfComment(line)).strip())
+        .filter(not(String::isEmpty))
+        .collect(toImmutableSet());
+  }
+
+  /**
+   * Writes a Refaster rule bundle index listing the given resource names to the given output
+   * stream.
+   *
+   * <p>The output stream is flushed, but not closed.
+   *
+   * @param resourceNames The resource names of the Refaster rule bundles to be listed.
+   * @param out The output stream to write to.
+   * @throws IOException If the index cannot be written.
+   * @see #INDEX_RESOURCE_NAME
+   */
+  public static void writeIndex(Collection<String> resourceNames, OutputStream out)
+      throws IOException {
+    for (String resourceName : resourceNames) {
+      out.write((resourceName + '\n').getBytes(UTF_8));
+    }
+    out.flush();
+  }
+
+  /**
+   * Reads a {@link RefasterRuleBundle} from the given input stream.
+   *
+   * <p>The input stream is fully consumed, but not closed. The serialized {@link CodeTransformer}s
+   * are not deserialized.
+   *
+   * @param in The input stream to read from.
+   * @return A non-{@code null} {@link RefasterRuleBundle}.
+   * @throws IOException If the input stream cannot be read, or does not contain a Refaster rule
+   *     bundle in a supported format.
+   */
+  public static RefasterRuleBundle read(InputStream in) throws IOException {
+    byte[] content = in.readAllBytes();
+    ByteArrayInputStream contentStream = new ByteArrayInputStream(content);
+    DataInputStream data = new DataInputStream(contentStream);
+
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a Refaster rule bundle");
+    }
+
+    int version = data.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException(
+          "Unsupported Refaster rule bundle format version %s".formatted(version));
+    }
+
+    int entryCount = data.readInt();
+    ImmutableList.Builder<String> names = ImmutableList.builderWithExpectedSize(entryCount);
+    ImmutableList.Builder<RequiredIdentifiers> requiredIdentifiers =
+        ImmutableList.builderWithExpectedSize(entryCount);
+    ImmutableList.Builder<ImmutableSet<String>> requiredTypes =
+        ImmutableList.builderWithExpectedSize(entryCount);
+    ImmutableList.Builder<HashCode> sourceFingerprints =
+        ImmutableList.builderWithExpectedSize(entryCount);
+    int[] sizes = new int[entryCount];
+    for (int i = 0; i < entryCount; i++) {
+      names.add(data.readUTF());
+      requiredIdentifiers.add(readRequiredIdentifiers(data));
+      requiredTypes.add(readStrings(data));
+      sourceFingerprints.add(readHashCode(data));
+      sizes[i] = data.readInt();
+    }
+
+    ImmutableList<String> entryNames = names.build();
+    ImmutableList<RequiredIdentifiers> entryRequiredIdentifiers = requiredIdentifiers.build();
+    ImmutableList<ImmutableSet<String>> entryRequiredTypes = requiredTypes.build();
+    ImmutableList<HashCode> entrySourceFingerprints = sourceFingerprints.build();
+    ByteSource source = ByteSource.wrap(content);
+    long offset = content.length - (long) contentStream.available();
+    ImmutableList.Builder<Entry> entries = ImmutableList.builderWithExpectedSize(entryCount);
+    for (int i = 0; i < entryCount; i++) {
+      entries.add(
+          new Entry(
+              entryNames.get(i),
+              entryRequiredIdentifiers.get(i),
+              entryRequiredTypes.get(i),
+              entrySourceFingerprints.get(i),
+              source.slice(offset, sizes[i])));
+      offset += sizes[i];
+    }
+
+    if (offset != content.length) {
+      throw new IOException("Refaster rule bundle is truncated or contains trailing data");
+    }
+
+    return new RefasterRuleBundle(entries.build());
+  }
+
+  /**
+   * Returns the path at which this {@link RefasterRuleBundle} is stored, relative to the root of
+   * the classpath entry holding it.
+   *
+   * <p>The path is derived from the names of the contained rules. This way bundles from different
+   * JARs do not collide when these JARs are combined, while compiling the same rules always yields
+   * the same path.
+   *
+   * @return A non-{@code null} resource name, to be listed in the {@link #INDEX_RESOURCE_NAME
+   *     index}.
+   */
+  public String resourceName() {
+    Hasher hasher = Hashing.sha256().newHasher();
+    entries().stream()
+        .map(Entry::name)
+        .sorted()
+        .forEach(name -> hasher.putInt(name.length()).putString(name, UTF_8));
+    return RESOURCE_NAME_PREFIX
+        + hasher.hash().toString().substring(0, RESOURCE_NAME_HASH_LENGTH)
+        + RESOURCE_NAME_SUFFIX;
+  }
+
+  /**
+   * Writes this {@link RefasterRuleBundle} to the given output stream.
+   *
+   * <p>The output stream is flushed, but not closed.
+   *
+   * @param out The output stream to write to.
+   * @throws IOException If the bundle cannot be written.
+   */
+  public void write(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeInt(FORMAT_VERSION);
+    data.writeInt(entries().size());
+    for (Entry entry : entries()) {
+      data.writeUTF(entry.name());
+      writeRequiredIdentifiers(entry.requiredIdentifiers(), data);
+      writeStrings(entry.requiredTypes(), data);
+      writeHashCode(entry.sourceFingerprint(), data);
+      data.writeInt(Math.toIntExact(entry.codeTransformer().size()));
+    }
+
+    for (Entry entry : entries()) {
+      entry.codeTransformer().copyTo(data);
+    }
+
+    data.flush();
+  }
+
+  private static int indexOfComment(String line) {
+    int index = line.indexOf(INDEX_COMMENT_PREFIX);
+    return index < 0 ? line.length() : index;
+  }
+
+  private static RequiredIdentifiers readRequiredIdentifiers(DataInputStream data)
+      throws IOException {
+    int clauseCount = data.readInt();
+    ImmutableSet.Builder<ImmutableSet<String>> clauses = ImmutableSet.builder();
+    for (int i = 0; i < clauseCount; i++) {
+      clauses.add(readStrings(data));
+    }
+    return new RequiredIdentifiers(clauses.build());
+  }
+
+  private static void writeRequiredIdentifiers(
+      RequiredIdentifiers requiredIdentifiers, DataOutputStream data) throws IOException {
+    data.writeInt(requiredIdentifiers.clauses().size());
+    for (ImmutableSet<String> clause : requiredIdentifiers.clauses()) {
+      writeStrings(clause, data);
+    }
+  }
+
+  private static ImmutableSet<String> readStrings(DataInputStream data) throws IOException {
+    int count = data.readInt();
+    ImmutableSet.Builder<String> strings = ImmutableSet.builderWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      strings.add(data.readUTF());
+    }
+    return strings.build();
+  }
+
+  private static void writeStrings(ImmutableSet<String> strings, DataOutputStream data)
+      throws IOException {
+    data.writeInt(strings.size());
+    for (String string : strings) {
+      data.writeUTF(string);
+    }
+  }
+
+  private static HashCode readHashCode(DataInputStream data) throws IOException {
+    byte[] bytes = new byte[data.readUnsignedByte()];
+    data.readFully(bytes);
+    if (bytes.length == 0) {
+      throw new IOException("Refaster rule bundle contains an empty fingerprint");
+    }
+    return HashCode.fromBytes(bytes);
+  }
+
+  private static void writeHashCode(HashCode hashCode, DataOutputStream data) throws IOException {
+    byte[] bytes = hashCode.asBytes();
+    data.writeByte(bytes.length);
+    data.write(bytes);
+  }
+
+  /**
+   * A Refaster rule contained in a {@link RefasterRuleBundle}.
+   *
+   * @param name The binary name of the class that defines the Refaster rule.
+   * @param requiredIdentifiers The identifiers that must be present in a compilation unit for the
+   *     Refaster rule to match.
+   * @param requiredTypes The fully qualified names of the types that must be on the classpath for
+   *     the Refaster rule to match.
+   * @param sourceFingerprint A fingerprint of the source code and compilation environment from
+   *     which the Refaster rule was compiled, used to avoid recompiling unchanged rules.
+   * @param codeTransformer The Java-serialized {@link CodeTransformer} representing the rule.
+   */
+  public record Entry(
+      String name,
+      RequiredIdentifiers requiredIdentifiers,
+      ImmutableSet<String> requiredTypes,
+      HashCode sourceFingerprint,
+      ByteSource codeTransformer) {}
+}
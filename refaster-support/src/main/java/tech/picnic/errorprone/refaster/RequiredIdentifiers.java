@@ -0,0 +1,96 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A necessary condition for a Refaster rule to match code in a given compilation unit, expressed in
+ * terms of the identifiers that must occur in said compilation unit.
+ *
+ * <p>The condition is expressed as a conjunction of disjunctions: a compilation unit can only
+ * contain a match if, for each clause, at least one of the clause's identifiers occurs in the
+ * compilation unit. An instance without clauses thus imposes no constraints.
+ *
+ * @param clauses The sets of identifiers of which at least one element must be present.
+ */
+public record RequiredIdentifiers(ImmutableSet<ImmutableSet<String>> clauses)
+    implements Serializable {
+  /** An instance that does not constrain the compilation units that may be matched. */
+  public static final RequiredIdentifiers NONE = new RequiredIdentifiers(ImmutableSet.of());
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Returns an instance that requires the presence of the given identifier.
+   *
+   * @param identifier The identifier that must be present.
+   * @return A non-{@code null} {@link RequiredIdentifiers} instance.
+   */
+  public static RequiredIdentifiers of(String identifier) {
+    return new RequiredIdentifiers(ImmutableSet.of(ImmutableSet.of(identifier)));
+  }
+
+  /**
+   * Returns an instance that is satisfied iff at least one of the given alternatives is satisfied.
+   *
+   * <p>The result is an approximation: it contains a single clause requiring any of the
+   * alternatives' identifiers, unless one of the alternatives is unconstrained.
+   *
+   * @param alternatives The alternatives to be combined.
+   * @return A non-{@code null} {@link RequiredIdentifiers} instance.
+   */
+  public static RequiredIdentifiers anyOf(Collection<RequiredIdentifiers> alternatives) {
+    if (alternatives.size() == 1) {
+      return alternatives.iterator().next();
+    }
+
+    if (alternatives.isEmpty() || alternatives.stream().anyMatch(a -> a.clauses().isEmpty())) {
+      return NONE;
+    }
+
+    return new RequiredIdentifiers(
+        ImmutableSet.of(
+            alternatives.stream()
+                .flatMap(a -> a.clauses().stream())
+                .flatMap(Set::stream)
+                .collect(toImmutableSet())));
+  }
+
+  /**
+   * Returns an instance that is satisfied iff both this instance and the given instance are
+   * satisfied.
+   *
+   * @param other The instance to be combined with this instance.
+   * @return A non-{@code null} {@link RequiredIdentifiers} instance.
+   */
+  public RequiredIdentifiers and(RequiredIdentifiers other) {
+    if (other.clauses().isEmpty()) {
+      return this;
+    }
+
+    if (clauses().isEmpty()) {
+      return other;
+    }
+
+    return new RequiredIdentifiers(
+        ImmutableSet.<ImmutableSet<String>>builder()
+            .addAll(clauses())
+            .addAll(other.clauses())
+            .build());
+  }
+
+  /**
+   * Tells whether the given set of identifiers satisfies all clauses.
+   *
+   * @param identifiers The identifiers present in the compilation unit of interest.
+   * @return {@code false} iff the associated Refaster rule is guaranteed not to match code in the
+   *     compilation unit from which the given identifiers were derived.
+   */
+  public boolean isSatisfiedBy(Set<String> identifiers) {
+    return clauses().stream().allMatch(clause -> clause.stream().anyMatch(identifiers::contains));
+  }
+}
@@ -189,6 +189,10 @@ public final class IsEmpty implements Matcher<ExpressionTree> {
 
   @Override
   public boolean matches(ExpressionTree tree, VisitorState state) {
+    return MatcherResultCache.matches(IsEmpty.class, tree, state, this::isEmpty);
+  }
+
+  private boolean isEmpty(ExpressionTree tree, VisitorState state) {
     return switch (tree) {
       case MethodInvocationTree methodInvocation ->
           EMPTY_INSTANCE_FACTORY.matches(methodInvocation, state)
@@ -37,7 +37,7 @@ public final class IsIdentityOperation implements Matcher<ExpressionTree> {
 
   @Override
   public boolean matches(ExpressionTree tree, VisitorState state) {
-    return DELEGATE.matches(tree, state);
+    return MatcherResultCache.matches(IsIdentityOperation.class, tree, state, DELEGATE);
   }
 
   // XXX: Also support selected block expressions, including ones that perform a vacuous parameter
@@ -0,0 +1,181 @@
+package tech.picnic.errorprone.refaster.matchers;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.matchers.Matcher;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.util.Context;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Utility class that memoizes the results of {@link Matcher}s, such that each type of matcher is
+ * evaluated at most once for any given expression in the compilation unit being analyzed.
+ *
+ * <p>Refaster instantiates a new matcher for each {@code @Matches} and {@code @NotMatches}
+ * evaluation, while many rules consult the same type of matcher for the same expression. Results
+ * are therefore keyed by matcher type, rather than by matcher instance.
+ *
+ * <p>Memoized results are stored in the compiler's {@link Context}, and are discarded as soon as a
+ * result for an expression in another compilation unit is requested.
+ *
+ * <p>For compilations that {@link #collectStatistics(Context) opt in}, the number of cache lookups
+ * and hits is tracked for each matcher type; see {@link #drainStatistics(Context)}. These
+ * statistics are stored in the compiler's {@link Context}, such that concurrent compilations do not
+ * affect each other's statistics.
+ */
+public final class MatcherResultCache {
+  private static final Context.Key<Results> RESULTS_KEY = new Context.Key<>();
+  private static final Context.Key<ConcurrentMap<Class<?>, Counters>> COUNTERS_KEY =
+      new Context.Key<>();
+
+  private MatcherResultCache() {}
+
+  /**
+   * Tells whether the given matcher matches the given expression, evaluating the matcher only if
+   * this was not done before for the current compilation unit.
+   *
+   * @param matcherType The type of matcher under which the result is memoized.
+   * @param tree The expression of interest.
+   * @param state The {@link VisitorState} describing the current compilation unit.
+   * @param matcher The matcher to evaluate; its result must depend only on the given expression.
+   * @return Whether the matcher matches the expression.
+   */
+  static boolean matches(
+      Class<? extends Matcher<?>> matcherType,
+      ExpressionTree tree,
+      VisitorState state,
+      Matcher<ExpressionTree> matcher) {
+    TreePath path = state.getPath();
+    if (path == null) {
+      /* Without a path the current compilation unit is unknown. */
+      return matcher.matches(tree, state);
+    }
+
+    Map<ExpressionTree, Boolean> results =
+        getResults(state.context).get(matcherType, path.getCompilationUnit());
+    Counters counters = getCounters(matcherType, state.context);
+    if (counters != null) {
+      counters.lookups.increment();
+    }
+
+    /*
+     * Note that `Map#computeIfAbsent` is not used here, as matchers may recursively evaluate
+     * themselves against subexpressions.
+     */
+    Boolean result = results.get(tree);
+    if (result != null) {
+      if (counters != null) {
+        counters.hits.increment();
+      }
+      return result;
+    }
+
+    boolean matches = matcher.matches(tree, state);
+    results.put(tree, matches);
+    return matches;
+  }
+
+  /**
+   * Arranges for results memoized using the given {@link Context} to also be shared by all contexts
+   * derived from it, such as the {@code SubContext}s in which Refaster rules are applied.
+   *
+   * <p>Without this, each derived context in which a matcher is first evaluated retains its own
+   * results.
+   *
+   * @param context The context whose memoized results should be shared.
+   */
+  public static void shareResults(Context context) {
+    if (context.get(RESULTS_KEY) == null) {
+      context.put(RESULTS_KEY, new Results());
+    }
+  }
+
+  /**
+   * Arranges for cache statistics to be collected for lookups performed using the given {@link
+   * Context}, or any context derived from it. Invocations after the first are ignored.
+   *
+   * @param context The context of the compilation of interest.
+   */
+  public static void collectStatistics(Context context) {
+    if (context.get(COUNTERS_KEY) == null) {
+      context.put(COUNTERS_KEY, new ConcurrentHashMap<>());
+    }
+  }
+
+  /**
+   * Returns the cache statistics collected for the given {@link Context} since the previous
+   * invocation of this method.
+   *
+   * @param context The context of the compilation of interest.
+   * @return A mapping from the canonical name of each matcher type consulted in the meantime to the
+   *     associated {@link Statistics}; empty if statistics are not {@link
+   *     #collectStatistics(Context) collected} for the given context.
+   */
+  public static ImmutableMap<String, Statistics> drainStatistics(Context context) {
+    ConcurrentMap<Class<?>, Counters> counters = context.get(COUNTERS_KEY);
+    if (counters == null) {
+      return ImmutableMap.of();
+    }
+
+    return counters.entrySet().stream()
+        .map(
+            e ->
+                Map.entry(
+                    e.getKey().getCanonicalName(),
+                    new Statistics(
+                        e.getValue().lookups.sumThenReset(), e.getValue().hits.sumThenReset())))
+        .filter(e -> e.getValue().lookups() > 0)
+        .collect(toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+  }
+
+  private static Results getResults(Context context) {
+    Results results = context.get(RESULTS_KEY);
+    if (results == null) {
+      results = new Results();
+      context.put(RESULTS_KEY, results);
+    }
+    return results;
+  }
+
+  private static @Nullable Counters getCounters(Class<?> matcherType, Context context) {
+    ConcurrentMap<Class<?>, Counters> counters = context.get(COUNTERS_KEY);
+    return counters == null ? null : counters.computeIfAbsent(matcherType, t -> new Counters());
+  }
+
+  /**
+   * Cache statistics for a single type of matcher.
+   *
+   * @param lookups The number of times a result was requested.
+   * @param hits The number of times a memoized result was returned.
+   */
+  public record Statistics(long lookups, long hits) {}
+
+  /** The matcher results memoized for a single compilation unit. */
+  private static final class Results {
+    private final ConcurrentMap<Class<?>, ConcurrentMap<ExpressionTree, Boolean>> results =
+        new ConcurrentHashMap<>();
+    private @Nullable CompilationUnitTree compilationUnit;
+
+    synchronized ConcurrentMap<ExpressionTree, Boolean> get(
+        Class<?> matcherType, CompilationUnitTree currentCompilationUnit) {
+      if (currentCompilationUnit != compilationUnit) {
+        results.clear();
+        compilationUnit = currentCompilationUnit;
+      }
+      return results.computeIfAbsent(matcherType, t -> new ConcurrentHashMap<>());
+    }
+  }
+
+  private static final class Counters {
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+  }
+}
@@ -23,7 +23,8 @@ public final class RequiresComputation implements Matcher<ExpressionTree> {
 
   @Override
   public boolean matches(ExpressionTree expressionTree, VisitorState state) {
-    return matches(expressionTree);
+    return MatcherResultCache.matches(
+        RequiresComputation.class, expressionTree, state, (tree, s) -> matches(tree));
   }
 
   // XXX: Some `BinaryTree`s may represent what could be considered "trivial computations".
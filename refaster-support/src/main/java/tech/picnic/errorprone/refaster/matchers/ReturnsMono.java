@@ -59,6 +59,10 @@ public final class ReturnsMono implements Matcher<ExpressionTree> {
 
   @Override
   public boolean matches(ExpressionTree tree, VisitorState state) {
+    return MatcherResultCache.matches(ReturnsMono.class, tree, state, ReturnsMono::returnsMono);
+  }
+
+  private static boolean returnsMono(ExpressionTree tree, VisitorState state) {
     if (!IS_FUNCTION_TREE.matches(tree, state)) {
       return false;
     }
@@ -23,6 +23,11 @@ public final class ThrowsCheckedException implements Matcher<ExpressionTree> {
 
   @Override
   public boolean matches(ExpressionTree tree, VisitorState state) {
+    return MatcherResultCache.matches(
+        ThrowsCheckedException.class, tree, state, ThrowsCheckedException::throwsCheckedException);
+  }
+
+  private static boolean throwsCheckedException(ExpressionTree tree, VisitorState state) {
     return switch (tree) {
       case LambdaExpressionTree lambdaExpression -> throwsCheckedException(lambdaExpression, state);
       case MemberReferenceTree memberReference -> throwsCheckedException(memberReference, state);
@@ -123,7 +123,8 @@ final class AnnotatedCompositeCodeTransformerTest {
             ImmutableList.of(
                 delegateCodeTransformer(
                     delegateAnnotations, context, refasterDescription(ruleName))),
-            indexAnnotations(compositeAnnotations));
+            indexAnnotations(compositeAnnotations),
+            RequiredIdentifiers.NONE);
 
     List<Description> collected = new ArrayList<>();
     codeTransformer.apply(DUMMY_PATH, context, collected::add);
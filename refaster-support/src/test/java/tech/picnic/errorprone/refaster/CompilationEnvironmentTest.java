@@ -0,0 +1,64 @@
+package tech.picnic.errorprone.refaster;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class CompilationEnvironmentTest {
+  private static final FileTime MODIFICATION_TIME = FileTime.from(Instant.EPOCH);
+
+  @Test
+  void fingerprintPathOfFile(@TempDir Path directory) throws IOException {
+    Path file = write(directory.resolve("file.jar"), "foo");
+    HashCode fingerprint = CompilationEnvironment.fingerprintPath(file);
+
+    assertThat(CompilationEnvironment.fingerprintPath(file)).isEqualTo(fingerprint);
+    assertThat(
+            CompilationEnvironment.fingerprintPath(
+                Files.setLastModifiedTime(write(file, "bar"), FileTime.fromMillis(1))))
+        .isNotEqualTo(fingerprint);
+    assertThat(
+            CompilationEnvironment.fingerprintPath(
+                Files.setLastModifiedTime(write(file, "foo"), FileTime.fromMillis(2))))
+        .isEqualTo(fingerprint);
+  }
+
+  @Test
+  void fingerprintPathOfDirectory(@TempDir Path directory) throws IOException {
+    write(directory.resolve("A.class"), "foo");
+    HashCode fingerprint = CompilationEnvironment.fingerprintPath(directory);
+
+    assertThat(CompilationEnvironment.fingerprintPath(directory)).isEqualTo(fingerprint);
+
+    Files.createDirectories(directory.resolve("pkg"));
+    Path nestedFile = write(directory.resolve("pkg/B.class"), "bar");
+    HashCode extendedFingerprint = CompilationEnvironment.fingerprintPath(directory);
+    assertThat(extendedFingerprint).isNotEqualTo(fingerprint);
+
+    write(nestedFile, "quux");
+    assertThat(CompilationEnvironment.fingerprintPath(directory))
+        .isNotEqualTo(fingerprint)
+        .isNotEqualTo(extendedFingerprint);
+  }
+
+  @Test
+  void fingerprintPathOfAbsentPath(@TempDir Path directory) throws IOException {
+    Path file = directory.resolve("absent.jar");
+    HashCode fingerprint = CompilationEnvironment.fingerprintPath(file);
+
+    assertThat(CompilationEnvironment.fingerprintPath(file)).isEqualTo(fingerprint);
+    assertThat(CompilationEnvironment.fingerprintPath(write(file, ""))).isNotEqualTo(fingerprint);
+  }
+
+  private static Path write(Path file, String content) throws IOException {
+    return Files.setLastModifiedTime(Files.writeString(file, content, UTF_8), MODIFICATION_TIME);
+  }
+}
@@ -0,0 +1,125 @@
+package tech.picnic.errorprone.refaster;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+final class RefasterRuleBundleTest {
+  private static final RefasterRuleBundle BUNDLE =
+      new RefasterRuleBundle(
+          ImmutableList.of(
+              new RefasterRuleBundle.Entry(
+                  "com.example.FooRules$Bar",
+                  RequiredIdentifiers.of("bar").and(RequiredIdentifiers.of("baz")),
+                  ImmutableSet.of("com.example.Bar", "com.example.Baz"),
+                  HashCode.fromString("0123456789abcdef"),
+                  ByteSource.wrap("bar".getBytes(UTF_8))),
+              new RefasterRuleBundle.Entry(
+                  "FooRules$Qux",
+                  RequiredIdentifiers.NONE,
+                  ImmutableSet.of(),
+                  HashCode.fromInt(42),
+                  ByteSource.wrap(new byte[0]))));
+
+  @Test
+  void roundTrip() throws IOException {
+    RefasterRuleBundle bundle = RefasterRuleBundle.read(new ByteArrayInputStream(write(BUNDLE)));
+
+    assertThat(bundle.entries())
+        .satisfiesExactly(
+            entry -> {
+              assertThat(entry.name()).isEqualTo("com.example.FooRules$Bar");
+              assertThat(entry.requiredIdentifiers())
+                  .isEqualTo(RequiredIdentifiers.of("bar").and(RequiredIdentifiers.of("baz")));
+              assertThat(entry.requiredTypes())
+                  .containsExactly("com.example.Bar", "com.example.Baz");
+              assertThat(entry.sourceFingerprint())
+                  .isEqualTo(HashCode.fromString("0123456789abcdef"));
+              assertThat(entry.codeTransformer().asCharSource(UTF_8).read()).isEqualTo("bar");
+            },
+            entry -> {
+              assertThat(entry.name()).isEqualTo("FooRules$Qux");
+              assertThat(entry.requiredIdentifiers()).isEqualTo(RequiredIdentifiers.NONE);
+              assertThat(entry.requiredTypes()).isEmpty();
+              assertThat(entry.sourceFingerprint()).isEqualTo(HashCode.fromInt(42));
+              assertThat(entry.codeTransformer().isEmpty()).isTrue();
+            });
+  }
+
+  @Test
+  void readInvalidMagic() {
+    byte[] content = write(BUNDLE);
+    content[0] = 0;
+
+    assertThatThrownBy(() -> RefasterRuleBundle.read(new ByteArrayInputStream(content)))
+        .isInstanceOf(IOException.class)
+        .hasMessage("Not a Refaster rule bundle");
+  }
+
+  @Test
+  void readUnsupportedVersion() {
+    byte[] content = write(BUNDLE);
+    content[7] = 0;
+
+    assertThatThrownBy(() -> RefasterRuleBundle.read(new ByteArrayInputStream(content)))
+        .isInstanceOf(IOException.class)
+        .hasMessage("Unsupported Refaster rule bundle format version 0");
+  }
+
+  @Test
+  void readTruncated() {
+    byte[] content = write(BUNDLE);
+
+    assertThatThrownBy(
+            () ->
+                RefasterRuleBundle.read(
+                    new ByteArrayInputStream(Arrays.copyOf(content, content.length - 1))))
+        .isInstanceOf(IOException.class)
+        .hasMessage("Refaster rule bundle is truncated or contains trailing data");
+  }
+
+  @Test
+  void resourceName() {
+    assertThat(BUNDLE.resourceName())
+        .matches("META-INF/refaster/rules-[0-9a-f]{16}\\.bundle")
+        .isEqualTo(new RefasterRuleBundle(BUNDLE.entries().reverse()).resourceName())
+        .isNotEqualTo(new RefasterRuleBundle(BUNDLE.entries().subList(0, 1)).resourceName());
+  }
+
+  @Test
+  void indexRoundTrip() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RefasterRuleBundle.writeIndex(ImmutableList.of("foo.bundle", "bar.bundle"), out);
+
+    assertThat(RefasterRuleBundle.readIndex(new ByteArrayInputStream(out.toByteArray())))
+        .containsExactly("foo.bundle", "bar.bundle");
+  }
+
+  @Test
+  void readMergedIndex() throws IOException {
+    String index = "# Comment\nfoo.bundle\n\n  bar.bundle # Comment\nfoo.bundle\n";
+
+    assertThat(RefasterRuleBundle.readIndex(new ByteArrayInputStream(index.getBytes(UTF_8))))
+        .containsExactly("foo.bundle", "bar.bundle");
+  }
+
+  private static byte[] write(RefasterRuleBundle bundle) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      bundle.write(out);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to write Refaster rule bundle", e);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,58 @@
+package tech.picnic.errorprone.refaster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+final class RequiredIdentifiersTest {
+  private static final RequiredIdentifiers FOO = RequiredIdentifiers.of("foo");
+  private static final RequiredIdentifiers BAR = RequiredIdentifiers.of("bar");
+  private static final RequiredIdentifiers BAZ = RequiredIdentifiers.of("baz");
+
+  @Test
+  void and() {
+    assertThat(FOO.and(RequiredIdentifiers.NONE)).isEqualTo(FOO);
+    assertThat(RequiredIdentifiers.NONE.and(FOO)).isEqualTo(FOO);
+    assertThat(FOO.and(BAR).clauses())
+        .containsExactly(ImmutableSet.of("foo"), ImmutableSet.of("bar"));
+  }
+
+  @Test
+  void anyOf() {
+    assertThat(RequiredIdentifiers.anyOf(ImmutableList.of())).isEqualTo(RequiredIdentifiers.NONE);
+    assertThat(RequiredIdentifiers.anyOf(ImmutableList.of(FOO.and(BAR)))).isEqualTo(FOO.and(BAR));
+    assertThat(RequiredIdentifiers.anyOf(ImmutableList.of(FOO, RequiredIdentifiers.NONE)))
+        .isEqualTo(RequiredIdentifiers.NONE);
+    assertThat(RequiredIdentifiers.anyOf(ImmutableList.of(FOO.and(BAR), BAZ)).clauses())
+        .containsExactly(ImmutableSet.of("foo", "bar", "baz"));
+  }
+
+  private static Stream<Arguments> isSatisfiedByTestCases() {
+    /* { requiredIdentifiers, identifiers, expected } */
+    return Stream.of(
+        arguments(RequiredIdentifiers.NONE, ImmutableSet.of(), true),
+        arguments(RequiredIdentifiers.NONE, ImmutableSet.of("foo"), true),
+        arguments(FOO, ImmutableSet.of(), false),
+        arguments(FOO, ImmutableSet.of("bar"), false),
+        arguments(FOO, ImmutableSet.of("foo", "bar"), true),
+        arguments(FOO.and(BAR), ImmutableSet.of("foo"), false),
+        arguments(FOO.and(BAR), ImmutableSet.of("foo", "bar"), true),
+        arguments(RequiredIdentifiers.anyOf(ImmutableList.of(FOO, BAR)), ImmutableSet.of(), false),
+        arguments(
+            RequiredIdentifiers.anyOf(ImmutableList.of(FOO, BAR)), ImmutableSet.of("bar"), true));
+  }
+
+  @MethodSource("isSatisfiedByTestCases")
+  @ParameterizedTest
+  void isSatisfiedBy(
+      RequiredIdentifiers requiredIdentifiers, ImmutableSet<String> identifiers, boolean expected) {
+    assertThat(requiredIdentifiers.isSatisfiedBy(identifiers)).isEqualTo(expected);
+  }
+}
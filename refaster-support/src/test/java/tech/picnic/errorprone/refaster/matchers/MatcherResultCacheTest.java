@@ -0,0 +1,97 @@
+package tech.picnic.errorprone.refaster.matchers;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
+
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.CompilationTestHelper;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.matchers.Matcher;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.MethodInvocationTree;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import tech.picnic.errorprone.refaster.matchers.MatcherResultCache.Statistics;
+
+final class MatcherResultCacheTest {
+  @Test
+  void matches() {
+    CompilationTestHelper.newInstance(MatcherResultCacheTestChecker.class, getClass())
+        .addSourceLines(
+            "A.java",
+            "class A {",
+            "  void m() {",
+            "    // BUG: Diagnostic contains: Evaluations: 1, lookups: 0, hits: 0",
+            "    toString();",
+            "    // BUG: Diagnostic contains: Evaluations: 2, lookups: 0, hits: 0",
+            "    toString();",
+            "  }",
+            "}")
+        .addSourceLines(
+            "B.java",
+            "class B {",
+            "  void m() {",
+            "    // BUG: Diagnostic contains: Evaluations: 3, lookups: 0, hits: 0",
+            "    toString();",
+            "    // BUG: Diagnostic contains: Evaluations: 4, lookups: 2, hits: 1",
+            "    hashCode();",
+            "    // BUG: Diagnostic contains: Evaluations: 5, lookups: 2, hits: 1",
+            "    toString();",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  /**
+   * A {@link BugChecker} that flags each method invocation with the number of times {@link
+   * CountingMatcher} was evaluated, after consulting {@link MatcherResultCache} twice, along with
+   * the cache statistics collected in the meantime. Statistics are collected from the first {@code
+   * hashCode()} invocation onwards.
+   */
+  @BugPattern(
+      summary = "Interacts with `MatcherResultCache` for testing purposes",
+      severity = ERROR)
+  public static final class MatcherResultCacheTestChecker extends BugChecker
+      implements MethodInvocationTreeMatcher {
+    private static final long serialVersionUID = 1L;
+
+    private final CountingMatcher matcher = new CountingMatcher();
+
+    /** Instantiates a new {@link MatcherResultCacheTestChecker} instance. */
+    public MatcherResultCacheTestChecker() {}
+
+    @Override
+    public Description matchMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+      if (ASTHelpers.getSymbol(tree).getSimpleName().contentEquals("hashCode")) {
+        MatcherResultCache.collectStatistics(state.context);
+      }
+
+      MatcherResultCache.matches(CountingMatcher.class, tree, state, matcher);
+      MatcherResultCache.matches(CountingMatcher.class, tree, state, matcher);
+      Statistics statistics =
+          MatcherResultCache.drainStatistics(state.context)
+              .getOrDefault(CountingMatcher.class.getCanonicalName(), new Statistics(0, 0));
+      return buildDescription(tree)
+          .setMessage(
+              "Evaluations: %s, lookups: %s, hits: %s"
+                  .formatted(matcher.evaluations.get(), statistics.lookups(), statistics.hits()))
+          .build();
+    }
+  }
+
+  /** A {@link Matcher} that matches any expression, and counts its evaluations. */
+  private static final class CountingMatcher implements Matcher<ExpressionTree> {
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicInteger evaluations = new AtomicInteger();
+
+    @Override
+    public boolean matches(ExpressionTree tree, VisitorState state) {
+      evaluations.incrementAndGet();
+      return true;
+    }
+  }
+}
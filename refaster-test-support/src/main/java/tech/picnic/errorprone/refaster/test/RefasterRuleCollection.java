@@ -1,19 +1,23 @@
 package tech.picnic.errorprone.refaster.test;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableListMultimap.toImmutableListMultimap;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
-import static com.google.common.collect.ImmutableSortedSet.toImmutableSortedSet;
+import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
 import static com.google.errorprone.BugPattern.LinkType.NONE;
 import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.Comparator.naturalOrder;
 import static tech.picnic.errorprone.refaster.runner.Refaster.INCLUDED_RULES_PATTERN_FLAG;
 
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableRangeMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Range;
@@ -21,6 +25,7 @@ import com.google.common.collect.Sets;
 import com.google.common.io.Resources;
 import com.google.errorprone.BugCheckerRefactoringTestHelper;
 import com.google.errorprone.BugPattern;
+import com.google.errorprone.CodeTransformer;
 import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.SubContext;
 import com.google.errorprone.VisitorState;
@@ -30,6 +35,7 @@ import com.google.errorprone.fixes.ErrorProneEndPosTable;
 import com.google.errorprone.fixes.Replacement;
 import com.google.errorprone.fixes.SuggestedFix;
 import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RefasterInternals;
 import com.google.errorprone.util.ASTHelpers;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
@@ -46,9 +52,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
-import javax.inject.Inject;
+import java.util.stream.Stream;
 import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.AnnotatedCompositeCodeTransformer;
 import tech.picnic.errorprone.refaster.runner.CodeTransformers;
 import tech.picnic.errorprone.refaster.runner.Refaster;
 
@@ -61,57 +69,66 @@ import tech.picnic.errorprone.refaster.runner.Refaster;
  * rule collection class. Their names are derived from the rule collection class by suffixing {@code
  * TestInput.java} and {@code TestOutput.java}, respectively. Each test method's name must be
  * derived from the rule that modifies said method by prefixing {@code test}.
+ *
+ * <p>By default this check only validates that one {@code Refaster.anyOf} branch in one {@code
+ * BeforeTemplate} method of each rule is covered by a test. Use {@link #validateCoverage(Class)}, or
+ * set the {@value #VALIDATE_COVERAGE_PROPERTY} system property to {@code true}, to also verify that
+ * each alternative is exercised by the associated test method. Likewise, use
+ * {@link #validateIndexedApplication(Class)} to also verify that the {@link Refaster} checker's
+ * indexed rule application reports the same matches as applying each rule separately.
  */
-// XXX: This check currently only validates that one `Refaster.anyOf` branch in one
-// `@BeforeTemplate` method is covered by a test. Review how we can make sure that _all_
-// `@BeforeTemplate` methods and `Refaster.anyOf` branches are covered.
 // XXX: Look into replacing this setup with another that allows test cases to be co-located
 // with/nested within the rules. This way any rule change only requires modifications in a single
 // place, rather than in three.
 @BugPattern(summary = "Exercises a Refaster rule collection", linkType = NONE, severity = ERROR)
 @SuppressWarnings("java:S2160" /* Super class equality definition suffices. */)
 public final class RefasterRuleCollection extends BugChecker implements CompilationUnitTreeMatcher {
+  /**
+   * The name of the system property that, if set to {@code true}, causes {@link #validate(Class)}
+   * to also perform the validations of {@link #validateCoverage(Class)}.
+   *
+   * <p>This allows alternative coverage to be verified for existing test suites without modifying
+   * them, e.g. using {@code mvn test -Drefaster.validateCoverage}.
+   */
+  public static final String VALIDATE_COVERAGE_PROPERTY = "refaster.validateCoverage";
+
   private static final long serialVersionUID = 1L;
-  private static final String RULE_COLLECTION_FLAG = "RefasterRuleCollection:RuleCollection";
   private static final String TEST_METHOD_NAME_PREFIX = "test";
+  private static final Supplier<ImmutableSetMultimap<String, String>> RULES_BY_COLLECTION =
+      Suppliers.memoize(RefasterRuleCollection::indexRulesByCollection);
 
   private final String ruleCollectionUnderTest;
+  private final ImmutableSet<Verification> verifications;
   private final ImmutableSortedSet<String> rulesUnderTest;
   private final Refaster delegate;
 
-  /**
-   * Instantiates a {@link RefasterRuleCollection} instance.
-   *
-   * @param flags Any provided command line flags.
-   */
-  @Inject
-  RefasterRuleCollection(ErrorProneFlags flags) {
-    ruleCollectionUnderTest = getRuleCollectionUnderTest(flags);
-    delegate = createRefasterChecker(ruleCollectionUnderTest);
-    rulesUnderTest = getRulesUnderTest(ruleCollectionUnderTest);
-  }
-
-  private static String getRuleCollectionUnderTest(ErrorProneFlags flags) {
-    return flags
-        .get(RULE_COLLECTION_FLAG)
-        .orElseThrow(
-            () ->
-                new IllegalStateException(
-                    "Error Prone flag `%s` must be specified".formatted(RULE_COLLECTION_FLAG)));
+  private RefasterRuleCollection(
+      String ruleCollectionUnderTest, ImmutableSet<Verification> verifications) {
+    this.ruleCollectionUnderTest = ruleCollectionUnderTest;
+    this.verifications = verifications;
+    this.delegate = createRefasterChecker(ruleCollectionUnderTest);
+    this.rulesUnderTest =
+        ImmutableSortedSet.copyOf(RULES_BY_COLLECTION.get().get(ruleCollectionUnderTest));
   }
 
   private static Refaster createRefasterChecker(String ruleCollectionUnderTest) {
     return new Refaster(
         ErrorProneFlags.fromMap(
             ImmutableMap.of(
-                INCLUDED_RULES_PATTERN_FLAG, Pattern.quote(ruleCollectionUnderTest) + ".*")));
+                INCLUDED_RULES_PATTERN_FLAG, Pattern.quote(ruleCollectionUnderTest + '$') + ".*")));
   }
 
-  private static ImmutableSortedSet<String> getRulesUnderTest(String ruleCollectionUnderTest) {
+  /**
+   * Groups the names of all Refaster rules on the classpath by the rule collection that defines
+   * them. This index is computed once and shared by all tests.
+   */
+  private static ImmutableSetMultimap<String, String> indexRulesByCollection() {
     return CodeTransformers.getAllCodeTransformers().keySet().stream()
-        .filter(k -> k.startsWith(ruleCollectionUnderTest))
-        .map(k -> k.replace(ruleCollectionUnderTest + '$', ""))
-        .collect(toImmutableSortedSet(naturalOrder()));
+        .filter(name -> name.indexOf('$') >= 0)
+        .collect(
+            toImmutableSetMultimap(
+                name -> name.substring(0, name.indexOf('$')),
+                name -> name.substring(name.indexOf('$') + 1)));
   }
 
   /**
@@ -121,20 +138,65 @@ public final class RefasterRuleCollection extends BugChecker implements Compilat
    * <p>Note that a passing test does not guarantee full coverage: this test does not ascertain that
    * all {@code com.google.errorprone.refaster.Refaster#anyOf} branches are tested. Likewise for
    * {@code com.google.errorprone.refaster.annotation.BeforeTemplate} methods in case there are
-   * multiple.
+   * multiple. See {@link #validateCoverage(Class)}. Said validation is also performed if the {@value
+   * #VALIDATE_COVERAGE_PROPERTY} system property is set to {@code true}.
+   *
+   * <p>This method may be invoked concurrently for different rule collections: the Refaster rules
+   * on the classpath are loaded only once, and each invocation uses a separate compiler instance.
    *
    * @param clazz The Refaster rule collection under test.
    */
   public static void validate(Class<?> clazz) {
+    validate(
+        clazz,
+        Boolean.getBoolean(VALIDATE_COVERAGE_PROPERTY)
+            ? ImmutableSet.of(Verification.ALTERNATIVE_COVERAGE)
+            : ImmutableSet.of());
+  }
+
+  /**
+   * Performs the same validations as {@link #validate(Class)}, and additionally verifies that each
+   * alternative of each Refaster rule in the given collection class is exercised by the rule's test
+   * method.
+   *
+   * <p>Each {@code com.google.errorprone.refaster.annotation.BeforeTemplate} method constitutes an
+   * alternative, unless its expression is a {@code com.google.errorprone.refaster.Refaster#anyOf}
+   * invocation; in that case each branch of said invocation is an alternative. Alternatives that do
+   * not match any code in the associated test method are reported.
+   *
+   * @param clazz The Refaster rule collection under test.
+   */
+  public static void validateCoverage(Class<?> clazz) {
+    validate(clazz, ImmutableSet.of(Verification.ALTERNATIVE_COVERAGE));
+  }
+
+  /**
+   * Performs the same validations as {@link #validate(Class)}, and additionally verifies that the
+   * single-pass, indexed rule application performed by the {@link Refaster} checker reports the
+   * same matches as regular {@link CodeTransformer#apply} application of each Refaster rule in the
+   * given collection class.
+   *
+   * <p>Indexed rule application relies on Error Prone internals; this validation guards against
+   * divergences caused by changes to those internals. As it applies each rule twice more, it is
+   * not performed by {@link #validate(Class)}; exercising a representative selection of rule
+   * collections suffices.
+   *
+   * @param clazz The Refaster rule collection under test.
+   */
+  public static void validateIndexedApplication(Class<?> clazz) {
+    validate(clazz, ImmutableSet.of(Verification.INDEXED_APPLICATION));
+  }
+
+  private static void validate(Class<?> clazz, ImmutableSet<Verification> verifications) {
     String className = clazz.getSimpleName();
     String inputResource = className + "TestInput.java";
     String outputResource = className + "TestOutput.java";
 
-    BugCheckerRefactoringTestHelper.newInstance(RefasterRuleCollection.class, clazz)
+    BugCheckerRefactoringTestHelper.newInstance(
+            new RefasterRuleCollection(className, verifications), clazz)
         .setArgs(
             "--add-exports=jdk.compiler/com.sun.tools.javac.tree=ALL-UNNAMED",
-            "--add-exports=jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED",
-            "-XepOpt:" + RULE_COLLECTION_FLAG + '=' + className)
+            "--add-exports=jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED")
         .addInputLines(inputResource, loadResource(clazz, inputResource))
         .addOutputLines(outputResource, loadResource(clazz, outputResource))
         .doTest();
@@ -156,6 +218,12 @@ public final class RefasterRuleCollection extends BugChecker implements Compilat
     matches.forEach(state::reportMatch);
     reportMissingMatches(tree, indexedMatches, state);
     reportUnexpectedMatches(tree, indexedMatches, state);
+    if (verifications.contains(Verification.INDEXED_APPLICATION)) {
+      reportIndexedApplicationDiscrepancies(tree, state);
+    }
+    if (verifications.contains(Verification.ALTERNATIVE_COVERAGE)) {
+      reportUncoveredAlternatives(tree, state);
+    }
 
     return Description.NO_MATCH;
   }
@@ -226,6 +294,134 @@ public final class RefasterRuleCollection extends BugChecker implements Compilat
     unexpectedMatchReporter.scan(tree.getTypeDecls(), state);
   }
 
+  /**
+   * Reports the rules for which the single-pass, indexed rule application performed by the {@link
+   * Refaster} checker reports different matches than regular {@link CodeTransformer#apply} rule
+   * application.
+   */
+  private void reportIndexedApplicationDiscrepancies(CompilationUnitTree tree, VisitorState state) {
+    ErrorProneEndPosTable endPositions = ErrorProneEndPosTable.create(tree);
+    ImmutableSet<String> divergentRules =
+        rulesUnderTest.stream()
+            .filter(rule -> !hasEquivalentIndexedApplication(rule, endPositions, state))
+            .collect(toImmutableSet());
+    if (!divergentRules.isEmpty()) {
+      reportViolations(
+          tree,
+          "Indexed application of the following rule(s) differs from regular application",
+          divergentRules,
+          state);
+    }
+  }
+
+  private boolean hasEquivalentIndexedApplication(
+      String rule, ErrorProneEndPosTable endPositions, VisitorState state) {
+    for (CodeTransformer codeTransformer :
+        CodeTransformers.loadCodeTransformers(ruleCollectionUnderTest + '$' + rule)) {
+      List<Description> matches = new ArrayList<>();
+      codeTransformer.apply(state.getPath(), new SubContext(state.context), matches::add);
+      ImmutableList<Description> indexedMatches =
+          Iterables.getOnlyElement(
+                  RefasterInternals.applyIndexed(
+                      ImmutableList.of(RefasterInternals.index(codeTransformer)),
+                      state.getPath(),
+                      new SubContext(state.context),
+                      /* timed= */ false))
+              .descriptions();
+      if (!summarize(matches, endPositions).equals(summarize(indexedMatches, endPositions))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static ImmutableList<String> summarize(
+      List<Description> matches, ErrorProneEndPosTable endPositions) {
+    return matches.stream()
+        .map(
+            description ->
+                "%s@%s: %s %s"
+                    .formatted(
+                        description.checkName,
+                        description.position.getStartPosition(),
+                        description.getRawMessage(),
+                        description.fixes.stream()
+                            .map(fix -> fix.getReplacements(endPositions))
+                            .toList()))
+        .collect(toImmutableList());
+  }
+
+  private void reportUncoveredAlternatives(CompilationUnitTree tree, VisitorState state) {
+    ImmutableMap<String, MethodTree> testMethods = getTestMethodsByRuleName(tree);
+    for (String rule : rulesUnderTest) {
+      MethodTree testMethod = testMethods.get(rule);
+      if (testMethod == null) {
+        /* The absence of a test method is reported separately. */
+        continue;
+      }
+
+      ImmutableMap<String, CodeTransformer> alternatives = getAlternatives(rule);
+      if (alternatives.size() < 2) {
+        /* Rules with a single alternative are fully covered by the regular validation. */
+        continue;
+      }
+
+      Range<Integer> testMethodRange =
+          Range.closedOpen(
+              ASTHelpers.getStartPosition(testMethod), state.getEndPosition(testMethod));
+      ImmutableSet<String> uncoveredAlternatives =
+          alternatives.entrySet().stream()
+              .filter(e -> !hasMatchInRange(e.getValue(), testMethodRange, state))
+              .map(Map.Entry::getKey)
+              .collect(toImmutableSet());
+      if (!uncoveredAlternatives.isEmpty()) {
+        reportViolations(
+            testMethod,
+            "The following alternatives of rule `%s` are not exercised by method `%s`"
+                .formatted(rule, testMethod.getName()),
+            uncoveredAlternatives,
+            state);
+      }
+    }
+  }
+
+  private static ImmutableMap<String, MethodTree> getTestMethodsByRuleName(
+      CompilationUnitTree tree) {
+    return tree.getTypeDecls().stream()
+        .filter(ClassTree.class::isInstance)
+        .flatMap(typeDeclaration -> ((ClassTree) typeDeclaration).getMembers().stream())
+        .filter(MethodTree.class::isInstance)
+        .map(MethodTree.class::cast)
+        .filter(method -> method.getName().toString().startsWith(TEST_METHOD_NAME_PREFIX))
+        .collect(
+            toImmutableMap(
+                method -> method.getName().toString().substring(TEST_METHOD_NAME_PREFIX.length()),
+                method -> method,
+                (first, second) -> first));
+  }
+
+  private ImmutableMap<String, CodeTransformer> getAlternatives(String rule) {
+    ImmutableList<CodeTransformer> ruleTransformers =
+        CodeTransformers.loadCodeTransformers(ruleCollectionUnderTest + '$' + rule).stream()
+            .flatMap(
+                t ->
+                    t instanceof AnnotatedCompositeCodeTransformer composite
+                        ? composite.transformers().stream()
+                        : Stream.of(t))
+            .collect(toImmutableList());
+    return ruleTransformers.size() == 1
+        ? RefasterInternals.decomposeAlternatives(ruleTransformers.get(0))
+        : ImmutableMap.of();
+  }
+
+  private static boolean hasMatchInRange(
+      CodeTransformer codeTransformer, Range<Integer> range, VisitorState state) {
+    List<Description> matches = new ArrayList<>();
+    codeTransformer.apply(state.getPath(), new SubContext(state.context), matches::add);
+    return matches.stream()
+        .anyMatch(description -> range.contains(description.position.getStartPosition()));
+  }
+
   private void reportViolations(
       Tree tree, String message, ImmutableSet<String> violations, VisitorState state) {
     String violationEnumeration = String.join("%n*  - ".formatted(), violations);
@@ -259,6 +455,14 @@ public final class RefasterRuleCollection extends BugChecker implements Compilat
     }
   }
 
+  /** Optional validations, performed in addition to those performed by {@link #validate(Class)}. */
+  private enum Verification {
+    /** Verifies that each alternative of each rule is exercised by the rule's test method. */
+    ALTERNATIVE_COVERAGE,
+    /** Verifies that indexed rule application is equivalent to regular rule application. */
+    INDEXED_APPLICATION
+  }
+
   private class UnexpectedMatchReporter extends TreeScanner<@Nullable Void, VisitorState> {
     private final ImmutableRangeMap<Integer, String> indexedMatches;
 
@@ -1,5 +1,6 @@
 package tech.picnic.errorprone.refaster.test;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -30,4 +31,14 @@ final class RefasterRuleCollectionTest {
   void verifyRefasterRuleCollections(Class<?> clazz) {
     RefasterRuleCollection.validate(clazz);
   }
+
+  @Test
+  void verifyRefasterRuleCollectionCoverage() {
+    RefasterRuleCollection.validateCoverage(UncoveredAlternativeRules.class);
+  }
+
+  @Test
+  void verifyRefasterRuleCollectionIndexedApplication() {
+    RefasterRuleCollection.validateIndexedApplication(ValidRules.class);
+  }
 }
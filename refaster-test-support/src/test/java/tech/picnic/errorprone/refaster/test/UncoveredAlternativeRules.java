@@ -0,0 +1,42 @@
+package tech.picnic.errorprone.refaster.test;
+
+import com.google.errorprone.refaster.Refaster;
+import com.google.errorprone.refaster.annotation.AfterTemplate;
+import com.google.errorprone.refaster.annotation.BeforeTemplate;
+
+/**
+ * Refaster rule collection to validate that {@code @BeforeTemplate} methods and {@link
+ * Refaster#anyOf} branches not exercised by a test are reported.
+ */
+final class UncoveredAlternativeRules {
+  private UncoveredAlternativeRules() {}
+
+  static final class StringIsEmpty {
+    @BeforeTemplate
+    boolean before(String str) {
+      return Refaster.anyOf(str.length() == 0, str.equals(""));
+    }
+
+    @BeforeTemplate
+    boolean before2(String str) {
+      return str.toCharArray().length == 0;
+    }
+
+    @AfterTemplate
+    boolean after(String str) {
+      return str.isEmpty();
+    }
+  }
+
+  static final class StringLength {
+    @BeforeTemplate
+    int before(String str) {
+      return Refaster.anyOf(str.toCharArray().length, str.chars().toArray().length);
+    }
+
+    @AfterTemplate
+    int after(String str) {
+      return str.length();
+    }
+  }
+}
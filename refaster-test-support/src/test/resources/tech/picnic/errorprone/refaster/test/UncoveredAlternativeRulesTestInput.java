@@ -0,0 +1,12 @@
+package tech.picnic.errorprone.refaster.test;
+
+/** Code to test the Refaster rules from {@link UncoveredAlternativeRules}. */
+final class UncoveredAlternativeRulesTest implements RefasterRuleCollectionTestCase {
+  boolean testStringIsEmpty() {
+    return "foo".length() == 0;
+  }
+
+  int[] testStringLength() {
+    return new int[] {"foo".toCharArray().length, "bar".chars().toArray().length};
+  }
+}
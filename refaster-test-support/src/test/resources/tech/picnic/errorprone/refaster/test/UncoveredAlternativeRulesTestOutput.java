@@ -0,0 +1,17 @@
+package tech.picnic.errorprone.refaster.test;
+
+/** Code to test the Refaster rules from {@link UncoveredAlternativeRules}. */
+final class UncoveredAlternativeRulesTest implements RefasterRuleCollectionTestCase {
+  /*
+   *  ERROR: The following alternatives of rule `StringIsEmpty` are not exercised by method `testStringIsEmpty`:
+   *  - `Refaster.anyOf` branch 2 of 2 in `@BeforeTemplate` method 1 of 2
+   *  - `@BeforeTemplate` method 2 of 2
+   */
+  boolean testStringIsEmpty() {
+    return "foo".isEmpty();
+  }
+
+  int[] testStringLength() {
+    return new int[] {"foo".length(), "bar".length()};
+  }
+}